@@ -27,12 +27,14 @@ public class Agent implements Callable<Void> {
         System.setProperty("javax.management.builder.initial", JmxMBeanServerBuilder.class.getCanonicalName());
 
         final MBeanServerInterceptorHarvester harvester = new MBeanServerInterceptorHarvester(harvesterOptions);
+        harvester.start();
 
-        final Server server = Server.start(httpServerOptions.listenAddresses, harvester, httpServerOptions.helpExposition);
+        final Server server = Server.start(harvester, httpServerOptions);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 server.stop().sync();
+                harvester.stop();
 
             } catch (final InterruptedException e) {
                 throw new RuntimeException(e);
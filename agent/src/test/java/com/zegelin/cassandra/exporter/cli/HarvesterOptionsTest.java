@@ -1,12 +1,16 @@
 package com.zegelin.cassandra.exporter.cli;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.zegelin.cassandra.exporter.CollectionProfile;
 import com.zegelin.cassandra.exporter.Harvester;
+import com.zegelin.cassandra.exporter.netty.HttpHandler;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -40,4 +44,32 @@ public class HarvesterOptionsTest {
 
         assertEquals(harvesterOptions.exclusions, exclusions);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProfileOptions() {
+        final HarvesterOptions harvesterOptions = new HarvesterOptions();
+
+        harvesterOptions.scrapeCoalescingWindowMillis = 1000;
+        harvesterOptions.setProfileOptions(ImmutableList.of("tables.help=exclude", "tables.coalescing-window=30000", "jvm.coalescing-window=0"));
+
+        final Map<String, CollectionProfile> profiles = harvesterOptions.collectionProfiles();
+
+        assertEquals(profiles.get("tables").helpExposition, HttpHandler.HelpExposition.EXCLUDE);
+        assertEquals(profiles.get("tables").coalescingWindowMillis, 30000);
+
+        assertEquals(profiles.get("jvm").coalescingWindowMillis, 0);
+
+        // profiles without options use the server's help exposition and the default coalescing window
+        assertNull(profiles.get("node").helpExposition);
+        assertEquals(profiles.get("node").coalescingWindowMillis, 1000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOptionsOfUndefinedProfile() {
+        final HarvesterOptions harvesterOptions = new HarvesterOptions();
+
+        harvesterOptions.setProfileOptions(ImmutableList.of("undefined.help=include"));
+
+        harvesterOptions.collectionProfiles();
+    }
+}
@@ -0,0 +1,102 @@
+package com.zegelin.prometheus.exposition;
+
+import com.zegelin.prometheus.exposition.json.JsonFormatChunkedInput;
+import com.zegelin.prometheus.exposition.protobuf.ProtobufFormatChunkedInput;
+import com.zegelin.prometheus.exposition.text.OpenMetricsFormatChunkedInput;
+import com.zegelin.prometheus.exposition.text.TextFormatChunkedInput;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.stream.ChunkedInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives each exposition {@link ChunkedInput} to completion, as the {@link io.netty.handler.stream.ChunkedWriteHandler} would.
+ *
+ * Chunks are allocated from the same pooled allocator the server uses and are released as soon as they are read.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkedInputBenchmark {
+    public enum Format {
+        TEXT {
+            @Override
+            ChunkedInput<ByteBuf> chunkedInput(final ExpositionState state, final Instant timestamp) {
+                return new TextFormatChunkedInput(state.metricFamilies.metricFamilies(), timestamp, state.globalLabels, state.includeHelp, state.textFormatPrefixCacheScrape(), state.chunkSizer);
+            }
+        },
+        OPENMETRICS {
+            @Override
+            ChunkedInput<ByteBuf> chunkedInput(final ExpositionState state, final Instant timestamp) {
+                return new OpenMetricsFormatChunkedInput(state.metricFamilies.metricFamilies(), timestamp, state.globalLabels, state.includeHelp, state.openMetricsPrefixCacheScrape(), state.chunkSizer);
+            }
+        },
+        JSON {
+            @Override
+            ChunkedInput<ByteBuf> chunkedInput(final ExpositionState state, final Instant timestamp) {
+                return new JsonFormatChunkedInput(state.metricFamilies.metricFamilies(), timestamp, state.globalLabels, state.includeHelp, state.chunkSizer);
+            }
+        },
+        PROTOBUF {
+            @Override
+            ChunkedInput<ByteBuf> chunkedInput(final ExpositionState state, final Instant timestamp) {
+                return new ProtobufFormatChunkedInput(state.metricFamilies.metricFamilies(), timestamp, state.globalLabels, state.includeHelp, state.chunkSizer);
+            }
+        };
+
+        abstract ChunkedInput<ByteBuf> chunkedInput(final ExpositionState state, final Instant timestamp);
+    }
+
+    @Param({"TEXT", "OPENMETRICS", "JSON", "PROTOBUF"})
+    public Format format;
+
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+
+    @Setup
+    public void setup() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+
+        ctx = channel.pipeline().firstContext();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finish();
+    }
+
+    @Benchmark
+    public long exposition(final ExpositionState state, final ExposedBytes exposedBytes) throws Exception {
+        final ChunkedInput<ByteBuf> chunkedInput = format.chunkedInput(state, Instant.now());
+
+        long bytes = 0;
+
+        try {
+            while (!chunkedInput.isEndOfInput()) {
+                final ByteBuf chunk = chunkedInput.readChunk(ctx);
+
+                bytes += chunk.readableBytes();
+
+                chunk.release();
+            }
+
+        } finally {
+            chunkedInput.close();
+        }
+
+        exposedBytes.exposedBytes += bytes;
+        exposedBytes.expositions++;
+
+        return bytes;
+    }
+}
@@ -0,0 +1,24 @@
+package com.zegelin.prometheus.exposition;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the number of bytes written, and the number of expositions written, as secondary benchmark results
+ * ("exposedBytes" and "expositions"). Both are totals for the iteration -- bytes/op is exposedBytes / expositions.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ExposedBytes {
+    public long exposedBytes;
+    public long expositions;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        exposedBytes = 0;
+        expositions = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.zegelin.prometheus.exposition;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmarks jar.
+ *
+ * Accepts the standard JMH command line options (see {@code -h}), and always enables the GC profiler
+ * so that allocation/op ({@code gc.alloc.rate.norm}) is reported alongside throughput and bytes/op.
+ */
+public final class ExpositionBenchmarks {
+    private ExpositionBenchmarks() {}
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,73 @@
+package com.zegelin.prometheus.exposition;
+
+import com.zegelin.netty.Floats;
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.exposition.text.TextFormatSeriesPrefixCache;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark parameters common to all exposition benchmarks.
+ */
+@State(Scope.Benchmark)
+public class ExpositionState {
+    @Param("1000")
+    public int tableCount;
+
+    @Param("100")
+    public int numericFamilyCount;
+
+    @Param("10")
+    public int summaryFamilyCount;
+
+    @Param({"true", "false"})
+    public boolean includeHelp;
+
+    @Param({"true", "false"})
+    public boolean includeGlobalLabels;
+
+    @Param({"true", "false"})
+    public boolean useFastFloat;
+
+    @Param({"true", "false"})
+    public boolean warmPrefixCache;
+
+    @Param({"true", "false"})
+    public boolean batchedNumericFamilies;
+
+    public SyntheticMetricFamilies metricFamilies;
+    public Labels globalLabels;
+    public AdaptiveChunkSizer chunkSizer;
+
+    private TextFormatSeriesPrefixCache prefixCache;
+    private TextFormatSeriesPrefixCache openMetricsPrefixCache;
+
+    @Setup
+    public void setup() {
+        Floats.useFastFloat = useFastFloat;
+
+        metricFamilies = new SyntheticMetricFamilies(tableCount, numericFamilyCount, summaryFamilyCount, batchedNumericFamilies);
+        globalLabels = SyntheticMetricFamilies.globalLabels(includeGlobalLabels);
+        prefixCache = new TextFormatSeriesPrefixCache();
+        openMetricsPrefixCache = new TextFormatSeriesPrefixCache();
+        chunkSizer = new AdaptiveChunkSizer();
+    }
+
+    /**
+     * @return a scrape of the text format series prefix cache to use for a single exposition -- of either a cache that is
+     * shared between expositions (and hence warm after the first), or an empty one.
+     */
+    public TextFormatSeriesPrefixCache.Scrape textFormatPrefixCacheScrape() {
+        final TextFormatSeriesPrefixCache cache = warmPrefixCache ? prefixCache : new TextFormatSeriesPrefixCache();
+
+        return cache.beginScrape(0, globalLabels);
+    }
+
+    /**
+     * @see #textFormatPrefixCacheScrape()
+     */
+    public TextFormatSeriesPrefixCache.Scrape openMetricsPrefixCacheScrape() {
+        final TextFormatSeriesPrefixCache cache = warmPrefixCache ? openMetricsPrefixCache : new TextFormatSeriesPrefixCache();
+
+        return cache.beginScrape(0, globalLabels);
+    }
+}
@@ -0,0 +1,123 @@
+package com.zegelin.prometheus.exposition;
+
+import com.google.common.collect.ImmutableMap;
+import com.zegelin.prometheus.domain.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic set of {@link MetricFamily}s shaped like the worst-case benchmark described in the README --
+ * a schema with 1000+ tables, where every table contributes a series to each table-level metric family.
+ *
+ * With the default shape (1000 tables, 100 numeric families and 10 summary families) this produces
+ * 110 families with 1000 series each, which expose as ~180 thousand lines.
+ *
+ * {@link MetricFamily} metric streams can only be consumed once, hence the metrics are pre-computed and
+ * {@link #metricFamilies()} builds a fresh set of families around them for each invocation.
+ *
+ * When batched, the numeric families are backed by {@link NumericMetricBatchSource}s (as collectors do) that refill
+ * a reused {@link NumericMetricBatch} from the pre-computed metrics.
+ */
+public final class SyntheticMetricFamilies {
+    private static final Labels GLOBAL_LABELS = Labels.of(ImmutableMap.of(
+            "cassandra_cluster", "benchmark_cluster",
+            "cassandra_node", "10.0.0.1",
+            "cassandra_datacenter", "dc1",
+            "cassandra_rack", "rack1"
+    ));
+
+    private final String[] numericFamilyNames, numericFamilyHelp;
+    private final NumericMetric[][] numericMetrics;
+    private final NumericMetricBatchSource[] numericBatchSources;
+
+    private final String[] summaryFamilyNames, summaryFamilyHelp;
+    private final SummaryMetricFamily.Summary[][] summaryMetrics;
+
+    public SyntheticMetricFamilies(final int tableCount, final int numericFamilyCount, final int summaryFamilyCount, final boolean batched) {
+        final Random random = new Random(42);
+
+        final Labels[] tableLabels = IntStream.range(0, tableCount)
+                .mapToObj(i -> Labels.of(ImmutableMap.of(
+                        "keyspace", String.format("keyspace_%d", i % 10),
+                        "table", String.format("table_%d", i),
+                        "table_type", "table"
+                )))
+                .toArray(Labels[]::new);
+
+        this.numericFamilyNames = new String[numericFamilyCount];
+        this.numericFamilyHelp = new String[numericFamilyCount];
+        this.numericMetrics = new NumericMetric[numericFamilyCount][];
+
+        for (int i = 0; i < numericFamilyCount; i++) {
+            numericFamilyNames[i] = String.format("cassandra_table_synthetic_%d_%s", i, (i % 2 == 0) ? "bytes" : "total");
+            numericFamilyHelp[i] = String.format("Synthetic numeric metric family %d.", i);
+
+            // counters ("_total") are integral, as they are for most Cassandra metrics
+            final boolean integral = (i % 2 != 0);
+
+            numericMetrics[i] = Arrays.stream(tableLabels)
+                    .map(labels -> integral ?
+                            new LongMetric(labels, random.nextInt(1 << 30)) :
+                            new NumericMetric(labels, random.nextInt(1 << 20) * random.nextDouble()))
+                    .toArray(NumericMetric[]::new);
+        }
+
+        this.numericBatchSources = batched ?
+                Arrays.stream(numericMetrics).map(SyntheticMetricFamilies::batchSource).toArray(NumericMetricBatchSource[]::new) :
+                null;
+
+        this.summaryFamilyNames = new String[summaryFamilyCount];
+        this.summaryFamilyHelp = new String[summaryFamilyCount];
+        this.summaryMetrics = new SummaryMetricFamily.Summary[summaryFamilyCount][];
+
+        for (int i = 0; i < summaryFamilyCount; i++) {
+            summaryFamilyNames[i] = String.format("cassandra_table_synthetic_%d_latency_seconds", i);
+            summaryFamilyHelp[i] = String.format("Synthetic summary metric family %d.", i);
+
+            summaryMetrics[i] = Arrays.stream(tableLabels)
+                    .map(labels -> new SummaryMetricFamily.Summary(labels, random.nextDouble() * 1000, random.nextInt(1 << 24),
+                            Interval.asIntervals(Interval.Quantile.STANDARD_PERCENTILES, q -> random.nextDouble() * q.value)))
+                    .toArray(SummaryMetricFamily.Summary[]::new);
+        }
+    }
+
+    private static NumericMetricBatchSource batchSource(final NumericMetric[] metrics) {
+        return new NumericMetricBatchSource(batch -> {
+            for (final NumericMetric metric : metrics) {
+                if (metric instanceof LongMetric) {
+                    batch.add(metric.labels, ((LongMetric) metric).longValue);
+
+                } else {
+                    batch.add(metric.labels, metric.value);
+                }
+            }
+        });
+    }
+
+    public static Labels globalLabels(final boolean enabled) {
+        return enabled ? GLOBAL_LABELS : Labels.of();
+    }
+
+    public Stream<MetricFamily> metricFamilies() {
+        final Stream<MetricFamily> numericFamilies = IntStream.range(0, numericMetrics.length)
+                .mapToObj(i -> {
+                    if (numericBatchSources != null) {
+                        return (i % 2 == 0) ?
+                                new GaugeMetricFamily(numericFamilyNames[i], numericFamilyHelp[i], numericBatchSources[i]) :
+                                new CounterMetricFamily(numericFamilyNames[i], numericFamilyHelp[i], numericBatchSources[i]);
+                    }
+
+                    return (i % 2 == 0) ?
+                            new GaugeMetricFamily(numericFamilyNames[i], numericFamilyHelp[i], Arrays.stream(numericMetrics[i])) :
+                            new CounterMetricFamily(numericFamilyNames[i], numericFamilyHelp[i], Arrays.stream(numericMetrics[i]));
+                });
+
+        final Stream<MetricFamily> summaryFamilies = IntStream.range(0, summaryMetrics.length)
+                .mapToObj(i -> new SummaryMetricFamily(summaryFamilyNames[i], summaryFamilyHelp[i], Arrays.stream(summaryMetrics[i])));
+
+        return Stream.concat(numericFamilies, summaryFamilies);
+    }
+}
@@ -0,0 +1,58 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.exposition.ExposedBytes;
+import com.zegelin.prometheus.exposition.ExpositionState;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises {@link TextFormatMetricFamilyWriter} in isolation, writing every family into a single, reused buffer.
+ * This excludes chunk allocation and {@link TextFormatChunkedInput} state machine overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TextFormatMetricFamilyWriterBenchmark {
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        buffer = PooledByteBufAllocator.DEFAULT.buffer(32 * 1024 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public long writeMetricFamilies(final ExpositionState state, final ExposedBytes exposedBytes) {
+        buffer.clear();
+
+        final Instant timestamp = Instant.now();
+        final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape = state.textFormatPrefixCacheScrape();
+        final Iterator<MetricFamily> metricFamilies = state.metricFamilies.metricFamilies().iterator();
+
+        while (metricFamilies.hasNext()) {
+            final TextFormatMetricFamilyWriter writer = new TextFormatMetricFamilyWriter(timestamp, state.globalLabels, state.includeHelp, prefixCacheScrape, metricFamilies.next());
+
+            writer.writeFamilyHeader(buffer);
+
+            while (writer.writeMetric(buffer));
+        }
+
+        exposedBytes.exposedBytes += buffer.readableBytes();
+        exposedBytes.expositions++;
+
+        return buffer.readableBytes();
+    }
+}
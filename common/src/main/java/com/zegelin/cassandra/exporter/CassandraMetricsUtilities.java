@@ -5,6 +5,8 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.Sampling;
 import com.codahale.metrics.Snapshot;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.zegelin.function.DoubleDoubleFunction;
 import com.zegelin.jmx.NamedObject;
 import com.zegelin.prometheus.domain.Interval;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry;
@@ -13,15 +15,56 @@ import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxTimerMBean;
 
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import static com.zegelin.cassandra.exporter.SamplingCounting.QUANTILES;
 
 @SuppressWarnings("Duplicates")
 public class CassandraMetricsUtilities {
     private static final Map<Class<? extends CassandraMetricsRegistry.MetricMBean>, Field> MBEAN_METRIC_FIELDS = new HashMap<>();
 
+    /**
+     * The JMX attribute accessor of each quantile in {@link SamplingCounting#QUANTILES}, by index.
+     */
+    private static final List<ToDoubleFunction<JmxTimerMBean>> TIMER_QUANTILE_FUNCTIONS = quantileFunctions(ImmutableMap.<Interval.Quantile, ToDoubleFunction<JmxTimerMBean>>builder()
+            .put(Interval.Quantile.P_50, JmxTimerMBean::get50thPercentile)
+            .put(Interval.Quantile.P_75, JmxTimerMBean::get75thPercentile)
+            .put(Interval.Quantile.P_95, JmxTimerMBean::get95thPercentile)
+            .put(Interval.Quantile.P_98, JmxTimerMBean::get98thPercentile)
+            .put(Interval.Quantile.P_99, JmxTimerMBean::get99thPercentile)
+            .put(Interval.Quantile.P_99_9, JmxTimerMBean::get999thPercentile)
+            .build());
+
+    private static final List<ToDoubleFunction<JmxHistogramMBean>> HISTOGRAM_QUANTILE_FUNCTIONS = quantileFunctions(ImmutableMap.<Interval.Quantile, ToDoubleFunction<JmxHistogramMBean>>builder()
+            .put(Interval.Quantile.P_50, JmxHistogramMBean::get50thPercentile)
+            .put(Interval.Quantile.P_75, JmxHistogramMBean::get75thPercentile)
+            .put(Interval.Quantile.P_95, JmxHistogramMBean::get95thPercentile)
+            .put(Interval.Quantile.P_98, JmxHistogramMBean::get98thPercentile)
+            .put(Interval.Quantile.P_99, JmxHistogramMBean::get99thPercentile)
+            .put(Interval.Quantile.P_99_9, JmxHistogramMBean::get999thPercentile)
+            .build());
+
+    private static <T> List<ToDoubleFunction<T>> quantileFunctions(final Map<Interval.Quantile, ToDoubleFunction<T>> functions) {
+        final ImmutableList.Builder<ToDoubleFunction<T>> builder = ImmutableList.builder();
+
+        for (final Interval.Quantile quantile : QUANTILES) {
+            final ToDoubleFunction<T> function = functions.get(quantile);
+
+            if (function == null) {
+                throw new IllegalStateException(String.format("No JMX attribute available for quantile %s.", quantile));
+            }
+
+            builder.add(function);
+        }
+
+        return builder.build();
+    }
+
     /**
      * Given a Cassandra MetricMBean return the internal Codahale/Dropwizard Metric object
      */
@@ -65,7 +108,7 @@ public class CassandraMetricsUtilities {
             }
 
             @Override
-            public Iterable<Interval> getIntervals() {
+            public void getQuantiles(final double[] values, final DoubleDoubleFunction scaleFunction) {
                 /*
                   Cassandra's JmxTimerMBean converts the percentile values to a parameterised duration unit,
                   (currently the only usage is microseconds), which differs to the values returned by
@@ -76,16 +119,11 @@ public class CassandraMetricsUtilities {
                   and then eventually to seconds!
                  */
                 final TimeUnit durationUnit = TimeUnit.valueOf(timer.getDurationUnit().toUpperCase(Locale.US));
-                final float durationFactor = durationUnit.toNanos(1L);
-
-                return ImmutableList.of(
-                        new Interval(Interval.Quantile.P_50, (float) timer.get50thPercentile() * durationFactor),
-                        new Interval(Interval.Quantile.P_75, (float) timer.get75thPercentile() * durationFactor),
-                        new Interval(Interval.Quantile.P_95, (float) timer.get95thPercentile() * durationFactor),
-                        new Interval(Interval.Quantile.P_98, (float) timer.get98thPercentile() * durationFactor),
-                        new Interval(Interval.Quantile.P_99, (float) timer.get99thPercentile() * durationFactor),
-                        new Interval(Interval.Quantile.P_99_9, (float) timer.get999thPercentile() * durationFactor)
-                );
+                final double durationFactor = durationUnit.toNanos(1L);
+
+                for (int i = 0; i < QUANTILES.size(); i++) {
+                    values[i] = scaleFunction.apply(TIMER_QUANTILE_FUNCTIONS.get(i).applyAsDouble(timer) * durationFactor);
+                }
             }
         };
     }
@@ -98,15 +136,10 @@ public class CassandraMetricsUtilities {
             }
 
             @Override
-            public Iterable<Interval> getIntervals() {
-                return ImmutableList.of(
-                        new Interval(Interval.Quantile.P_50, (float) histogram.get50thPercentile()),
-                        new Interval(Interval.Quantile.P_75, (float) histogram.get75thPercentile()),
-                        new Interval(Interval.Quantile.P_95, (float) histogram.get95thPercentile()),
-                        new Interval(Interval.Quantile.P_98, (float) histogram.get98thPercentile()),
-                        new Interval(Interval.Quantile.P_99, (float) histogram.get99thPercentile()),
-                        new Interval(Interval.Quantile.P_99_9, (float) histogram.get999thPercentile())
-                );
+            public void getQuantiles(final double[] values, final DoubleDoubleFunction scaleFunction) {
+                for (int i = 0; i < QUANTILES.size(); i++) {
+                    values[i] = scaleFunction.apply(HISTOGRAM_QUANTILE_FUNCTIONS.get(i).applyAsDouble(histogram));
+                }
             }
         };
     }
@@ -120,10 +153,12 @@ public class CassandraMetricsUtilities {
             }
 
             @Override
-            public Iterable<Interval> getIntervals() {
+            public void getQuantiles(final double[] values, final DoubleDoubleFunction scaleFunction) {
                 final Snapshot snapshot = metric.getSnapshot();
 
-                return Interval.asIntervals(Interval.Quantile.STANDARD_PERCENTILES, q -> (float) snapshot.getValue(q.value));
+                for (int i = 0; i < QUANTILES.size(); i++) {
+                    values[i] = scaleFunction.apply(snapshot.getValue(QUANTILES.get(i).value));
+                }
             }
         };
     }
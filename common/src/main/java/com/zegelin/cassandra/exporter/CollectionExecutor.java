@@ -0,0 +1,83 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zegelin.prometheus.domain.CounterMetricFamily;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.LongMetric;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.NumericMetric;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
+
+/**
+ * Bounded pool of threads that run collectors.
+ *
+ * Collection doesn't use (or compete with anything else for) the JVM-wide common ForkJoinPool, and the number and
+ * priority of collection threads may be limited so that the exporter doesn't starve Cassandra.
+ * Idle threads exit, and are recreated on demand.
+ */
+final class CollectionExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder queuedNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    CollectionExecutor(final int threads, final int threadPriority) {
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("cassandra-exporter-collector-%d")
+                        .setPriority(threadPriority)
+                        .setDaemon(true)
+                        .build());
+
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    <T> CompletableFuture<T> supply(final Supplier<T> supplier) {
+        final long submitTime = System.nanoTime();
+
+        return CompletableFuture.supplyAsync(() -> {
+            final long startTime = System.nanoTime();
+
+            queuedNanos.add(startTime - submitTime);
+
+            try {
+                return supplier.get();
+
+            } finally {
+                runNanos.add(System.nanoTime() - startTime);
+                completedTasks.increment();
+            }
+        }, executor);
+    }
+
+    private static Stream<NumericMetric> value(final long value) {
+        return Stream.of(new LongMetric(null, value));
+    }
+
+    private static Stream<NumericMetric> seconds(final LongAdder nanos) {
+        return Stream.of(new NumericMetric(null, nanosecondsToSeconds(nanos.sum())));
+    }
+
+    Stream<MetricFamily> collect() {
+        return Stream.of(
+                new GaugeMetricFamily("cassandra_exporter_collection_pool_threads", "Number of collection pool threads (idle threads exit).", value(executor.getPoolSize())),
+                new GaugeMetricFamily("cassandra_exporter_collection_pool_active_threads", "Number of collection pool threads currently running a collector.", value(executor.getActiveCount())),
+                new GaugeMetricFamily("cassandra_exporter_collection_pool_queued_collections", "Number of collections waiting for a collection pool thread.", value(executor.getQueue().size())),
+                new CounterMetricFamily("cassandra_exporter_collection_pool_collections_total", "Number of collections run by the collection pool.", value(completedTasks.sum())),
+                new CounterMetricFamily("cassandra_exporter_collection_pool_queued_seconds_total", "Cumulative time collections spent waiting for a collection pool thread.", seconds(queuedNanos)),
+                new CounterMetricFamily("cassandra_exporter_collection_pool_run_seconds_total", "Cumulative time collection pool threads spent running collectors.", seconds(runNanos))
+        );
+    }
+}
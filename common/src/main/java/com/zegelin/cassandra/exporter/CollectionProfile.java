@@ -0,0 +1,28 @@
+package com.zegelin.cassandra.exporter;
+
+import com.zegelin.cassandra.exporter.netty.HttpHandler;
+
+/**
+ * A named collection profile, served at /metrics/NAME -- a subset of the collectors, with its own help exposition
+ * and scrape coalescing settings.
+ */
+public final class CollectionProfile {
+    public final CollectorSelection selection;
+
+    /**
+     * The help exposition of the profile's scrapes, or null to use the server's.
+     */
+    public final HttpHandler.HelpExposition helpExposition;
+
+    /**
+     * Scrapes of the profile that arrive within this window of the start of the last collection share (and so are
+     * served from a cached copy of) its materialized result. 0 disables coalescing.
+     */
+    public final long coalescingWindowMillis;
+
+    public CollectionProfile(final CollectorSelection selection, final HttpHandler.HelpExposition helpExposition, final long coalescingWindowMillis) {
+        this.selection = selection;
+        this.helpExposition = helpExposition;
+        this.coalescingWindowMillis = coalescingWindowMillis;
+    }
+}
@@ -0,0 +1,42 @@
+package com.zegelin.cassandra.exporter;
+
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.NumericMetric;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
+
+/**
+ * An immutable, materialized collection of metrics from all collectors, made in the background by {@link Harvester}.
+ */
+public final class CollectionSnapshot {
+    private final long nanoTime = System.nanoTime();
+    private final Instant timestamp = Instant.now();
+
+    private final List<MetricFamily> metricFamilies;
+
+    CollectionSnapshot(final List<MetricFamily> metricFamilies) {
+        this.metricFamilies = metricFamilies;
+    }
+
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    long ageNanos() {
+        return System.nanoTime() - nanoTime;
+    }
+
+    /**
+     * @return the snapshot's metric families, plus the age of the snapshot.
+     */
+    public Stream<MetricFamily> metricFamilies() {
+        return Stream.concat(metricFamilies.stream(), Stream.of(
+                new GaugeMetricFamily("cassandra_exporter_snapshot_age_seconds", "Time since the served background collection was made.", Stream.of(new NumericMetric(null, nanosecondsToSeconds(ageNanos()))))
+        ));
+    }
+}
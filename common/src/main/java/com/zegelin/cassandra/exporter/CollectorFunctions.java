@@ -1,7 +1,6 @@
 package com.zegelin.cassandra.exporter;
 
-import com.google.common.collect.Iterables;
-import com.zegelin.function.FloatFloatFunction;
+import com.zegelin.function.DoubleDoubleFunction;
 import com.zegelin.cassandra.exporter.collector.dynamic.FunctionalMetricFamilyCollector.CollectorFunction;
 import com.zegelin.cassandra.exporter.collector.dynamic.FunctionalMetricFamilyCollector.LabeledObjectGroup;
 import com.zegelin.prometheus.domain.*;
@@ -10,49 +9,63 @@ import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxGaugeMBean;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxMeterMBean;
 import org.apache.cassandra.utils.EstimatedHistogram;
 
+import java.util.Arrays;
 import java.util.stream.Stream;
 
 public final class CollectorFunctions {
     private CollectorFunctions() {}
 
-    private static Stream<NumericMetric> counterMetricsStream(final LabeledObjectGroup<JmxCounterMBean> group, final FloatFloatFunction scaleFunction) {
-        return group.labeledObjects().entrySet().stream()
-                .map(e -> new Object() {
-                    final Labels labels = e.getKey();
-                    final JmxCounterMBean counter = e.getValue();
-                })
-                .map(e -> new NumericMetric(e.labels, scaleFunction.apply((float) e.counter.getCount())));
+    /**
+     * Integer values that aren't scaled are exported as exact integers.
+     */
+    private static void addLongOrScaled(final NumericMetricBatch batch, final Labels labels, final long value, final DoubleDoubleFunction scaleFunction) {
+        if (scaleFunction == DoubleDoubleFunction.identity()) {
+            batch.add(labels, value);
+            return;
+        }
+
+        batch.add(labels, scaleFunction.apply(value));
+    }
+
+    private static boolean isIntegral(final Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static NumericMetricBatchSource counterBatchSource(final LabeledObjectGroup<JmxCounterMBean> group, final DoubleDoubleFunction scaleFunction) {
+        return new NumericMetricBatchSource(batch -> group.forEachLabeledObject((labels, counter) -> {
+            addLongOrScaled(batch, labels, counter.getCount(), scaleFunction);
+        }));
     }
 
     /**
      * Collect a {@link JmxCounterMBean} as a Prometheus counter
      */
-    public static CollectorFunction<JmxCounterMBean> counterAsCounter(final FloatFloatFunction scaleFunction) {
+    public static CollectorFunction<JmxCounterMBean> counterAsCounter(final DoubleDoubleFunction scaleFunction) {
         return group -> {
-            final Stream<NumericMetric> metricStream = counterMetricsStream(group, scaleFunction);
+            final NumericMetricBatchSource batchSource = group.state(g -> counterBatchSource(g, scaleFunction));
 
-            return Stream.of(new CounterMetricFamily(group.name(), group.help(), metricStream));
+            return Stream.of(new CounterMetricFamily(group.name(), group.help(), batchSource));
         };
     }
 
     public static CollectorFunction<JmxCounterMBean> counterAsCounter() {
-        return counterAsCounter(l -> l);
+        return counterAsCounter(DoubleDoubleFunction.identity());
     }
 
 
     /**
      * Collect a {@link JmxCounterMBean} as a Prometheus gauge
      */
-    public static CollectorFunction<JmxCounterMBean> counterAsGauge(final FloatFloatFunction scaleFunction) {
+    public static CollectorFunction<JmxCounterMBean> counterAsGauge(final DoubleDoubleFunction scaleFunction) {
         return group -> {
-            final Stream<NumericMetric> metricStream = counterMetricsStream(group, scaleFunction);
+            final NumericMetricBatchSource batchSource = group.state(g -> counterBatchSource(g, scaleFunction));
 
-            return Stream.of(new GaugeMetricFamily(group.name(), group.help(), metricStream));
+            return Stream.of(new GaugeMetricFamily(group.name(), group.help(), batchSource));
         };
     }
 
     public static CollectorFunction<JmxCounterMBean> counterAsGauge() {
-        return counterAsGauge(FloatFloatFunction.identity());
+        return counterAsGauge(DoubleDoubleFunction.identity());
     }
 
 
@@ -60,63 +73,63 @@ public final class CollectorFunctions {
     /**
      * Collect a {@link JmxMeterMBean} as a Prometheus counter
      */
-    public static CollectorFunction<JmxMeterMBean> meterAsCounter(final FloatFloatFunction scaleFunction) {
+    public static CollectorFunction<JmxMeterMBean> meterAsCounter(final DoubleDoubleFunction scaleFunction) {
         return group -> {
-            final Stream<NumericMetric> metricStream = group.labeledObjects().entrySet().stream()
-                    .map(e -> new Object() {
-                        final Labels labels = e.getKey();
-                        final JmxMeterMBean meter = e.getValue();
-                    })
-                    .map(e -> new NumericMetric(e.labels, scaleFunction.apply((float) e.meter.getCount())));
+            final NumericMetricBatchSource batchSource = group.state(g -> new NumericMetricBatchSource(batch -> g.forEachLabeledObject((labels, meter) -> {
+                addLongOrScaled(batch, labels, meter.getCount(), scaleFunction);
+            })));
 
-
-            return Stream.of(new CounterMetricFamily(group.name(), group.help(), metricStream));
+            return Stream.of(new CounterMetricFamily(group.name(), group.help(), batchSource));
         };
     }
 
     public static CollectorFunction<JmxMeterMBean> meterAsCounter() {
-        return meterAsCounter(FloatFloatFunction.identity());
+        return meterAsCounter(DoubleDoubleFunction.identity());
     }
 
 
-    private static Stream<NumericMetric> numericGaugeMetricsStream(final LabeledObjectGroup<JmxGaugeMBean> group, final FloatFloatFunction scaleFunction) {
-        return group.labeledObjects().entrySet().stream()
-                .map(e -> new Object() {
-                    final Labels labels = e.getKey();
-                    final JmxGaugeMBean gauge = e.getValue();
-                })
-                .map(e -> new NumericMetric(e.labels, scaleFunction.apply(((Number) e.gauge.getValue()).floatValue())));
+    private static NumericMetricBatchSource numericGaugeBatchSource(final LabeledObjectGroup<JmxGaugeMBean> group, final DoubleDoubleFunction scaleFunction) {
+        return new NumericMetricBatchSource(batch -> group.forEachLabeledObject((labels, gauge) -> {
+            final Number value = (Number) gauge.getValue();
+
+            if (isIntegral(value)) {
+                addLongOrScaled(batch, labels, value.longValue(), scaleFunction);
+                return;
+            }
+
+            batch.add(labels, scaleFunction.apply(value.doubleValue()));
+        }));
     }
 
     /**
      * Collect a {@link JmxGaugeMBean} with a {@link Number} value as a Prometheus gauge
      */
-    public static CollectorFunction<JmxGaugeMBean> numericGaugeAsGauge(final FloatFloatFunction scaleFunction) {
+    public static CollectorFunction<JmxGaugeMBean> numericGaugeAsGauge(final DoubleDoubleFunction scaleFunction) {
         return group -> {
-            final Stream<NumericMetric> metricStream = numericGaugeMetricsStream(group, scaleFunction);
+            final NumericMetricBatchSource batchSource = group.state(g -> numericGaugeBatchSource(g, scaleFunction));
 
-            return Stream.of(new GaugeMetricFamily(group.name(), group.help(), metricStream));
+            return Stream.of(new GaugeMetricFamily(group.name(), group.help(), batchSource));
         };
     }
 
     public static CollectorFunction<JmxGaugeMBean> numericGaugeAsGauge() {
-        return numericGaugeAsGauge(FloatFloatFunction.identity());
+        return numericGaugeAsGauge(DoubleDoubleFunction.identity());
     }
 
 
     /**
      * Collect a {@link JmxGaugeMBean} with a {@link Number} value as a Prometheus counter
      */
-    public static CollectorFunction<JmxGaugeMBean> numericGaugeAsCounter(final FloatFloatFunction scaleFunction) {
+    public static CollectorFunction<JmxGaugeMBean> numericGaugeAsCounter(final DoubleDoubleFunction scaleFunction) {
         return group -> {
-            final Stream<NumericMetric> metricStream = numericGaugeMetricsStream(group, scaleFunction);
+            final NumericMetricBatchSource batchSource = group.state(g -> numericGaugeBatchSource(g, scaleFunction));
 
-            return Stream.of(new CounterMetricFamily(group.name(), group.help(), metricStream));
+            return Stream.of(new CounterMetricFamily(group.name(), group.help(), batchSource));
         };
     }
 
     public static CollectorFunction<JmxGaugeMBean> numericGaugeAsCounter() {
-        return numericGaugeAsCounter(FloatFloatFunction.identity());
+        return numericGaugeAsCounter(DoubleDoubleFunction.identity());
     }
 
 
@@ -124,25 +137,24 @@ public final class CollectorFunctions {
     /**
      * Collect a {@link JmxGaugeMBean} with a Cassandra {@link EstimatedHistogram} value as a Prometheus summary
      */
-    public static CollectorFunction<JmxGaugeMBean> histogramGaugeAsSummary(final FloatFloatFunction bucketScaleFunction) {
+    public static CollectorFunction<JmxGaugeMBean> histogramGaugeAsSummary(final DoubleDoubleFunction bucketScaleFunction) {
         return group -> {
             final Stream<SummaryMetricFamily.Summary> summaryStream = group.labeledObjects().entrySet().stream()
-                    .map(e -> new Object() {
-                        final Labels labels = e.getKey();
-                        final JmxGaugeMBean gauge = e.getValue();
-                    })
                     .map(e -> {
-                        final long[] bucketData = (long[]) e.gauge.getValue();
+                        final long[] bucketData = (long[]) e.getValue().getValue();
 
                         if (bucketData.length == 0) {
-                            return new SummaryMetricFamily.Summary(e.labels, Float.NaN, Float.NaN, Interval.asIntervals(Interval.Quantile.STANDARD_PERCENTILES, q -> Float.NaN));
+                            return new SummaryMetricFamily.Summary(e.getKey(), Double.NaN, Double.NaN, SamplingCounting.QUANTILES,
+                                    quantileValues -> Arrays.fill(quantileValues, Double.NaN));
                         }
 
                         final EstimatedHistogram histogram = new EstimatedHistogram(bucketData);
 
-                        final Iterable<Interval> quantiles = Interval.asIntervals(Interval.Quantile.STANDARD_PERCENTILES, q -> bucketScaleFunction.apply((float) histogram.percentile(q.value)));
-
-                        return new SummaryMetricFamily.Summary(e.labels, Float.NaN, histogram.count(), quantiles);
+                        return new SummaryMetricFamily.Summary(e.getKey(), Double.NaN, histogram.count(), SamplingCounting.QUANTILES, quantileValues -> {
+                            for (int i = 0; i < quantileValues.length; i++) {
+                                quantileValues[i] = bucketScaleFunction.apply(histogram.percentile(SamplingCounting.QUANTILES.get(i).value));
+                            }
+                        });
                     });
 
             return Stream.of(new SummaryMetricFamily(group.name(), group.help(), summaryStream));
@@ -150,23 +162,20 @@ public final class CollectorFunctions {
     }
 
     public static CollectorFunction<JmxGaugeMBean> histogramGaugeAsSummary() {
-        return histogramGaugeAsSummary(l -> l);
+        return histogramGaugeAsSummary(DoubleDoubleFunction.identity());
     }
 
     /**
      * Collect a {@link SamplingCounting} as a Prometheus summary
      */
-    protected static CollectorFunction<SamplingCounting> samplingAndCountingAsSummary(final FloatFloatFunction quantileScaleFunction) {
+    protected static CollectorFunction<SamplingCounting> samplingAndCountingAsSummary(final DoubleDoubleFunction quantileScaleFunction) {
         return group -> {
             final Stream<SummaryMetricFamily.Summary> summaryStream = group.labeledObjects().entrySet().stream()
-                    .map(e -> new Object() {
-                        final Labels labels = e.getKey();
-                        final SamplingCounting samplingCounting = e.getValue();
-                    })
                     .map(e -> {
-                        final Iterable<Interval> quantiles = Iterables.transform(e.samplingCounting.getIntervals(), i -> i.transform(quantileScaleFunction));
+                        final SamplingCounting samplingCounting = e.getValue();
 
-                        return new SummaryMetricFamily.Summary(e.labels, Float.NaN, e.samplingCounting.getCount(), quantiles);
+                        return new SummaryMetricFamily.Summary(e.getKey(), Double.NaN, samplingCounting.getCount(), SamplingCounting.QUANTILES,
+                                quantileValues -> samplingCounting.getQuantiles(quantileValues, quantileScaleFunction));
                     });
 
             return Stream.of(new SummaryMetricFamily(group.name(), group.help(), summaryStream));
@@ -174,6 +183,6 @@ public final class CollectorFunctions {
     }
 
     public static CollectorFunction<SamplingCounting> samplingAndCountingAsSummary() {
-        return samplingAndCountingAsSummary(FloatFloatFunction.identity());
+        return samplingAndCountingAsSummary(DoubleDoubleFunction.identity());
     }
 }
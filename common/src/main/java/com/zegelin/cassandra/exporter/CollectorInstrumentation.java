@@ -0,0 +1,235 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import com.zegelin.prometheus.domain.CounterMetricFamily;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.HistogramMetricFamily;
+import com.zegelin.prometheus.domain.Interval;
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.MetricFamilyObserver;
+import com.zegelin.prometheus.domain.NumericMetric;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
+
+/**
+ * Per-collector instrumentation -- collection latency, the number of metric families and series collected,
+ * bytes allocated by collection (where the JVM supports per-thread allocation accounting) and bytes encoded.
+ *
+ * Collection is measured via {@link MetricFamilyObserver}s rather than by materializing each collector's result,
+ * so lazily collected families are measured as they're written, without changing what is being measured.
+ * Each family is observed once (not once per series), so the measured time and allocation of a lazy family include
+ * the exposition of its series.
+ */
+final class CollectorInstrumentation {
+    private static final double[] LATENCY_BUCKET_BOUNDS_SECONDS = {.0001, .00025, .0005, .001, .0025, .005, .01, .025, .05, .1, .25, .5, 1, 2.5, 5, 10};
+
+    private static final List<Interval.Quantile> LATENCY_BUCKETS;
+    private static final long[] LATENCY_BUCKET_BOUNDS_NANOS;
+
+    static {
+        final ImmutableList.Builder<Interval.Quantile> buckets = ImmutableList.builder();
+        LATENCY_BUCKET_BOUNDS_NANOS = new long[LATENCY_BUCKET_BOUNDS_SECONDS.length];
+
+        for (int i = 0; i < LATENCY_BUCKET_BOUNDS_SECONDS.length; i++) {
+            buckets.add(Interval.Quantile.upperBound(LATENCY_BUCKET_BOUNDS_SECONDS[i]));
+            LATENCY_BUCKET_BOUNDS_NANOS[i] = (long) (LATENCY_BUCKET_BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        LATENCY_BUCKETS = buckets.build();
+    }
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final boolean ALLOCATION_ACCOUNTING_SUPPORTED = THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean &&
+            ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported();
+
+    /**
+     * @return the number of bytes allocated by the current thread, or -1 if per-thread allocation accounting
+     * isn't supported or is disabled.
+     */
+    private static long currentThreadAllocatedBytes() {
+        if (!ALLOCATION_ACCOUNTING_SUPPORTED) {
+            return -1;
+        }
+
+        return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static final class CollectorStatistics {
+        // non-cumulative, indexed by LATENCY_BUCKETS. collections slower than the last bound are only in collectionCount
+        final LongAdder[] latencyBucketCounts = new LongAdder[LATENCY_BUCKETS.size()];
+
+        final LongAdder collectionCount = new LongAdder();
+        final LongAdder collectionNanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder encodedBytes = new LongAdder();
+
+        volatile int lastMetricFamilyCount, lastSeriesCount;
+
+        CollectorStatistics() {
+            for (int i = 0; i < latencyBucketCounts.length; i++) {
+                latencyBucketCounts[i] = new LongAdder();
+            }
+        }
+
+        void record(final long nanos, final long allocatedBytes, final int metricFamilyCount, final int seriesCount) {
+            for (int i = 0; i < LATENCY_BUCKET_BOUNDS_NANOS.length; i++) {
+                if (nanos <= LATENCY_BUCKET_BOUNDS_NANOS[i]) {
+                    latencyBucketCounts[i].increment();
+                    break;
+                }
+            }
+
+            collectionCount.increment();
+            collectionNanos.add(nanos);
+            this.allocatedBytes.add(allocatedBytes);
+
+            lastMetricFamilyCount = metricFamilyCount;
+            lastSeriesCount = seriesCount;
+        }
+
+        HistogramMetricFamily.Histogram latencyHistogram(final Labels labels) {
+            final List<Interval> buckets = new ArrayList<>(LATENCY_BUCKETS.size());
+
+            long cumulativeCount = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.size(); i++) {
+                cumulativeCount += latencyBucketCounts[i].sum();
+                buckets.add(new Interval(LATENCY_BUCKETS.get(i), cumulativeCount));
+            }
+
+            return new HistogramMetricFamily.Histogram(labels, nanosecondsToSeconds(collectionNanos.sum()), collectionCount.sum(), buckets);
+        }
+    }
+
+    /**
+     * A single collection from a collector.
+     *
+     * Collection happens piecewise on the thread that collects (or, for lazy families, writes) the collector's
+     * families, and is recorded once complete. Observations made after completion (e.g. when a materialized result
+     * is re-used) are ignored, apart from bytes encoded, which are recorded as they happen.
+     */
+    final class Collection implements MetricFamilyObserver {
+        private final CollectorStatistics statistics;
+
+        private long nanos, allocatedBytes;
+        private int metricFamilyCount, seriesCount;
+
+        private long startNanos, startAllocatedBytes;
+
+        private volatile boolean completed = false;
+
+        private Collection(final CollectorStatistics statistics) {
+            this.statistics = statistics;
+        }
+
+        @SuppressWarnings("unchecked")
+        Stream<MetricFamily> observe(final MBeanGroupMetricFamilyCollector collector) {
+            final Stream<MetricFamily> metricFamilies;
+
+            collectionStarted();
+            try {
+                metricFamilies = collector.collect();
+
+            } finally {
+                collectionFinished(0);
+            }
+
+            return metricFamilies.map(metricFamily -> {
+                metricFamilyCount++;
+
+                return metricFamily.observedCopy(this);
+            });
+        }
+
+        @Override
+        public void collectionStarted() {
+            if (completed) {
+                return;
+            }
+
+            startNanos = System.nanoTime();
+            startAllocatedBytes = currentThreadAllocatedBytes();
+        }
+
+        @Override
+        public void collectionFinished(final int seriesCount) {
+            if (completed) {
+                return;
+            }
+
+            final long finishAllocatedBytes = currentThreadAllocatedBytes();
+
+            nanos += System.nanoTime() - startNanos;
+
+            if (startAllocatedBytes >= 0 && finishAllocatedBytes >= 0) {
+                allocatedBytes += finishAllocatedBytes - startAllocatedBytes;
+            }
+
+            this.seriesCount += seriesCount;
+        }
+
+        @Override
+        public void encoded(final long bytes) {
+            statistics.encodedBytes.add(bytes);
+        }
+
+        void complete() {
+            if (completed) {
+                return;
+            }
+
+            completed = true;
+
+            statistics.record(nanos, allocatedBytes, metricFamilyCount, seriesCount);
+        }
+    }
+
+    private final Map<String, CollectorStatistics> collectorStatistics = new ConcurrentHashMap<>();
+
+    Collection newCollection(final String collectorName) {
+        return new Collection(collectorStatistics.computeIfAbsent(collectorName, k -> new CollectorStatistics()));
+    }
+
+    void remove(final String collectorName) {
+        collectorStatistics.remove(collectorName);
+    }
+
+    private Stream<NumericMetric> perCollector(final Predicate<String> collectorSelection, final Function<CollectorStatistics, Long> valueFunction) {
+        return collectorStatistics.entrySet().stream()
+                .filter(e -> collectorSelection.test(e.getKey()))
+                .map(e -> new LongMetric(Labels.of("collector", e.getKey()), valueFunction.apply(e.getValue())));
+    }
+
+    Stream<MetricFamily> collect(final Predicate<String> collectorSelection) {
+        final Stream<HistogramMetricFamily.Histogram> latencyHistograms = collectorStatistics.entrySet().stream()
+                .filter(e -> collectorSelection.test(e.getKey()))
+                .map(e -> e.getValue().latencyHistogram(Labels.of("collector", e.getKey())));
+
+        final Stream.Builder<MetricFamily> metricFamilies = Stream.builder();
+
+        metricFamilies.add(new HistogramMetricFamily("cassandra_exporter_collector_duration_seconds", "Time taken to collect metrics from each collector, including the exposition of lazily collected metric families.", latencyHistograms));
+        metricFamilies.add(new GaugeMetricFamily("cassandra_exporter_collector_metric_families", "Number of metric families returned by the most recent collection of each collector.", perCollector(collectorSelection, s -> (long) s.lastMetricFamilyCount)));
+        metricFamilies.add(new GaugeMetricFamily("cassandra_exporter_collector_series", "Number of series returned by the most recent collection of each collector.", perCollector(collectorSelection, s -> (long) s.lastSeriesCount)));
+        metricFamilies.add(new CounterMetricFamily("cassandra_exporter_collector_encoded_bytes_total", "Cumulative size of each collector's metric families, as encoded by exposition.", perCollector(collectorSelection, s -> s.encodedBytes.sum())));
+
+        if (ALLOCATION_ACCOUNTING_SUPPORTED) {
+            metricFamilies.add(new CounterMetricFamily("cassandra_exporter_collector_allocated_bytes_total", "Cumulative heap allocated by the collection of each collector.", perCollector(collectorSelection, s -> s.allocatedBytes.sum())));
+        }
+
+        return metricFamilies.build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which collectors, by name, are run during a collection.
+ *
+ * Collector names are typically the name of the metric family they collect (e.g. "cassandra_table_read_latency_seconds"),
+ * or for collectors that produce multiple families, the collector class name.
+ *
+ * Selectors are either exact names, or when prefixed with '~', regular expressions that must match the entire name
+ * (akin to the PromQL =~ operator).
+ */
+public final class CollectorSelection implements Predicate<String> {
+    private static final String PATTERN_PREFIX = "~";
+
+    private final Set<String> names;
+    private final List<Pattern> patterns;
+
+    private CollectorSelection(final Set<String> names, final List<Pattern> patterns) {
+        this.names = names;
+        this.patterns = patterns;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a selector regular expression is invalid.
+     */
+    public static CollectorSelection parse(final Iterable<String> selectors) {
+        final ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        final ImmutableList.Builder<Pattern> patterns = ImmutableList.builder();
+
+        for (final String selector : selectors) {
+            if (selector.startsWith(PATTERN_PREFIX)) {
+                patterns.add(Pattern.compile(selector.substring(PATTERN_PREFIX.length())));
+
+            } else {
+                names.add(selector);
+            }
+        }
+
+        return new CollectorSelection(names.build(), patterns.build());
+    }
+
+    @Override
+    public boolean test(final String collectorName) {
+        if (names.contains(collectorName)) {
+            return true;
+        }
+
+        for (final Pattern pattern : patterns) {
+            if (pattern.matcher(collectorName).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,38 @@
+package com.zegelin.cassandra.exporter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time, relative to {@link System#nanoTime()}, by which a collection should complete.
+ */
+public final class Deadline {
+    public static final Deadline NONE = new Deadline(false, 0);
+
+    private final boolean isSet;
+    private final long nanoTime;
+
+    private Deadline(final boolean isSet, final long nanoTime) {
+        this.isSet = isSet;
+        this.nanoTime = nanoTime;
+    }
+
+    public static Deadline after(final long duration, final TimeUnit unit) {
+        return new Deadline(true, System.nanoTime() + unit.toNanos(duration));
+    }
+
+    public boolean isSet() {
+        return isSet;
+    }
+
+    /**
+     * @return the time remaining until the deadline, which is zero or negative once it has passed.
+     * @throws IllegalStateException if no deadline is set.
+     */
+    public long remainingNanos() {
+        if (!isSet) {
+            throw new IllegalStateException("No deadline is set.");
+        }
+
+        return nanoTime - System.nanoTime();
+    }
+}
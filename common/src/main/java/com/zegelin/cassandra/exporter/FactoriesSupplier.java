@@ -29,12 +29,17 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
     private static final Set<TableMetricScope> TABLE_SCOPE = Sets.immutableEnumSet(EnumSet.of(TableMetricScope.TABLE));
     private static final Set<TableMetricScope> KEYSPACE_NODE_SCOPE = Sets.immutableEnumSet(EnumSet.of(TableMetricScope.KEYSPACE, TableMetricScope.NODE));
 
+    private static final Pattern HISTOGRAM_JMX_NAME_PATTERN = Pattern.compile(".*(Histogram|Latency)$");
+    private static final Pattern CLIENT_REQUEST_SCOPE_PATTERN = Pattern.compile("(?<operation>.*?)(-(?<consistency>.*))?");
+    private static final Pattern MESSAGING_LATENCY_NAME_PATTERN = Pattern.compile("(?<datacenter>.*?)-Latency");
+    private static final Pattern CONNECTION_TASKS_NAME_PATTERN = Pattern.compile("(?<type>.*)Message.*Tasks");
+
     /**
      * A builder of {@see MBeanGroupMetricFamilyCollector.Factory}s
      */
     private static class FactoryBuilder {
         private final CollectorConstructor collectorConstructor;
-        private final QueryExp objectNameQuery;
+        private final Set<ObjectName> objectNamePatterns;
         private final String metricFamilyName;
 
         private String help;
@@ -56,12 +61,25 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
 
         private final List<Modifier> modifiers = new LinkedList<>();
 
-        FactoryBuilder(final CollectorConstructor collectorConstructor, final QueryExp objectNameQuery, final String metricFamilyName) {
+        FactoryBuilder(final CollectorConstructor collectorConstructor, final ObjectName objectNamePattern, final String metricFamilyName) {
+            this(collectorConstructor, ImmutableSet.of(objectNamePattern), metricFamilyName);
+        }
+
+        FactoryBuilder(final CollectorConstructor collectorConstructor, final Set<ObjectName> objectNamePatterns, final String metricFamilyName) {
             this.collectorConstructor = collectorConstructor;
-            this.objectNameQuery = objectNameQuery;
+            this.objectNamePatterns = ImmutableSet.copyOf(objectNamePatterns);
             this.metricFamilyName = metricFamilyName;
         }
 
+        private boolean matches(final ObjectName name) {
+            for (final ObjectName objectNamePattern : objectNamePatterns) {
+                if (objectNamePattern.apply(name))
+                    return true;
+            }
+
+            return false;
+        }
+
         FactoryBuilder withModifier(final Modifier modifier) {
             modifiers.add(modifier);
 
@@ -82,26 +100,30 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
         }
 
         Factory build() {
-            return mBean -> {
-                try {
-                    if (!objectNameQuery.apply(mBean.name))
+            return new Factory() {
+                @Override
+                public MBeanGroupMetricFamilyCollector createCollector(final NamedObject<?> mBean) {
+                    if (!matches(mBean.name))
                         return null;
-                } catch (final BadStringOperationException | BadBinaryOpValueExpException | BadAttributeValueExpException | InvalidApplicationException e) {
-                    throw new IllegalStateException("Failed to apply object name query to object name.", e);
-                }
 
-                final Map<String, String> keyPropertyList = mBean.name.getKeyPropertyList();
+                    final Map<String, String> keyPropertyList = mBean.name.getKeyPropertyList();
 
-                final String name = String.format("cassandra_%s", metricFamilyName);
-                final Map<String, String> rawLabels = new HashMap<>();
+                    final String name = String.format("cassandra_%s", metricFamilyName);
+                    final Map<String, String> rawLabels = new HashMap<>();
 
-                for (final Modifier modifier : modifiers) {
-                    if (!modifier.modify(keyPropertyList, rawLabels)) {
-                        return null;
+                    for (final Modifier modifier : modifiers) {
+                        if (!modifier.modify(keyPropertyList, rawLabels)) {
+                            return null;
+                        }
                     }
+
+                    return collectorConstructor.groupCollectorForMBean(name, help, Labels.of(rawLabels), mBean);
                 }
 
-                return collectorConstructor.groupCollectorForMBean(name, help, new Labels(rawLabels), mBean);
+                @Override
+                public Set<ObjectName> objectNamePatterns() {
+                    return objectNamePatterns;
+                }
             };
         }
 
@@ -188,8 +210,7 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
                 .withModifier((keyPropertyList, labels) -> {
                     final String scope = keyPropertyList.get("scope");
 
-                    final Pattern scopePattern = Pattern.compile("(?<operation>.*?)(-(?<consistency>.*))?");
-                    final Matcher matcher = scopePattern.matcher(scope);
+                    final Matcher matcher = CLIENT_REQUEST_SCOPE_PATTERN.matcher(scope);
 
                     if (!matcher.matches())
                         throw new IllegalStateException();
@@ -230,8 +251,7 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
                 .withLabelMaker(keyPropertyList -> {
                     final String name = keyPropertyList.get("name");
 
-                    final Pattern namePattern = Pattern.compile("(?<datacenter>.*?)-Latency");
-                    final Matcher matcher = namePattern.matcher(name);
+                    final Matcher matcher = MESSAGING_LATENCY_NAME_PATTERN.matcher(name);
 
                     if (!matcher.matches())
                         throw new IllegalStateException();
@@ -274,20 +294,20 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
     public enum TableMetricScope {
         NODE("node_%s") {
             @Override
-            QueryExp query(final String jmxName) {
-                return format("org.apache.cassandra.metrics:type=Table,name=%s", jmxName);
+            Set<ObjectName> objectNamePatterns(final String jmxName) {
+                return ImmutableSet.of(format("org.apache.cassandra.metrics:type=Table,name=%s", jmxName));
             }
         },
         KEYSPACE("keyspace_%s") {
             @Override
-            QueryExp query(final String jmxName) {
-                return format("org.apache.cassandra.metrics:type=Keyspace,keyspace=*,name=%s", jmxName);
+            Set<ObjectName> objectNamePatterns(final String jmxName) {
+                return ImmutableSet.of(format("org.apache.cassandra.metrics:type=Keyspace,keyspace=*,name=%s", jmxName));
             }
         },
         TABLE("table_%s") {
             @Override
-            QueryExp query(final String jmxName) {
-                return Query.or(
+            Set<ObjectName> objectNamePatterns(final String jmxName) {
+                return ImmutableSet.of(
                         format("org.apache.cassandra.metrics:type=Table,keyspace=*,scope=*,name=%s", jmxName),
                         format("org.apache.cassandra.metrics:type=IndexTable,keyspace=*,scope=*,name=%s", jmxName)
                 );
@@ -308,7 +328,7 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
             this.metricFamilyNameFormat = metricFamilyNameFormat;
         }
 
-        abstract QueryExp query(final String jmxName);
+        abstract Set<ObjectName> objectNamePatterns(final String jmxName);
     }
 
     private Iterator<Factory> tableMetricFactory(final FactoryBuilder.CollectorConstructor collectorConstructor, final String jmxName, final String familyNameSuffix, final String help) {
@@ -336,7 +356,7 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
     }
 
     private Iterator<Factory> tableMetricFactory(final Set<TableMetricScope> tableMetricScopes, final FactoryBuilder.CollectorConstructor collectorConstructor, final String jmxName, final String familyNameSuffix, final String help, final boolean includeCompactionLabels, final Map<String, String> extraLabels) {
-        final boolean isHistogram = jmxName.matches(".*(Histogram|Latency)$");
+        final boolean isHistogram = HISTOGRAM_JMX_NAME_PATTERN.matcher(jmxName).matches();
 
         return tableMetricScopes.stream()
                 .filter(scope -> {
@@ -356,10 +376,10 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
                     return false;
                 })
                 .map(scope -> {
-                    final QueryExp query = scope.query(jmxName);
+                    final Set<ObjectName> objectNamePatterns = scope.objectNamePatterns(jmxName);
                     final String metricFamilyName = String.format(scope.metricFamilyNameFormat, familyNameSuffix);
 
-                    return new FactoryBuilder(collectorConstructor, query, metricFamilyName)
+                    return new FactoryBuilder(collectorConstructor, objectNamePatterns, metricFamilyName)
                             .withHelp(help)
                             .withModifier((keyPropertyList, labels) -> {
                                 labels.putAll(extraLabels);
@@ -476,9 +496,7 @@ public class FactoriesSupplier implements Supplier<List<Factory>> {
 
                     labels.computeIfAbsent("task_type", k -> {
                         final String name = keyPropertyList.get("name");
-                        final Pattern namePattern = Pattern.compile("(?<type>.*)Message.*Tasks");
-
-                        final Matcher matcher = namePattern.matcher(name);
+                        final Matcher matcher = CONNECTION_TASKS_NAME_PATTERN.matcher(name);
 
                         if (!matcher.matches())
                             return null;
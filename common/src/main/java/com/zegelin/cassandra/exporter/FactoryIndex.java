@@ -0,0 +1,116 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector.Factory;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of collector {@link Factory}s by the domain, and the "type" and "name" key properties, of the MBeans they
+ * create collectors for (see {@link Factory#objectNamePatterns()}).
+ *
+ * Cassandra registers tens of MBeans per table, and there are hundreds of factories. Rather than offer every MBean
+ * to every factory, only the candidate factories -- those with a pattern that might match the MBean's name -- are offered it.
+ * Each candidate still applies its patterns in full.
+ */
+final class FactoryIndex {
+    private static final String TYPE_PROPERTY = "type", NAME_PROPERTY = "name";
+
+    private final List<Factory> factories;
+    private final ListMultimap<List<String>, Integer> factoryIndicesByKey;
+    private final List<Integer> unindexedFactoryIndices;
+
+    FactoryIndex(final List<Factory> factories) {
+        this.factories = ImmutableList.copyOf(factories);
+
+        final ImmutableListMultimap.Builder<List<String>, Integer> factoryIndicesByKey = ImmutableListMultimap.builder();
+        final ImmutableList.Builder<Integer> unindexedFactoryIndices = ImmutableList.builder();
+
+        for (int i = 0; i < this.factories.size(); i++) {
+            final Factory factory = this.factories.get(i);
+
+            if (factory.objectNamePatterns().isEmpty()) {
+                unindexedFactoryIndices.add(i);
+                continue;
+            }
+
+            for (final ObjectName pattern : factory.objectNamePatterns()) {
+                if (pattern.isDomainPattern()) {
+                    unindexedFactoryIndices.add(i);
+                    break;
+                }
+
+                factoryIndicesByKey.put(patternKey(pattern), i);
+            }
+        }
+
+        this.factoryIndicesByKey = factoryIndicesByKey.build();
+        this.unindexedFactoryIndices = unindexedFactoryIndices.build();
+    }
+
+    private static String literalKeyProperty(final ObjectName pattern, final String property) {
+        final String value = pattern.getKeyProperty(property);
+
+        if (value == null || pattern.isPropertyValuePattern(property)) {
+            return null;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the most specific key for the pattern -- domain, type and name if the pattern has literal values for both,
+     * otherwise domain and type, or just the domain.
+     */
+    private static List<String> patternKey(final ObjectName pattern) {
+        final String type = literalKeyProperty(pattern, TYPE_PROPERTY);
+
+        if (type == null) {
+            return ImmutableList.of(pattern.getDomain());
+        }
+
+        final String name = literalKeyProperty(pattern, NAME_PROPERTY);
+
+        if (name == null) {
+            return ImmutableList.of(pattern.getDomain(), type);
+        }
+
+        return ImmutableList.of(pattern.getDomain(), type, name);
+    }
+
+    /**
+     * @return the factories that might create a collector for the named MBean, in their original order.
+     */
+    List<Factory> candidates(final ObjectName mBeanName) {
+        final String domain = mBeanName.getDomain();
+        final String type = mBeanName.getKeyProperty(TYPE_PROPERTY);
+        final String name = mBeanName.getKeyProperty(NAME_PROPERTY);
+
+        final boolean[] isCandidate = new boolean[factories.size()];
+
+        unindexedFactoryIndices.forEach(i -> isCandidate[i] = true);
+        factoryIndicesByKey.get(ImmutableList.of(domain)).forEach(i -> isCandidate[i] = true);
+
+        if (type != null) {
+            factoryIndicesByKey.get(ImmutableList.of(domain, type)).forEach(i -> isCandidate[i] = true);
+
+            if (name != null) {
+                factoryIndicesByKey.get(ImmutableList.of(domain, type, name)).forEach(i -> isCandidate[i] = true);
+            }
+        }
+
+        final List<Factory> candidates = new ArrayList<>();
+
+        for (int i = 0; i < isCandidate.length; i++) {
+            if (isCandidate[i]) {
+                candidates.add(factories.get(i));
+            }
+        }
+
+        return candidates;
+    }
+}
@@ -1,13 +1,15 @@
 package com.zegelin.cassandra.exporter;
 
-import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.net.InetAddresses;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.zegelin.jmx.NamedObject;
 import com.zegelin.cassandra.exporter.cli.HarvesterOptions;
 import com.zegelin.prometheus.domain.CounterMetricFamily;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
 import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
 import com.zegelin.prometheus.domain.MetricFamily;
 import com.zegelin.prometheus.domain.NumericMetric;
 import org.slf4j.Logger;
@@ -17,11 +19,19 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
@@ -29,6 +39,10 @@ import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nano
 public abstract class Harvester {
     private static final Logger logger = LoggerFactory.getLogger(Harvester.class);
 
+    // the fraction of a deadline collection's time reserved for collecting, on the collection pool, the collectors
+    // that haven't been collected lazily by then
+    private static final double POOLED_COLLECTION_RESERVE = 0.25;
+
     public enum GlobalLabel implements LabelEnum {
         CLUSTER,
         NODE,
@@ -120,40 +134,145 @@ public abstract class Harvester {
     }
 
     private final List<MBeanGroupMetricFamilyCollector.Factory> collectorFactories;
+    private volatile FactoryIndex collectorFactoryIndex;
 
     private final MetadataFactory metadataFactory;
 
 
     private final Map<String, MBeanGroupMetricFamilyCollector> mBeanCollectorsByName = new ConcurrentHashMap<>();
     private final Map<ObjectName, String> mBeanNameToCollectorNameMap = new ConcurrentHashMap<>();
+    private final AtomicLong collectorsGeneration = new AtomicLong();
+
+    // profile name -> names of the collectors selected by the profile, resolved as collectors are registered
+    private final Map<String, CollectionProfile> profiles;
+    private final Map<String, Set<String>> profileCollectorNames;
+    private final Map<String, ScrapeCoalescer> profileScrapeCoalescers;
+    private final Set<String> profileResolvedCollectorNames = ConcurrentHashMap.newKeySet();
 
     private final Set<Exclusion> exclusions;
     private final Set<GlobalLabel> enabledGlobalLabels;
 
-    private final boolean collectorTimingEnabled;
-    private final Map<String, Stopwatch> collectionTimes = new ConcurrentHashMap<>();
+    private final CollectorInstrumentation collectorInstrumentation;
+
+    private final CollectionExecutor collectionExecutor;
+    private final Map<String, CollectorResults> collectorResults = new ConcurrentHashMap<>();
+
+    private final ScrapeCoalescer scrapeCoalescer;
+    private final LongAdder collectionCount = new LongAdder();
+    private final LongAdder coalescedCollectionCount = new LongAdder();
+
+    private final MBeanRegistrationQueue registrationQueue;
 
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
-            .setNameFormat("cassandra-exporter-harvester-defer-%d")
-            .setDaemon(true)
-            .build());
+    private final long maxStaleResultAgeNanos;
+
+    private final long backgroundCollectionIntervalMillis;
+    private final long maxSnapshotAgeNanos;
+    private volatile CollectionSnapshot snapshot;
+    private volatile ScheduledExecutorService backgroundCollectionExecutorService;
 
 
     protected Harvester(final MetadataFactory metadataFactory, final HarvesterOptions options) {
         this.collectorFactories = new ArrayList<>(new FactoriesSupplier(metadataFactory, options).get());
+        this.collectorFactoryIndex = new FactoryIndex(collectorFactories);
         this.metadataFactory = metadataFactory;
         this.exclusions = options.exclusions;
         this.enabledGlobalLabels = options.globalLabels;
-        this.collectorTimingEnabled = options.collectorTimingEnabled;
+        this.collectorInstrumentation = (options.collectorInstrumentationEnabled ? new CollectorInstrumentation() : null);
+        this.scrapeCoalescer = new ScrapeCoalescer(options.scrapeCoalescingWindowMillis);
+        this.collectionExecutor = new CollectionExecutor(options.collectionThreads, options.collectionThreadPriority);
+        this.registrationQueue = new MBeanRegistrationQueue(new MBeanRegistrationQueue.Registrar() {
+            @Override
+            public boolean isMetadataAvailable(final ObjectName name) {
+                return Harvester.this.isMetadataAvailable(name);
+            }
+
+            @Override
+            public void register(final NamedObject<Object> mBean) {
+                createCollectors(mBean);
+            }
+
+            @Override
+            public void unregister(final ObjectName name) {
+                removeCollectors(name);
+            }
+        }, options.registrationThreads);
+        this.maxStaleResultAgeNanos = TimeUnit.MILLISECONDS.toNanos(options.maxStaleResultAgeMillis);
+        this.backgroundCollectionIntervalMillis = options.backgroundCollectionIntervalMillis;
+        this.maxSnapshotAgeNanos = TimeUnit.MILLISECONDS.toNanos(options.maxSnapshotAgeMillis > 0 ?
+                options.maxSnapshotAgeMillis :
+                2 * options.backgroundCollectionIntervalMillis);
+        this.profiles = ImmutableMap.copyOf(options.collectionProfiles());
+        this.profileCollectorNames = ImmutableMap.copyOf(Maps.transformValues(profiles, p -> ConcurrentHashMap.newKeySet()));
+        this.profileScrapeCoalescers = ImmutableMap.copyOf(Maps.transformValues(profiles, p -> new ScrapeCoalescer(p.coalescingWindowMillis)));
     }
 
-    protected void addCollectorFactory(final MBeanGroupMetricFamilyCollector.Factory factory) {
-        collectorFactories.add(factory);
+    /**
+     * Start background collection, if enabled. Called once the harvester (including any subclass) has been constructed,
+     * so that the background collection thread never sees a partially constructed harvester.
+     */
+    public void start() {
+        if (backgroundCollectionIntervalMillis > 0) {
+            startBackgroundCollection();
+        }
     }
 
+    /**
+     * Stop background collection, if started.
+     */
+    public void stop() {
+        final ScheduledExecutorService backgroundCollectionExecutorService = this.backgroundCollectionExecutorService;
 
-    private void defer(final Runnable runnable) {
-        scheduledExecutorService.schedule(runnable, 1, TimeUnit.SECONDS);
+        if (backgroundCollectionExecutorService != null) {
+            backgroundCollectionExecutorService.shutdownNow();
+        }
+    }
+
+    private void startBackgroundCollection() {
+        // a dedicated thread -- collection shouldn't hold up, or be held up by, collector registration
+        backgroundCollectionExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-exporter-harvester-background-%d")
+                .setDaemon(true)
+                .build());
+
+        backgroundCollectionExecutorService.scheduleWithFixedDelay(this::collectSnapshot, backgroundCollectionIntervalMillis, backgroundCollectionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void collectSnapshot() {
+        try {
+            collectionCount.increment();
+
+            final Deadline deadline = Deadline.after(backgroundCollectionIntervalMillis, TimeUnit.MILLISECONDS);
+
+            final List<MetricFamily> metricFamilies = Stream.concat(collectMetricFamilies(collectorName -> true, deadline, true), Stream.concat(collectionExecutor.collect(), registrationQueue.collect()))
+                    .map(MetricFamily::cachedCopy)
+                    .collect(Collectors.toList());
+
+            // the next snapshot is complete -- swap it in. scrapes in progress continue with the snapshot they started with
+            this.snapshot = new CollectionSnapshot(metricFamilies);
+
+        } catch (final Exception e) {
+            // don't let the exception suppress subsequent collections
+            logger.warn("Background collection failed.", e);
+        }
+    }
+
+    /**
+     * @return the most recent background collection, if background collection is enabled and the snapshot isn't
+     * older than the configured maximum age.
+     */
+    public Optional<CollectionSnapshot> snapshot() {
+        final CollectionSnapshot snapshot = this.snapshot;
+
+        if (snapshot == null || snapshot.ageNanos() > maxSnapshotAgeNanos) {
+            return Optional.empty();
+        }
+
+        return Optional.of(snapshot);
+    }
+
+    protected void addCollectorFactory(final MBeanGroupMetricFamilyCollector.Factory factory) {
+        collectorFactories.add(factory);
+        collectorFactoryIndex = new FactoryIndex(collectorFactories);
     }
 
 
@@ -162,48 +281,104 @@ public abstract class Harvester {
             return;
         }
 
-        // Defer the creation/registration of the collector.
-        // For newly created tables, Cassandra registers the metric MBeans for tables before the table is registered with the
-        // internal Schema. As a result, when run as an agent, registerMBean will be called during table creation
-        // and table metadata lookups in the factory will fail because the table doesn't yet exist in the Schema.
-        defer(() -> {
-            final NamedObject<Object> namedMBean = new NamedObject<>(name, mBean);
+        // Queue the creation/registration of the collectors, which happens in batches, off the caller's thread.
+        // See MBeanRegistrationQueue for how registrations of MBeans for newly created tables are handled.
+        registrationQueue.register(name, mBean);
+    }
 
-            for (final MBeanGroupMetricFamilyCollector.Factory factory : collectorFactories) {
-                try {
-                    final MBeanGroupMetricFamilyCollector collector = factory.createCollector(namedMBean);
+    protected void unregisterMBean(final ObjectName mBeanName) {
+        registrationQueue.unregister(mBeanName);
+    }
 
-                    if (collector == null) {
-                        continue;
-                    }
+    /**
+     * @return false if the named MBean is a table or index metrics MBean, and the table or index doesn't (yet) exist
+     * in the schema. Factories add metadata-derived labels to the collectors they create for these MBeans.
+     */
+    private boolean isMetadataAvailable(final ObjectName name) {
+        if (!name.getDomain().equals("org.apache.cassandra.metrics")) {
+            return true;
+        }
 
-                    if (isExcluded(collector)) {
-                        logger.debug("Skipping registration of collector {} for MBean {} as it matches an exclusion rule.", collector.name(), name);
-                        continue;
-                    }
+        final String type = name.getKeyProperty("type");
+
+        if (!"Table".equals(type) && !"IndexTable".equals(type)) {
+            return true;
+        }
+
+        final String keyspaceName = name.getKeyProperty("keyspace");
+        final String scope = name.getKeyProperty("scope");
+
+        if (keyspaceName == null || scope == null) {
+            // keyspace or global table metrics
+            return true;
+        }
+
+        final String[] nameParts = scope.split("\\.");
+
+        if (nameParts.length > 1) {
+            return metadataFactory.indexMetadata(keyspaceName, nameParts[0], nameParts[1]).isPresent();
+        }
 
-                    logger.debug("Registering collector {} for MBean {}.", collector.name(), name);
+        return metadataFactory.tableOrViewMetadata(keyspaceName, nameParts[0]).isPresent();
+    }
+
+    private void createCollectors(final NamedObject<Object> namedMBean) {
+        final ObjectName name = namedMBean.name;
+
+        for (final MBeanGroupMetricFamilyCollector.Factory factory : collectorFactoryIndex.candidates(name)) {
+            try {
+                final MBeanGroupMetricFamilyCollector collector = factory.createCollector(namedMBean);
 
-                    mBeanCollectorsByName.merge(collector.name(), collector, MBeanGroupMetricFamilyCollector::merge);
-                    mBeanNameToCollectorNameMap.put(name, collector.name());
+                if (collector == null) {
+                    continue;
+                }
 
-                } catch (final Exception e) {
-                    logger.warn("Failed to register collector for MBean {}.", name, e);
+                if (isExcluded(collector)) {
+                    logger.debug("Skipping registration of collector {} for MBean {} as it matches an exclusion rule.", collector.name(), name);
+                    continue;
                 }
+
+                logger.debug("Registering collector {} for MBean {}.", collector.name(), name);
+
+                mBeanCollectorsByName.merge(collector.name(), collector, MBeanGroupMetricFamilyCollector::merge);
+                mBeanNameToCollectorNameMap.put(name, collector.name());
+                resolveProfiles(collector.name());
+                collectorsGeneration.incrementAndGet();
+
+            } catch (final Exception e) {
+                logger.warn("Failed to register collector for MBean {}.", name, e);
             }
-        });
+        }
     }
 
-    protected void unregisterMBean(final ObjectName mBeanName) {
-        final String collectorName = mBeanNameToCollectorNameMap.get(mBeanName);
+    private void removeCollectors(final ObjectName mBeanName) {
+        final String collectorName = mBeanNameToCollectorNameMap.remove(mBeanName);
 
         if (collectorName == null) {
             // no harvester registered
             return;
         }
 
-        defer(() -> {
-            mBeanCollectorsByName.compute(collectorName, (k, v) -> v.removeMBean(mBeanName));
+        if (mBeanCollectorsByName.computeIfPresent(collectorName, (k, v) -> v.removeMBean(mBeanName)) == null) {
+            collectorResults.remove(collectorName);
+
+            if (collectorInstrumentation != null) {
+                collectorInstrumentation.remove(collectorName);
+            }
+        }
+
+        collectorsGeneration.incrementAndGet();
+    }
+
+    private void resolveProfiles(final String collectorName) {
+        if (!profileResolvedCollectorNames.add(collectorName)) {
+            return;
+        }
+
+        profiles.forEach((profileName, profile) -> {
+            if (profile.selection.test(collectorName)) {
+                profileCollectorNames.get(profileName).add(collectorName);
+            }
         });
     }
 
@@ -225,60 +400,600 @@ public abstract class Harvester {
         return false;
     }
 
-    public Stream<MetricFamily> collect() {
-        final Stream<MetricFamily> metricFamilies = mBeanCollectorsByName.entrySet().parallelStream().flatMap((e) -> {
-            final Stopwatch stopwatch = (collectorTimingEnabled ?
-                    collectionTimes.computeIfAbsent(e.getKey(), (k) -> Stopwatch.createUnstarted()) :
-                    null);
+    private static final class CollectorResult {
+        final long nanoTime = System.nanoTime();
+        final List<MetricFamily> metricFamilies;
 
-            try {
-                if (stopwatch != null) {
-                    stopwatch.start();
+        CollectorResult(final List<MetricFamily> metricFamilies) {
+            this.metricFamilies = metricFamilies;
+        }
+    }
+
+    /**
+     * The in-progress pooled collection of a collector, if any, and, if the collector recently missed a deadline,
+     * its stale result.
+     */
+    private final class CollectorResults {
+        private CompletableFuture<List<MetricFamily>> pendingCollection;
+
+        // only set for collectors that missed a deadline, and discarded once older than the maximum stale result age
+        private volatile CollectorResult staleResult;
+        private volatile long slowUntilNanoTime;
+        private volatile boolean isSlow;
+
+        final LongAdder deadlineExceededCount = new LongAdder();
+
+        /**
+         * Collect, and materialize, the collector's metrics on the collection pool.
+         */
+        synchronized CompletableFuture<List<MetricFamily>> collect(final String collectorName, final MBeanGroupMetricFamilyCollector collector) {
+            // share a collection that's still in progress (e.g., one that missed the deadline of an earlier scrape)
+            // rather than piling up calls on a slow MBean
+            if (pendingCollection != null) {
+                return pendingCollection;
+            }
+
+            final CompletableFuture<List<MetricFamily>> collection = collectionExecutor.supply(() -> {
+                final CollectorInstrumentation.Collection instrumentedCollection = newInstrumentedCollection(collectorName);
+
+                try {
+                    // collect sub-streams so that the result may be shared
+                    return collectCollector(collectorName, collector, instrumentedCollection)
+                            .map(MetricFamily::cachedCopy)
+                            .collect(Collectors.toList());
+
+                } finally {
+                    if (instrumentedCollection != null) {
+                        instrumentedCollection.complete();
+                    }
                 }
+            });
+
+            pendingCollection = collection;
 
-                final Stream<MetricFamily> metricFamilyStream = e.getValue().collect();
+            collection.whenComplete((metricFamilies, exception) -> {
+                synchronized (this) {
+                    pendingCollection = null;
+                }
+            });
 
-                if (collectorTimingEnabled) {
-                    // call cache (collect sub-streams) and collect to time the actual collection
-                    return metricFamilyStream.map(MetricFamily::cachedCopy).collect(Collectors.toList()).stream();
+            return collection;
+        }
+
+        /**
+         * Record that the collector missed a deadline. Until the maximum stale result age elapses, the collector is
+         * collected on the collection pool by deadline collections, and the result of the given (late) collection is
+         * kept as its stale result.
+         */
+        void deadlineExceeded(final CompletableFuture<List<MetricFamily>> collection) {
+            deadlineExceededCount.increment();
+
+            if (maxStaleResultAgeNanos <= 0) {
+                return;
+            }
+
+            markSlow();
+
+            if (collection != null) {
+                collection.thenAccept(metricFamilies -> staleResult = new CollectorResult(metricFamilies));
+            }
+        }
+
+        /**
+         * Until the maximum stale result age elapses, the collector is collected on the collection pool by deadline collections.
+         */
+        void markSlow() {
+            if (maxStaleResultAgeNanos <= 0) {
+                return;
+            }
+
+            slowUntilNanoTime = System.nanoTime() + maxStaleResultAgeNanos;
+            isSlow = true;
+        }
+
+        boolean isSlow() {
+            return isSlow && System.nanoTime() - slowUntilNanoTime < 0;
+        }
+
+        CollectorResult staleResult() {
+            final CollectorResult staleResult = this.staleResult;
+
+            if (staleResult == null || System.nanoTime() - staleResult.nanoTime <= maxStaleResultAgeNanos) {
+                return staleResult;
+            }
+
+            this.staleResult = null;
+
+            return null;
+        }
+
+        void expire() {
+            staleResult();
+
+            if (isSlow && !isSlow()) {
+                isSlow = false;
+            }
+        }
+    }
+
+    private static final class CoalescedCollection {
+        final long startTime = System.nanoTime();
+        final CompletableFuture<List<MetricFamily>> metricFamilies = new CompletableFuture<>();
+    }
+
+    /**
+     * Shares a single, materialized collection result between concurrent calls, and calls within the coalescing window
+     * of the start of the last collection. Calls that share a collection wait on it until their own deadline (if set),
+     * and then use the most recent successful result in its place, if it's no older than the maximum stale result age.
+     */
+    private final class ScrapeCoalescer {
+        private final long windowNanos;
+
+        private CoalescedCollection lastCollection;
+        private volatile CollectorResult lastResult;
+
+        ScrapeCoalescer(final long windowMillis) {
+            this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        }
+
+        boolean isEnabled() {
+            return windowNanos > 0;
+        }
+
+        /**
+         * @param collector collects the metric families, concurrently, when a new collection is required.
+         */
+        List<MetricFamily> collect(final Supplier<Stream<MetricFamily>> collector, final Deadline deadline) {
+            final CoalescedCollection collection;
+            final boolean isCollector;
+
+            synchronized (this) {
+                final CoalescedCollection last = lastCollection;
+
+                if (last != null && (!last.metricFamilies.isDone() || System.nanoTime() - last.startTime < windowNanos)) {
+                    collection = last;
+                    isCollector = false;
 
                 } else {
-                    return metricFamilyStream;
+                    collection = lastCollection = new CoalescedCollection();
+                    isCollector = true;
                 }
+            }
 
-            } catch (final Exception exception) {
-                logger.warn("Metrics collector {} failed to collect. Skipping.", e.getKey(), exception);
+            if (isCollector) {
+                collectionCount.increment();
 
-                return Stream.empty();
+                try {
+                    // collect sub-streams so that the result may be shared
+                    final List<MetricFamily> metricFamilies = collector.get()
+                            .map(MetricFamily::cachedCopy)
+                            .collect(Collectors.toList());
 
-            } finally {
-                if (stopwatch != null) {
-                    stopwatch.stop();
+                    lastResult = new CollectorResult(metricFamilies);
+                    collection.metricFamilies.complete(metricFamilies);
+
+                } catch (final Throwable t) {
+                    // complete the collection whatever is thrown -- otherwise every later scrape would wait on it forever
+                    collection.metricFamilies.completeExceptionally(t);
                 }
+
+            } else {
+                coalescedCollectionCount.increment();
             }
-        });
 
-        if (collectorTimingEnabled) {
-            return Stream.concat(metricFamilies, collectTimings());
+            return await(collection, deadline);
+        }
+
+        private List<MetricFamily> await(final CoalescedCollection collection, final Deadline deadline) {
+            try {
+                return (deadline.isSet() ?
+                        collection.metricFamilies.get(Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS) :
+                        collection.metricFamilies.get());
+
+            } catch (final TimeoutException e) {
+                final CollectorResult lastResult = this.lastResult;
+
+                if (lastResult == null || System.nanoTime() - lastResult.nanoTime > maxStaleResultAgeNanos) {
+                    throw new IllegalStateException("The coalesced collection did not complete before the scrape deadline, and there is no recent result to use in its place.");
+                }
+
+                logger.debug("The coalesced collection did not complete before the scrape deadline. Using the result of the previous coalesced collection.");
+
+                return lastResult.metricFamilies;
+
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("The coalesced collection failed.", e.getCause());
+
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException("Interrupted while waiting on the coalesced collection.", e);
+            }
+        }
+    }
+
+    /**
+     * Collect metrics from all collectors.
+     *
+     * When scrape coalescing is enabled, calls share a single, materialized collection result (see {@link ScrapeCoalescer}).
+     *
+     * Collectors that don't complete before the deadline (if set) are replaced by their stale result (if any).
+     */
+    public Stream<MetricFamily> collect(final Deadline deadline) {
+        if (!scrapeCoalescer.isEnabled()) {
+            collectionCount.increment();
+
+            return Stream.concat(collectMetricFamilies(collectorName -> true, deadline, false), Stream.concat(collectionExecutor.collect(), registrationQueue.collect()));
+        }
+
+        final List<MetricFamily> metricFamilies = scrapeCoalescer.collect(() -> collectMetricFamilies(collectorName -> true, deadline, true), deadline);
+
+        return Stream.concat(metricFamilies.stream(), Stream.concat(collectCoalescingCounts(), Stream.concat(collectionExecutor.collect(), registrationQueue.collect())));
+    }
+
+    private Stream<MetricFamily> collectCoalescingCounts() {
+        return Stream.of(
+                new CounterMetricFamily("cassandra_exporter_collections_total", "Number of times metrics have been collected from the collectors.", Stream.of(new LongMetric(null, collectionCount.sum()))),
+                new CounterMetricFamily("cassandra_exporter_coalesced_scrapes_total", "Number of scrapes that were served by sharing the collection of another scrape.", Stream.of(new LongMetric(null, coalescedCollectionCount.sum())))
+        );
+    }
+
+    /**
+     * Collect metrics from only the selected collectors. Unselected collectors aren't run.
+     *
+     * Selective collections are never coalesced, and exclude the exporter's scrape coalescing metrics.
+     */
+    public Stream<MetricFamily> collect(final CollectorSelection selection, final Deadline deadline) {
+        collectionCount.increment();
+
+        return collectMetricFamilies(selection, deadline, false);
+    }
+
+    /**
+     * @return the named profile, or null if there is no such profile.
+     */
+    public CollectionProfile profile(final String profileName) {
+        return profiles.get(profileName);
+    }
+
+    /**
+     * Collect metrics from the collectors of the named profile.
+     *
+     * When the profile's scrape coalescing is enabled, calls share a single, materialized collection result
+     * (see {@link ScrapeCoalescer}). Profile collections exclude the exporter's scrape coalescing metrics.
+     */
+    public Stream<MetricFamily> collectProfile(final String profileName, final Deadline deadline) {
+        final ScrapeCoalescer coalescer = profileScrapeCoalescers.get(profileName);
+
+        if (coalescer == null || !coalescer.isEnabled()) {
+            return collectProfile(profileName, collectorName -> true, deadline);
+        }
+
+        return coalescer.collect(() -> collectProfileMetricFamilies(profileName, collectorName -> true, deadline, true), deadline).stream();
+    }
+
+    /**
+     * Collect metrics from the collectors of the named profile, further limited to those selected by collectorSelection.
+     *
+     * Selective profile collections are never coalesced, and exclude the exporter's scrape coalescing metrics.
+     */
+    public Stream<MetricFamily> collectProfile(final String profileName, final Predicate<String> collectorSelection, final Deadline deadline) {
+        collectionCount.increment();
+
+        return collectProfileMetricFamilies(profileName, collectorSelection, deadline, false);
+    }
+
+    private Stream<MetricFamily> collectProfileMetricFamilies(final String profileName, final Predicate<String> collectorSelection, final Deadline deadline, final boolean concurrent) {
+        final Set<String> collectorNames = profileCollectorNames.get(profileName);
+
+        if (collectorNames == null) {
+            throw new IllegalArgumentException(String.format("Unknown profile '%s'.", profileName));
+        }
+
+        final Predicate<String> profileSelection = ((Predicate<String>) collectorNames::contains).and(collectorSelection);
+
+        final Stream<Map.Entry<String, MBeanGroupMetricFamilyCollector>> collectors = collectorNames.stream()
+                .filter(collectorSelection)
+                .map(collectorName -> Maps.immutableEntry(collectorName, mBeanCollectorsByName.get(collectorName)))
+                .filter(e -> e.getValue() != null); // unregistered
+
+        return collectMetricFamilies(collectors, profileSelection, deadline, concurrent);
+    }
+
+    private Stream<MetricFamily> collectMetricFamilies(final Predicate<String> collectorSelection, final Deadline deadline, final boolean concurrent) {
+        final Stream<Map.Entry<String, MBeanGroupMetricFamilyCollector>> collectors = mBeanCollectorsByName.entrySet().stream()
+                .filter(e -> collectorSelection.test(e.getKey()));
+
+        return collectMetricFamilies(collectors, collectorSelection, deadline, concurrent);
+    }
+
+    /**
+     * @param concurrent when true, collectors are run concurrently on the collection pool and their results materialized.
+     *                   Otherwise, collectors are run by the calling thread as the returned stream is consumed, with
+     *                   the deadline (if set) checked before each collector.
+     */
+    private Stream<MetricFamily> collectMetricFamilies(final Stream<Map.Entry<String, MBeanGroupMetricFamilyCollector>> collectors, final Predicate<String> collectorSelection, final Deadline deadline, final boolean concurrent) {
+        final List<CollectorInstrumentation.Collection> lazyInstrumentedCollections = new ArrayList<>();
+
+        final Stream<MetricFamily> metricFamilies;
+
+        if (concurrent) {
+            metricFamilies = collectMetricFamiliesConcurrently(collectors, collectorSelection, deadline);
+
+        } else if (deadline.isSet()) {
+            metricFamilies = collectMetricFamiliesWithDeadline(collectors, collectorSelection, deadline, lazyInstrumentedCollections);
 
         } else {
+            metricFamilies = collectors.flatMap(e -> collectLazily(e.getKey(), e.getValue(), lazyInstrumentedCollections));
+        }
+
+        if (collectorInstrumentation == null) {
             return metricFamilies;
         }
+
+        // lazy families are collected as they're written -- by the time the stream gets here, they all have been
+        final Stream<MetricFamily> instrumentationMetricFamilies = Stream.of(lazyInstrumentedCollections)
+                .flatMap(instrumentedCollections -> {
+                    instrumentedCollections.forEach(CollectorInstrumentation.Collection::complete);
+
+                    return collectorInstrumentation.collect(collectorSelection);
+                });
+
+        return Stream.concat(metricFamilies, instrumentationMetricFamilies);
+    }
+
+    private Stream<MetricFamily> collectLazily(final String collectorName, final MBeanGroupMetricFamilyCollector collector, final List<CollectorInstrumentation.Collection> lazyInstrumentedCollections) {
+        final CollectorInstrumentation.Collection instrumentedCollection = newInstrumentedCollection(collectorName);
+
+        if (instrumentedCollection != null) {
+            lazyInstrumentedCollections.add(instrumentedCollection);
+        }
+
+        return collectCollector(collectorName, collector, instrumentedCollection);
     }
 
-    private Stream<MetricFamily> collectTimings() {
-        final Stream<NumericMetric> timingMetrics = collectionTimes.entrySet().stream()
-                .map(e -> new Object() {
-                    final String metricFamilyName = e.getKey();
-                    final long cumulativeCollectionTime = e.getValue().elapsed(TimeUnit.NANOSECONDS);
-                })
-                .map(e -> new NumericMetric(Labels.of("collector", e.metricFamilyName), nanosecondsToSeconds(e.cumulativeCollectionTime)));
+    /**
+     * Collect metrics from the collectors as the returned stream is consumed (as for collections without a deadline),
+     * checking the deadline before each collector.
+     *
+     * Once the deadline nears (less than {@link #POOLED_COLLECTION_RESERVE} of the collection's time remains), the
+     * collectors not yet collected are started together on the collection pool, and waited on until the deadline.
+     * Those that don't complete in time are replaced by their stale result (if any), and their late result becomes
+     * their stale result.
+     *
+     * A collector being collected lazily can't be interrupted, but the reserve leaves it time to complete. The lazily
+     * collected collector that was being collected when the deadline passed, or that took longer than the reserve,
+     * and any collector that misses a deadline, is considered slow: until the maximum stale result age elapses, it's
+     * collected on the collection pool instead (and written after the lazily collected collectors), and replaced by
+     * its stale result (if any) whenever it misses the deadline.
+     */
+    private Stream<MetricFamily> collectMetricFamiliesWithDeadline(final Stream<Map.Entry<String, MBeanGroupMetricFamilyCollector>> collectors, final Predicate<String> collectorSelection,
+                                                                   final Deadline deadline, final List<CollectorInstrumentation.Collection> lazyInstrumentedCollections) {
+        expireStaleResults();
+
+        final long pooledCollectionReserveNanos = (long) (Math.max(deadline.remainingNanos(), 0) * POOLED_COLLECTION_RESERVE);
+
+        final List<Map.Entry<String, MBeanGroupMetricFamilyCollector>> lazyCollectors = new ArrayList<>();
+        final List<Map.Entry<String, CompletableFuture<List<MetricFamily>>>> pooledCollections = new ArrayList<>();
+
+        // start the pooled collections of slow collectors before collecting any other
+        collectors.forEach(e -> {
+            final CollectorResults results = collectorResults.get(e.getKey());
+
+            if (results != null && results.isSlow()) {
+                pooledCollections.add(Maps.immutableEntry(e.getKey(), results.collect(e.getKey(), e.getValue())));
+
+            } else {
+                lazyCollectors.add(e);
+            }
+        });
+
+        final List<NumericMetric> staleResultAges = new ArrayList<>();
+
+        final LazyCollector lazyCollector = new LazyCollector();
+
+        // set once the remaining collectors have been started on the collection pool
+        final boolean[] pooled = new boolean[1];
+
+        final Stream<MetricFamily> lazyMetricFamilies = IntStream.range(0, lazyCollectors.size()).boxed().flatMap(i -> {
+            lazyCollectorWritten(lazyCollector, deadline, pooledCollectionReserveNanos);
+
+            if (pooled[0]) {
+                return Stream.empty();
+            }
+
+            if (deadline.remainingNanos() <= pooledCollectionReserveNanos) {
+                logger.debug("Scrape deadline is near. Collecting the {} remaining collectors on the collection pool.", lazyCollectors.size() - i);
+
+                lazyCollectors.subList(i, lazyCollectors.size()).forEach(e ->
+                        pooledCollections.add(Maps.immutableEntry(e.getKey(), collectorResults(e.getKey()).collect(e.getKey(), e.getValue())))
+                );
+
+                pooled[0] = true;
+
+                return Stream.empty();
+            }
+
+            final Map.Entry<String, MBeanGroupMetricFamilyCollector> e = lazyCollectors.get(i);
+
+            lazyCollector.name = e.getKey();
+            lazyCollector.startNanoTime = System.nanoTime();
+
+            return collectLazily(e.getKey(), e.getValue(), lazyInstrumentedCollections);
+        });
+
+        // the pooled collections are waited on last, so that the lazy collectors aren't held up by them
+        // (and include any collectors started on the pool as the deadline neared)
+        final Stream<MetricFamily> pooledMetricFamilies = Stream.of(pooledCollections)
+                .flatMap(collections -> {
+                    lazyCollectorWritten(lazyCollector, deadline, pooledCollectionReserveNanos);
+
+                    return collections.stream()
+                            .flatMap(e -> awaitCollection(e.getKey(), e.getValue(), deadline, staleResultAges));
+                });
+
+        // once every collector has been written
+        final Stream<MetricFamily> deadlineMetricFamilies = Stream.of(staleResultAges)
+                .flatMap(ages -> deadlineMetricFamilies(collectorSelection, ages));
+
+        return Stream.concat(lazyMetricFamilies, Stream.concat(pooledMetricFamilies, deadlineMetricFamilies));
+    }
+
+    /**
+     * The lazily collected collector being written by a deadline collection, if any.
+     */
+    private static final class LazyCollector {
+        String name;
+        long startNanoTime;
+    }
+
+    /**
+     * Called once the lazily collected collector being written (if any) has been written. A collector that was still
+     * being written when the deadline passed missed it. A collector that took longer than the time reserved for pooled
+     * collections could, by itself, make a later scrape miss its deadline -- it's considered slow, without having missed it.
+     */
+    private void lazyCollectorWritten(final LazyCollector lazyCollector, final Deadline deadline, final long pooledCollectionReserveNanos) {
+        final String collectorName = lazyCollector.name;
+        lazyCollector.name = null;
+
+        if (collectorName == null) {
+            return;
+        }
+
+        if (deadline.remainingNanos() <= 0) {
+            logger.debug("Metrics collector {} did not complete before the scrape deadline. Collecting it concurrently until its stale result expires.", collectorName);
+
+            collectorResults(collectorName).deadlineExceeded(null);
+
+        } else if (System.nanoTime() - lazyCollector.startNanoTime > pooledCollectionReserveNanos) {
+            logger.debug("Metrics collector {} took longer than the time reserved for pooled collections. Collecting it concurrently.", collectorName);
+
+            collectorResults(collectorName).markSlow();
+        }
+    }
+
+    /**
+     * Collect, and materialize, metrics from all collectors concurrently, waiting on each collector until the deadline (if set).
+     *
+     * Collectors that don't complete in time are replaced by their stale result (if any), and are reported by the
+     * exporter's stale result metrics. Their collection continues in the background, and its result becomes their
+     * stale result.
+     */
+    private Stream<MetricFamily> collectMetricFamiliesConcurrently(final Stream<Map.Entry<String, MBeanGroupMetricFamilyCollector>> collectors, final Predicate<String> collectorSelection, final Deadline deadline) {
+        if (deadline.isSet()) {
+            expireStaleResults();
+        }
+
+        // start every collection before waiting on any of them
+        final List<Map.Entry<String, CompletableFuture<List<MetricFamily>>>> collections = collectors
+                .map(e -> Maps.immutableEntry(e.getKey(), collectorResults(e.getKey()).collect(e.getKey(), e.getValue())))
+                .collect(Collectors.toList());
+
+        final List<MetricFamily> metricFamilies = new ArrayList<>();
+        final List<NumericMetric> staleResultAges = new ArrayList<>();
+
+        for (final Map.Entry<String, CompletableFuture<List<MetricFamily>>> collection : collections) {
+            awaitCollection(collection.getKey(), collection.getValue(), deadline, staleResultAges)
+                    .forEach(metricFamilies::add);
+        }
+
+        if (deadline.isSet()) {
+            deadlineMetricFamilies(collectorSelection, staleResultAges).forEach(metricFamilies::add);
+        }
+
+        return metricFamilies.stream();
+    }
+
+    /**
+     * Wait on a pooled collection until the deadline (if set). If the collection misses the deadline, the collector's
+     * stale result (if any) is returned in its place.
+     */
+    private Stream<MetricFamily> awaitCollection(final String collectorName, final CompletableFuture<List<MetricFamily>> collection, final Deadline deadline, final List<NumericMetric> staleResultAges) {
+        try {
+            return (deadline.isSet() ?
+                    collection.get(Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS) :
+                    collection.get()).stream();
+
+        } catch (final TimeoutException e) {
+            collectorResults(collectorName).deadlineExceeded(collection);
+
+            return staleResult(collectorName, staleResultAges);
+
+        } catch (final ExecutionException e) {
+            logger.warn("Metrics collector {} failed to collect. Skipping.", collectorName, e.getCause());
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return Stream.empty();
+    }
+
+    private Stream<MetricFamily> staleResult(final String collectorName, final List<NumericMetric> staleResultAges) {
+        final CollectorResult staleResult = collectorResults(collectorName).staleResult();
+
+        if (staleResult == null) {
+            // reported by the deadline exceeded count
+            logger.debug("Metrics collector {} did not complete before the scrape deadline and has no stale result. Skipping.", collectorName);
+
+            return Stream.empty();
+        }
+
+        logger.debug("Metrics collector {} did not complete before the scrape deadline. Using its stale result.", collectorName);
+
+        staleResultAges.add(new NumericMetric(Labels.of("collector", collectorName), nanosecondsToSeconds(System.nanoTime() - staleResult.nanoTime)));
+
+        return staleResult.metricFamilies.stream();
+    }
+
+    private Stream<MetricFamily> deadlineMetricFamilies(final Predicate<String> collectorSelection, final List<NumericMetric> staleResultAges) {
+        final Stream<NumericMetric> deadlineExceededCounts = collectorResults.entrySet().stream()
+                .filter(e -> collectorSelection.test(e.getKey()))
+                .filter(e -> e.getValue().deadlineExceededCount.sum() > 0)
+                .map(e -> new LongMetric(Labels.of("collector", e.getKey()), e.getValue().deadlineExceededCount.sum()));
 
         return Stream.of(
-                new CounterMetricFamily("cassandra_exporter_collection_time_seconds_total", "Cumulative time taken to run each metrics collector.", timingMetrics)
+                new GaugeMetricFamily("cassandra_exporter_stale_collector_result_age_seconds", "Age of the stale result of each collector that didn't complete before the scrape deadline, and was used in its place.", staleResultAges.stream()),
+                new CounterMetricFamily("cassandra_exporter_collector_deadline_exceeded_total", "Number of times each collector didn't complete before the scrape deadline.", deadlineExceededCounts)
         );
     }
 
+    private void expireStaleResults() {
+        collectorResults.values().forEach(CollectorResults::expire);
+    }
+
+    private CollectorResults collectorResults(final String collectorName) {
+        return collectorResults.computeIfAbsent(collectorName, k -> new CollectorResults());
+    }
+
+    private CollectorInstrumentation.Collection newInstrumentedCollection(final String collectorName) {
+        return (collectorInstrumentation != null ? collectorInstrumentation.newCollection(collectorName) : null);
+    }
+
+    /**
+     * @param instrumentedCollection if non-null, observes the collection and exposition of the collector's metric families.
+     */
+    private Stream<MetricFamily> collectCollector(final String collectorName, final MBeanGroupMetricFamilyCollector collector, final CollectorInstrumentation.Collection instrumentedCollection) {
+        try {
+            return (instrumentedCollection != null ?
+                    instrumentedCollection.observe(collector) :
+                    collector.collect());
+
+        } catch (final Exception exception) {
+            logger.warn("Metrics collector {} failed to collect. Skipping.", collectorName, exception);
+
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * @return a value that changes whenever collectors are added, merged or removed.
+     * Used to invalidate anything derived from the collectors' metrics (such as cached encoded series).
+     */
+    public long collectorsGeneration() {
+        return collectorsGeneration.get();
+    }
+
     public Labels globalLabels() {
         final InetAddress localBroadcastAddress = metadataFactory.localBroadcastAddress();
         final MetadataFactory.EndpointMetadata localMetadata = metadataFactory.endpointMetadata(localBroadcastAddress)
@@ -291,6 +1006,6 @@ public abstract class Harvester {
         LabelEnum.addIfEnabled(GlobalLabel.DATACENTER, enabledGlobalLabels, mapBuilder, localMetadata::dataCenter);
         LabelEnum.addIfEnabled(GlobalLabel.RACK, enabledGlobalLabels, mapBuilder, localMetadata::rack);
 
-        return new Labels(mapBuilder.build());
+        return Labels.of(mapBuilder.build());
     }
 }
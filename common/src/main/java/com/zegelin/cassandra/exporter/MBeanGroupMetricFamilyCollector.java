@@ -1,9 +1,11 @@
 package com.zegelin.cassandra.exporter;
 
+import com.google.common.collect.ImmutableSet;
 import com.zegelin.jmx.NamedObject;
 import com.zegelin.prometheus.domain.MetricFamily;
 
 import javax.management.ObjectName;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public abstract class MBeanGroupMetricFamilyCollector {
@@ -18,14 +20,17 @@ public abstract class MBeanGroupMetricFamilyCollector {
      * Merge two {@link MBeanGroupMetricFamilyCollector}s together.
      *
      * @param other The other {@link MBeanGroupMetricFamilyCollector} to merge with.
-     * @return a new {@link MBeanGroupMetricFamilyCollector} that is the combinator of this {@link MBeanGroupMetricFamilyCollector} and {@param other}
+     * @return a new {@link MBeanGroupMetricFamilyCollector} that is the combinator of this {@link MBeanGroupMetricFamilyCollector} and {@param other},
+     * or this collector, updated in place. Collectors that update in place must remain safe to collect from while
+     * being updated. The Harvester never merges into, or removes from, the same collector concurrently.
      */
     public MBeanGroupMetricFamilyCollector merge(final MBeanGroupMetricFamilyCollector other) {
         throw new IllegalStateException(String.format("Merging of %s and %s not implemented.", this, other));
     }
 
     /**
-     * @return a new MBeanGroupMetricFamilyCollector with the named MBean removed, or null if the collector is empty.
+     * @return a new MBeanGroupMetricFamilyCollector (or this collector, updated in place) with the named MBean removed,
+     * or null if the collector is empty.
      */
     public MBeanGroupMetricFamilyCollector removeMBean(final ObjectName mBeanName) {
         return null;
@@ -45,5 +50,13 @@ public abstract class MBeanGroupMetricFamilyCollector {
          * @return the MBeanGroupMetricFamilyCollector for the given MBean, or null
          */
         MBeanGroupMetricFamilyCollector createCollector(final NamedObject<?> mBean);
+
+        /**
+         * @return the ObjectName patterns of the MBeans this factory may create collectors for, used to only offer the
+         * factory MBeans that it might support. An empty set (the default) means unknown -- the factory is offered every MBean.
+         */
+        default Set<ObjectName> objectNamePatterns() {
+            return ImmutableSet.of();
+        }
     }
 }
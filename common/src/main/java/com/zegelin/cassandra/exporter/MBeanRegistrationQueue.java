@@ -0,0 +1,261 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zegelin.jmx.NamedObject;
+import com.zegelin.prometheus.domain.CounterMetricFamily;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.LongMetric;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.NumericMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
+
+/**
+ * Applies MBean registrations and unregistrations in batches, across a small pool of threads.
+ *
+ * For newly created tables, Cassandra registers the metric MBeans for tables before the table is registered with the
+ * internal Schema, and table metadata lookups made while creating collectors would fail. Registrations of MBeans whose
+ * metadata isn't available yet are retried with exponential backoff. Once the retries are exhausted they're registered
+ * regardless, without the metadata-derived labels. All other registrations are applied as soon as their batch drains.
+ *
+ * Operations on the same MBean are applied in the order they were made. A registration waiting to be retried is
+ * superseded (and never applied) once another operation on the same MBean is made.
+ */
+final class MBeanRegistrationQueue {
+    private static final Logger logger = LoggerFactory.getLogger(MBeanRegistrationQueue.class);
+
+    private static final long BATCH_DELAY_MILLIS = 100;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 250;
+    private static final long MAX_RETRY_DELAY_MILLIS = 8000;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    interface Registrar {
+        /**
+         * @return true if the metadata needed to create collectors for the named MBean is available.
+         */
+        boolean isMetadataAvailable(final ObjectName name);
+
+        void register(final NamedObject<Object> mBean);
+
+        void unregister(final ObjectName name);
+    }
+
+    private static final class Operation {
+        final ObjectName name;
+        final Object mBean; // null for unregistration
+        final long sequence;
+
+        int attempts = 0;
+
+        Operation(final ObjectName name, final Object mBean, final long sequence) {
+            this.name = name;
+            this.mBean = mBean;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Registrar registrar;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    private final Queue<Operation> pendingOperations = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // registrations waiting to be retried, by MBean name. a subsequent operation on the same MBean supersedes the retry
+    private final Map<ObjectName, Operation> retryingRegistrations = new ConcurrentHashMap<>();
+
+    // the sequence number of the most recent operation on each (registered) MBean. a retried registration that isn't
+    // the most recent operation on its MBean has been superseded, even if its retry was already due
+    private final AtomicLong operationSequence = new AtomicLong();
+    private final Map<ObjectName, Long> latestOperationSequences = new ConcurrentHashMap<>();
+
+    private final LongAdder registrationCount = new LongAdder();
+    private final LongAdder unregistrationCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder registrationNanos = new LongAdder();
+
+    MBeanRegistrationQueue(final Registrar registrar, final int threads) {
+        this(registrar, newScheduler(), newExecutor(threads));
+    }
+
+    /**
+     * @param scheduler runs batches and schedules retries. Must be single-threaded, so that batches never overlap.
+     * @param executor applies the operations of each batch.
+     */
+    MBeanRegistrationQueue(final Registrar registrar, final ScheduledExecutorService scheduler, final Executor executor) {
+        this.registrar = registrar;
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-exporter-harvester-registration-scheduler-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private static Executor newExecutor(final int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("cassandra-exporter-harvester-registration-%d")
+                        .setDaemon(true)
+                        .build());
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    void register(final ObjectName name, final Object mBean) {
+        enqueue(newOperation(name, mBean));
+    }
+
+    void unregister(final ObjectName name) {
+        enqueue(newOperation(name, null));
+    }
+
+    private Operation newOperation(final ObjectName name, final Object mBean) {
+        final Operation operation = new Operation(name, mBean, operationSequence.incrementAndGet());
+
+        latestOperationSequences.merge(name, operation.sequence, Math::max);
+
+        // supersede any pending retry now, rather than once this operation is applied -- the retry may be due first
+        retryingRegistrations.remove(name);
+
+        return operation;
+    }
+
+    private boolean isSuperseded(final Operation operation) {
+        final Long latestSequence = latestOperationSequences.get(operation.name);
+
+        return latestSequence == null || latestSequence != operation.sequence;
+    }
+
+    private void enqueue(final Operation operation) {
+        pendingOperations.add(operation);
+
+        if (drainScheduled.compareAndSet(false, true)) {
+            // give the rest of a burst (e.g., all the MBeans of a new table) a chance to join the batch
+            scheduler.schedule(this::drain, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Apply all pending operations, grouped by MBean. Groups are applied concurrently, and the operations of each group in order.
+     * Runs on the (single) scheduler thread, and waits for the batch to complete, hence batches never overlap.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+
+        final Map<ObjectName, List<Operation>> operationsByName = new LinkedHashMap<>();
+
+        Operation operation;
+        while ((operation = pendingOperations.poll()) != null) {
+            operationsByName.computeIfAbsent(operation.name, k -> new ArrayList<>()).add(operation);
+        }
+
+        final CompletableFuture<?>[] groups = operationsByName.values().stream()
+                .map(operations -> CompletableFuture.runAsync(() -> operations.forEach(this::apply), executor))
+                .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(groups).join();
+
+        } catch (final Exception e) {
+            logger.warn("Failed to apply MBean registrations.", e);
+        }
+    }
+
+    private void apply(final Operation operation) {
+        try {
+            if (operation.mBean == null) {
+                registrar.unregister(operation.name);
+                unregistrationCount.increment();
+
+                latestOperationSequences.remove(operation.name, operation.sequence);
+                return;
+            }
+
+            if (operation.attempts > 0 && isSuperseded(operation)) {
+                logger.debug("Retry of the registration of MBean {} was superseded by a newer operation.", operation.name);
+                return;
+            }
+
+            operation.attempts++;
+
+            if (operation.attempts < MAX_ATTEMPTS && !registrar.isMetadataAvailable(operation.name)) {
+                retry(operation);
+                return;
+            }
+
+            if (operation.attempts >= MAX_ATTEMPTS) {
+                logger.debug("Metadata for MBean {} is still unavailable after {} attempts. Registering without it.", operation.name, operation.attempts);
+            }
+
+            final long startTime = System.nanoTime();
+
+            registrar.register(new NamedObject<>(operation.name, operation.mBean));
+
+            registrationNanos.add(System.nanoTime() - startTime);
+            registrationCount.increment();
+
+        } catch (final Exception e) {
+            logger.warn("Failed to apply {} of MBean {}.", operation.mBean == null ? "unregistration" : "registration", operation.name, e);
+        }
+    }
+
+    private void retry(final Operation operation) {
+        final long delayMillis = Math.min(INITIAL_RETRY_DELAY_MILLIS << (operation.attempts - 1), MAX_RETRY_DELAY_MILLIS);
+
+        logger.debug("Metadata for MBean {} is not yet available. Retrying registration in {} ms.", operation.name, delayMillis);
+
+        retryingRegistrations.put(operation.name, operation);
+        retryCount.increment();
+
+        scheduler.schedule(() -> {
+            if (retryingRegistrations.remove(operation.name, operation) && !isSuperseded(operation)) {
+                enqueue(operation);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Stream<NumericMetric> value(final long value) {
+        return Stream.of(new LongMetric(null, value));
+    }
+
+    Stream<MetricFamily> collect() {
+        return Stream.of(
+                new GaugeMetricFamily("cassandra_exporter_pending_mbean_registrations", "Number of MBean registrations and unregistrations waiting to be applied, including registrations waiting to be retried.", value(pendingOperations.size() + retryingRegistrations.size())),
+                new CounterMetricFamily("cassandra_exporter_mbean_registrations_total", "Number of MBean registrations applied.", value(registrationCount.sum())),
+                new CounterMetricFamily("cassandra_exporter_mbean_unregistrations_total", "Number of MBean unregistrations applied.", value(unregistrationCount.sum())),
+                new CounterMetricFamily("cassandra_exporter_mbean_registration_retries_total", "Number of MBean registrations retried because the MBean's metadata wasn't yet available.", value(retryCount.sum())),
+                new CounterMetricFamily("cassandra_exporter_mbean_registration_seconds_total", "Cumulative time spent creating and registering collectors for MBeans.", Stream.of(new NumericMetric(null, nanosecondsToSeconds(registrationNanos.sum()))))
+        );
+    }
+}
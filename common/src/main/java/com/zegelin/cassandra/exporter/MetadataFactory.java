@@ -51,7 +51,7 @@ public abstract class MetadataFactory {
                         labelsBuilder.put("endpoint_rack", metadata.rack());
                     });
 
-                    return new Labels(labelsBuilder.build());
+                    return Labels.of(labelsBuilder.build());
                 }
             });
 
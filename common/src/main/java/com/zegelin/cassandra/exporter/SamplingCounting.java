@@ -1,8 +1,9 @@
 package com.zegelin.cassandra.exporter;
 
+import com.zegelin.function.DoubleDoubleFunction;
 import com.zegelin.prometheus.domain.Interval;
 
-import java.util.stream.Stream;
+import java.util.List;
 
 /**
  * Similar to {@link com.codahale.metrics.Sampling} and {@link com.codahale.metrics.Counting}
@@ -10,7 +11,16 @@ import java.util.stream.Stream;
  * This makes it adaptable to JMX MBeans that only expose known quantiles.
  */
 public interface SamplingCounting {
+    /**
+     * The quantiles written by {@link #getQuantiles(double[], DoubleDoubleFunction)}, by index.
+     */
+    List<Interval.Quantile> QUANTILES = Interval.Quantile.STANDARD_PERCENTILES_TABLE;
+
     long getCount();
 
-    Iterable<Interval> getIntervals();
+    /**
+     * Write the value of each quantile in {@link #QUANTILES} to the same index of {@param values},
+     * with {@param scaleFunction} applied.
+     */
+    void getQuantiles(double[] values, DoubleDoubleFunction scaleFunction);
 }
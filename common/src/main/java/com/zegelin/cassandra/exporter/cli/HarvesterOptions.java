@@ -1,9 +1,16 @@
 package com.zegelin.cassandra.exporter.cli;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Sets;
 import com.zegelin.netty.Floats;
+import com.zegelin.cassandra.exporter.CollectionProfile;
+import com.zegelin.cassandra.exporter.CollectorSelection;
 import com.zegelin.cassandra.exporter.FactoriesSupplier;
 import com.zegelin.cassandra.exporter.Harvester;
+import com.zegelin.cassandra.exporter.netty.HttpHandler;
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
 
@@ -12,12 +19,26 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 public class HarvesterOptions {
     private static final Set<String> CASSANDRA_SYSTEM_KEYSPACES = ImmutableSet.of("system", "system_traces", "system_auth", "system_schema", "system_distributed");
 
+    private static final String JVM_COLLECTORS_PATTERN = "com\\.zegelin\\.cassandra\\.exporter\\.collector\\.jvm\\..*";
+    private static final String TABLE_COLLECTORS_PATTERN = "cassandra_(table|keyspace)_.*";
+
+    private static final Map<String, CollectorSelection> DEFAULT_PROFILES = ImmutableMap.of(
+            "jvm", CollectorSelection.parse(ImmutableSet.of("~" + JVM_COLLECTORS_PATTERN)),
+            "tables", CollectorSelection.parse(ImmutableSet.of("~" + TABLE_COLLECTORS_PATTERN)),
+            "node", CollectorSelection.parse(ImmutableSet.of(String.format("~(?!%s|%s).*", JVM_COLLECTORS_PATTERN, TABLE_COLLECTORS_PATTERN)))
+    );
+
     private final Set<Path> processedExclusionFiles = new HashSet<>();
 
     @CommandLine.Spec
@@ -135,9 +156,187 @@ public class HarvesterOptions {
             description = "Collect per-thread CPU times, where each thread gets its own time-series. (EXPERIMENTAL)")
     public boolean perThreadTimingEnabled = false;
 
-    @Option(names = "--enable-collector-timing",
-            description = "Record the cumulative time taken to run each collector and export the results.")
-    public boolean collectorTimingEnabled;
+    @Option(names = {"--enable-collector-instrumentation", "--enable-collector-timing"},
+            description = "Record, and export, the collection latency of each collector, the number of metric families " +
+                    "and series it returned, and the bytes allocated by its collection and encoded by exposition.")
+    public boolean collectorInstrumentationEnabled;
+
+    @Option(names = "--scrape-coalescing-window", paramLabel = "MILLISECONDS",
+            description = "Share a single collection between scrapes that arrive within MILLISECONDS of each other " +
+                    "(e.g., Prometheus HA pairs and federation). Scrapes that arrive while a collection is in progress wait for it. " +
+                    "Each scrape is still encoded in its own format. " +
+                    "0 disables coalescing, and metrics are collected as they are written. Defaults to 0.")
+    public long scrapeCoalescingWindowMillis = 0;
+
+    @Option(names = "--background-collection-interval", paramLabel = "MILLISECONDS",
+            description = "Collect metrics from all collectors in the background every MILLISECONDS, and serve scrapes of /metrics " +
+                    "from the most recent collection (a snapshot) rather than collecting on demand. " +
+                    "Scrapes that select collectors (via 'name[]' or a profile) are always collected on demand. " +
+                    "Collectors that don't complete within the interval are replaced by their stale result, if any (see --max-stale-result-age). " +
+                    "0 disables background collection. Defaults to 0.")
+    public long backgroundCollectionIntervalMillis = 0;
+
+    @Option(names = "--max-snapshot-age", paramLabel = "MILLISECONDS",
+            description = "Maximum age of a background collection snapshot. Scrapes that arrive when the most recent snapshot is older " +
+                    "(e.g., because background collection has stalled) are collected on demand. " +
+                    "0 sets the maximum to twice the background collection interval. Defaults to 0.")
+    public long maxSnapshotAgeMillis = 0;
+
+    @Option(names = "--max-stale-result-age", paramLabel = "MILLISECONDS",
+            description = "Maximum age of the stale result of a collector that didn't complete before a scrape deadline. " +
+                    "A collector that misses a deadline is run on the collection threads by later scrapes with a deadline, and when it misses again " +
+                    "its stale result (the late result of the collection that missed the previous deadline) is exposed in its place. " +
+                    "Stale results are only kept for collectors that miss deadlines, and are discarded after MILLISECONDS. " +
+                    "0 disables stale results. Defaults to 60000.")
+    public long maxStaleResultAgeMillis = 60000;
+
+    public int collectionThreads = 4;
+
+    @Option(names = "--collection-threads", paramLabel = "COUNT",
+            description = "Maximum number of threads used to run collectors concurrently. " +
+                    "Collectors are run on these threads for coalesced scrapes, background collections, and scrapes with a deadline " +
+                    "(see --scrape-timeout-offset) for collectors that missed a recent deadline, or that haven't been collected once the deadline nears. " +
+                    "Otherwise collectors are run by the exposition thread as metrics are written. Defaults to 4.")
+    void setCollectionThreads(final int collectionThreads) {
+        if (collectionThreads < 1) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(), "The number of collection threads must be at least 1.");
+        }
+
+        this.collectionThreads = collectionThreads;
+    }
+
+    public int collectionThreadPriority = Thread.NORM_PRIORITY;
+
+    @Option(names = "--collection-thread-priority", paramLabel = "PRIORITY",
+            description = "Priority, from 1 (lowest) to 10 (highest), of the collection threads. " +
+                    "Note that on Linux the JVM ignores thread priorities unless started with -XX:ThreadPriorityPolicy=1. Defaults to 5.")
+    void setCollectionThreadPriority(final int collectionThreadPriority) {
+        if (collectionThreadPriority < Thread.MIN_PRIORITY || collectionThreadPriority > Thread.MAX_PRIORITY) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("The collection thread priority must be between %d and %d.", Thread.MIN_PRIORITY, Thread.MAX_PRIORITY));
+        }
+
+        this.collectionThreadPriority = collectionThreadPriority;
+    }
+
+    public int registrationThreads = 2;
+
+    @Option(names = "--registration-threads", paramLabel = "COUNT",
+            description = "Number of threads used to create and register collectors for newly registered MBeans, " +
+                    "and to remove unregistered MBeans from collectors. Defaults to 2.")
+    void setRegistrationThreads(final int registrationThreads) {
+        if (registrationThreads < 1) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(), "The number of registration threads must be at least 1.");
+        }
+
+        this.registrationThreads = registrationThreads;
+    }
+
+    public final Map<String, CollectorSelection> profiles = new LinkedHashMap<>(DEFAULT_PROFILES);
+
+    @Option(names = "--profile", paramLabel = "NAME=SELECTOR",
+            description = "Define a named collection profile, served at /metrics/NAME, that runs only the selected collectors. " +
+                    "SELECTOR is either a collector name, or a regular expression prefixed with '~' (as per the 'name[]' URI query parameter). " +
+                    "Profile collector membership is resolved once, as collectors are registered, rather than on every request. " +
+                    "This option may be specified more than once to define multiple profiles, or multiple selectors for a profile. " +
+                    "Profiles named 'jvm', 'node' and 'tables' are predefined and may be redefined.")
+    void setProfiles(final List<String> values) {
+        final ListMultimap<String, String> profileSelectors = ArrayListMultimap.create();
+
+        for (final String value : values) {
+            final int separator = value.indexOf('=');
+
+            if (separator < 1) {
+                throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                        String.format("Invalid profile '%s'. Profiles must be specified as NAME=SELECTOR.", value));
+            }
+
+            profileSelectors.put(value.substring(0, separator), value.substring(separator + 1));
+        }
+
+        for (final String profileName : profileSelectors.keySet()) {
+            try {
+                profiles.put(profileName, CollectorSelection.parse(profileSelectors.get(profileName)));
+
+            } catch (final IllegalArgumentException e) {
+                throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                        String.format("Invalid selector for profile '%s'.", profileName), e);
+            }
+        }
+    }
+
+    private final Map<String, HttpHandler.HelpExposition> profileHelpExpositions = new HashMap<>();
+    private final Map<String, Long> profileCoalescingWindowsMillis = new HashMap<>();
+
+    @Option(names = "--profile-option", paramLabel = "NAME.OPTION=VALUE",
+            description = "Set an option of the named collection profile (see --profile). " +
+                    "OPTION 'help' sets whether the profile's metric family help is exposed -- INCLUDE, EXCLUDE or AUTOMATIC (as per --family-help, " +
+                    "which it overrides for the profile). " +
+                    "OPTION 'coalescing-window' sets, in milliseconds, the window in which scrapes of the profile share (and are served from a cached copy of) " +
+                    "a single collection (as per --scrape-coalescing-window, which it overrides for the profile). 0 disables coalescing for the profile. " +
+                    "Profiles are never served from background collection snapshots. " +
+                    "This option may be specified more than once to set multiple options.")
+    void setProfileOptions(final List<String> values) {
+        for (final String value : values) {
+            final int valueSeparator = value.indexOf('=');
+            final int nameSeparator = (valueSeparator < 0 ? -1 : value.lastIndexOf('.', valueSeparator));
+
+            if (nameSeparator < 1 || valueSeparator < nameSeparator + 2) {
+                throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                        String.format("Invalid profile option '%s'. Profile options must be specified as NAME.OPTION=VALUE.", value));
+            }
+
+            final String profileName = value.substring(0, nameSeparator);
+            final String option = value.substring(nameSeparator + 1, valueSeparator);
+            final String optionValue = value.substring(valueSeparator + 1);
+
+            try {
+                switch (option) {
+                    case "help":
+                        profileHelpExpositions.put(profileName, HttpHandler.HelpExposition.valueOf(optionValue.toUpperCase(Locale.ENGLISH)));
+                        break;
+
+                    case "coalescing-window":
+                        final long coalescingWindowMillis = Long.parseLong(optionValue);
+
+                        if (coalescingWindowMillis < 0) {
+                            throw new IllegalArgumentException();
+                        }
+
+                        profileCoalescingWindowsMillis.put(profileName, coalescingWindowMillis);
+                        break;
+
+                    default:
+                        throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                                String.format("Unknown profile option '%s'. Valid options are 'help' and 'coalescing-window'.", option));
+                }
+
+            } catch (final IllegalArgumentException e) {
+                throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                        String.format("Invalid value '%s' for option '%s' of profile '%s'.", optionValue, option, profileName), e);
+            }
+        }
+    }
+
+    /**
+     * @return the collection profiles, by name, with their options applied.
+     * @throws IllegalArgumentException if options were set for an undefined profile.
+     */
+    public Map<String, CollectionProfile> collectionProfiles() {
+        for (final String profileName : Sets.union(profileHelpExpositions.keySet(), profileCoalescingWindowsMillis.keySet())) {
+            if (!profiles.containsKey(profileName)) {
+                throw new IllegalArgumentException(String.format("Options were set for undefined profile '%s'.", profileName));
+            }
+        }
+
+        final Map<String, CollectionProfile> collectionProfiles = new LinkedHashMap<>();
+
+        profiles.forEach((profileName, selection) -> collectionProfiles.put(profileName, new CollectionProfile(selection,
+                profileHelpExpositions.get(profileName),
+                profileCoalescingWindowsMillis.getOrDefault(profileName, scrapeCoalescingWindowMillis))));
+
+        return collectionProfiles;
+    }
 
 
     @Option(names = "--exclude-keyspaces")
@@ -2,9 +2,11 @@ package com.zegelin.cassandra.exporter.cli;
 
 import com.zegelin.picocli.InetSocketAddressTypeConverter;
 import com.zegelin.cassandra.exporter.netty.HttpHandler;
+import picocli.CommandLine;
 import picocli.CommandLine.Option;
 
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.List;
 
 public class HttpServerOptions {
@@ -13,6 +15,15 @@ public class HttpServerOptions {
 
     private static final int DEFAULT_PORT = 9500;
 
+    public enum SslImplementation {
+        OPENSSL,
+        JDK,
+        DISCOVER
+    }
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec commandSpec;
+
     static class ListenInetSocketAddressTypeConverter extends InetSocketAddressTypeConverter {
         @Override
         protected int defaultPort() {
@@ -45,4 +56,111 @@ public class HttpServerOptions {
                     "Defaults to ${DEFAULT-VALUE}."
     )
     public HttpHandler.HelpExposition helpExposition = HttpHandler.HelpExposition.AUTOMATIC;
+
+    @Option(names = {"--exposition-threads"},
+            paramLabel = "COUNT",
+            defaultValue = "2",
+            description = "Number of threads used to collect and encode metrics. " +
+                    "Each connection is served by one of these threads, which allows concurrent scrapes to proceed independently " +
+                    "while the network I/O thread is left to handle I/O. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public int expositionThreads;
+
+    @Option(names = {"--io-threads"},
+            paramLabel = "COUNT",
+            defaultValue = "1",
+            description = "Number of network I/O threads. " +
+                    "When the native epoll transport is in use, each listen address is bound once per I/O thread (using SO_REUSEPORT) " +
+                    "so that the kernel distributes incoming connections between them. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public int ioThreads;
+
+    @Option(names = {"--no-native-transport"},
+            description = "Disable the use of the native epoll transport on Linux and always use the NIO transport. " +
+                    "The NIO transport is used regardless on platforms where the native transport isn't available.")
+    public boolean nativeTransportDisabled = false;
+
+    @Option(names = {"--keep-alive-timeout"},
+            paramLabel = "SECONDS",
+            defaultValue = "60",
+            description = "Time after which an idle persistent (keep-alive) HTTP connection is closed. " +
+                    "0 disables persistent connections, and connections are closed after each response. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public int keepAliveTimeoutSeconds;
+
+    @Option(names = {"--scrape-timeout-offset"},
+            paramLabel = "MILLISECONDS",
+            defaultValue = "500",
+            description = "Time subtracted from the scrape timeout advertised by Prometheus (in the X-Prometheus-Scrape-Timeout-Seconds request header) " +
+                    "to leave time for the response to be encoded and transferred. " +
+                    "Collectors that don't complete before the resulting deadline are replaced by their stale result, if any (see --max-stale-result-age). " +
+                    "Requests without the header have no deadline. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public long scrapeTimeoutOffsetMillis;
+
+    @Option(names = {"--ssl-certificate"},
+            paramLabel = "FILE",
+            description = "Path to a PEM file containing the server X.509 certificate chain. " +
+                    "When specified (along with --ssl-private-key), the server only accepts HTTPS connections.")
+    public Path sslCertificateFile;
+
+    @Option(names = {"--ssl-private-key"},
+            paramLabel = "FILE",
+            description = "Path to a PEM file containing the server PKCS#8 private key.")
+    public Path sslPrivateKeyFile;
+
+    @Option(names = {"--ssl-private-key-password"},
+            paramLabel = "PASSWORD",
+            description = "Password of the server private key, if it is encrypted.")
+    public String sslPrivateKeyPassword;
+
+    @Option(names = {"--ssl-implementation"},
+            paramLabel = "IMPLEMENTATION",
+            defaultValue = "DISCOVER",
+            description = "SSL/TLS implementation to use. " +
+                    "OPENSSL requires netty-tcnative on the classpath. DISCOVER uses OPENSSL when it is available, otherwise JDK. " +
+                    "Valid values: ${COMPLETION-CANDIDATES}. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public SslImplementation sslImplementation = SslImplementation.DISCOVER;
+
+    @Option(names = {"--ssl-session-cache-size"},
+            paramLabel = "COUNT",
+            defaultValue = "10000",
+            description = "Number of TLS sessions to cache, so that clients (scrapers) may resume sessions rather than perform a full handshake. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public long sslSessionCacheSize;
+
+    @Option(names = {"--ssl-session-timeout"},
+            paramLabel = "SECONDS",
+            defaultValue = "3600",
+            description = "Time after which a cached TLS session (or session ticket) expires. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public long sslSessionTimeoutSeconds;
+
+    @Option(names = {"--ssl-session-ticket-key-file"},
+            paramLabel = "FILE",
+            description = "Path to a file containing one or more 48 byte TLS session ticket keys " +
+                    "(each a 16 byte name, 16 byte HMAC key and 16 byte AES key). " +
+                    "New tickets are encrypted with the first key, and all keys are accepted, allowing keys to be rotated. " +
+                    "The file is reloaded along with the certificate. " +
+                    "When not specified, keys are generated at startup, and tickets don't survive a restart. " +
+                    "Session tickets require the OPENSSL implementation -- the JDK implementation only resumes sessions from the session cache.")
+    public Path sslSessionTicketKeyFile;
+
+    @Option(names = {"--ssl-reload-interval"},
+            paramLabel = "SECONDS",
+            defaultValue = "60",
+            description = "Interval at which the certificate, private key and session ticket key files are checked for modification. " +
+                    "Modified files are reloaded and used for new connections. " +
+                    "0 disables reloading. " +
+                    "Defaults to ${DEFAULT-VALUE}.")
+    public long sslReloadIntervalSeconds;
+
+    public boolean isSslEnabled() {
+        if (sslCertificateFile != null ^ sslPrivateKeyFile != null) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(), "Both --ssl-certificate and --ssl-private-key are required when either is used.");
+        }
+
+        return sslCertificateFile != null;
+    }
 }
@@ -3,10 +3,12 @@ package com.zegelin.cassandra.exporter.collector;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
+import com.zegelin.jmx.NamedObject;
 import com.zegelin.prometheus.domain.MetricFamily;
 
 import javax.management.ObjectName;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -14,14 +16,22 @@ import java.util.stream.Stream;
 public class CachingCollector extends MBeanGroupMetricFamilyCollector {
 
     public static Factory cache(final Factory delegateFactory, final long duration, final TimeUnit unit) {
-        return (mBean) -> {
-            final MBeanGroupMetricFamilyCollector collector = delegateFactory.createCollector(mBean);
+        return new Factory() {
+            @Override
+            public MBeanGroupMetricFamilyCollector createCollector(final NamedObject<?> mBean) {
+                final MBeanGroupMetricFamilyCollector collector = delegateFactory.createCollector(mBean);
 
-            if (collector == null) {
-                return null;
+                if (collector == null) {
+                    return null;
+                }
+
+                return new CachingCollector(collector, duration, unit);
             }
 
-            return new CachingCollector(collector, duration, unit);
+            @Override
+            public Set<ObjectName> objectNamePatterns() {
+                return delegateFactory.objectNamePatterns();
+            }
         };
     }
 
@@ -49,7 +49,7 @@ public class FailureDetectorMBeanMetricFamilyCollector extends MBeanGroupMetricF
                 final String endpoint = ((String) d.get("Endpoint")).split("/")[1];
                 final Labels labels = metadataFactory.endpointLabels(endpoint);
 
-                return new NumericMetric(labels, ((Double) d.get("PHI")).floatValue());
+                return new NumericMetric(labels, (Double) d.get("PHI"));
             });
 
             metricFamilyStreamBuilder.add(new GaugeMetricFamily("cassandra_endpoint_phi", "level of suspicion that an endpoint might be down.", phiMetricsStream));
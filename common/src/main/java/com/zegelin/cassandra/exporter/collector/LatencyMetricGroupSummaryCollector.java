@@ -1,12 +1,9 @@
 package com.zegelin.cassandra.exporter.collector;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
 import com.zegelin.jmx.NamedObject;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.cassandra.exporter.MetricValueConversionFunctions;
 import com.zegelin.cassandra.exporter.SamplingCounting;
-import com.zegelin.prometheus.domain.Interval;
 import com.zegelin.prometheus.domain.Labels;
 import com.zegelin.prometheus.domain.MetricFamily;
 import com.zegelin.prometheus.domain.SummaryMetricFamily;
@@ -14,8 +11,9 @@ import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxCounterMBean;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxTimerMBean;
 
 import javax.management.ObjectName;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
 import static com.zegelin.cassandra.exporter.CassandraMetricsUtilities.jmxTimerMBeanAsSamplingCounting;
@@ -39,9 +37,17 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
             this.totalLatencyCounter = totalLatencyCounter;
         }
 
+        /**
+         * @return true if a and b each have a latency timer, or each have a total latency counter.
+         */
+        static boolean conflicts(final LatencyMetricGroup a, final LatencyMetricGroup b) {
+            return (a.latencyTimer != null && b.latencyTimer != null) ||
+                    (a.totalLatencyCounter != null && b.totalLatencyCounter != null);
+        }
+
         static LatencyMetricGroup merge(final LatencyMetricGroup a, final LatencyMetricGroup b) {
-            if (a.latencyTimer != null && a.totalLatencyCounter != null) {
-                throw new IllegalStateException(); // TODO: exception message (this group is already full "merged")
+            if (conflicts(a, b)) {
+                throw new IllegalStateException(String.format("Latency metric groups %s and %s cannot be merged, yet their labels are the same.", a, b));
             }
 
             return new LatencyMetricGroup(
@@ -50,6 +56,13 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
             );
         }
 
+        @Override
+        public String toString() {
+            return String.format("[latency: %s, total latency: %s]",
+                    latencyTimer == null ? null : latencyTimer.name,
+                    totalLatencyCounter == null ? null : totalLatencyCounter.name);
+        }
+
         boolean incomplete() {
             return latencyTimer == null || totalLatencyCounter == null;
         }
@@ -72,12 +85,29 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
 
     private final String name;
     private final String help;
-    private final Map<Labels, LatencyMetricGroup> latencyMetricGroups;
 
-    private LatencyMetricGroupSummaryCollector(final String name, final String help, final Map<Labels, LatencyMetricGroup> latencyMetricGroups) {
+    // updated in place by merge and removeMBean (which the Harvester never calls concurrently for the same collector).
+    // iteration by collect is weakly consistent, and the order is stable between updates
+    private final ConcurrentMap<Labels, LatencyMetricGroup> latencyMetricGroups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ObjectName, Labels> labelsByMBeanName = new ConcurrentHashMap<>();
+
+    private LatencyMetricGroupSummaryCollector(final String name, final String help, final Labels labels, final LatencyMetricGroup latencyMetricGroup) {
         this.name = name;
         this.help = help;
-        this.latencyMetricGroups = ImmutableMap.copyOf(latencyMetricGroups);
+
+        put(labels, latencyMetricGroup);
+    }
+
+    private void put(final Labels labels, final LatencyMetricGroup latencyMetricGroup) {
+        latencyMetricGroups.merge(labels, latencyMetricGroup, LatencyMetricGroup::merge);
+
+        if (latencyMetricGroup.latencyTimer != null) {
+            labelsByMBeanName.put(latencyMetricGroup.latencyTimer.name, labels);
+        }
+
+        if (latencyMetricGroup.totalLatencyCounter != null) {
+            labelsByMBeanName.put(latencyMetricGroup.totalLatencyCounter.name, labels);
+        }
     }
 
 
@@ -87,7 +117,7 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
 
         final LatencyMetricGroup latencyMetricGroup = new LatencyMetricGroup(timer, counter);
 
-        return new LatencyMetricGroupSummaryCollector(name, help, ImmutableMap.of(labels, latencyMetricGroup));
+        return new LatencyMetricGroupSummaryCollector(name, help, labels, latencyMetricGroup);
     }
 
     @Override
@@ -95,6 +125,12 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
         return name;
     }
 
+    /**
+     * Merges other into this collector, in place. Each merge only touches the groups of other, rather than
+     * copying every group, so that registering the MBeans of many tables isn't quadratic.
+     *
+     * @return this collector
+     */
     @Override
     public MBeanGroupMetricFamilyCollector merge(final MBeanGroupMetricFamilyCollector rawOther) {
         if (!(rawOther instanceof LatencyMetricGroupSummaryCollector)) {
@@ -103,33 +139,38 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
 
         final LatencyMetricGroupSummaryCollector other = (LatencyMetricGroupSummaryCollector) rawOther;
 
-        final HashMap<Labels, LatencyMetricGroup> newLatencyMetricGroups = new HashMap<>(latencyMetricGroups);
-        for (final Map.Entry<Labels, LatencyMetricGroup> group : other.latencyMetricGroups.entrySet()) {
-            newLatencyMetricGroups.merge(group.getKey(), group.getValue(), LatencyMetricGroup::merge);
+        for (final Map.Entry<Labels, LatencyMetricGroup> entry : other.latencyMetricGroups.entrySet()) {
+            // check for conflicts first, so that a failed merge leaves this collector unchanged
+            final LatencyMetricGroup existing = latencyMetricGroups.get(entry.getKey());
+
+            if (existing != null && LatencyMetricGroup.conflicts(existing, entry.getValue())) {
+                throw new IllegalStateException(String.format("Latency metric groups %s and %s cannot be merged, yet their labels are the same.", existing, entry.getValue()));
+            }
         }
 
-        return new LatencyMetricGroupSummaryCollector(name, help, newLatencyMetricGroups);
+        other.latencyMetricGroups.forEach(this::put);
+
+        return this;
     }
 
+    /**
+     * Removes the named MBean from this collector, in place.
+     *
+     * @return this collector, or null if it's now empty
+     */
     @Override
     public MBeanGroupMetricFamilyCollector removeMBean(final ObjectName mBeanName) {
-        final HashMap<Labels, LatencyMetricGroup> newLatencyMetricGroups = new HashMap<>(latencyMetricGroups.size());
+        final Labels labels = labelsByMBeanName.remove(mBeanName);
 
-        for (final Map.Entry<Labels, LatencyMetricGroup> entry : latencyMetricGroups.entrySet()) {
-            final LatencyMetricGroup latencyMetricGroup = entry.getValue().removeMBean(mBeanName);
-
-            if (latencyMetricGroup == null) {
-                continue;
-            }
-
-            newLatencyMetricGroups.put(entry.getKey(), latencyMetricGroup);
+        if (labels != null) {
+            latencyMetricGroups.computeIfPresent(labels, (k, group) -> group.removeMBean(mBeanName));
         }
 
-        if (newLatencyMetricGroups.size() == 0) {
+        if (latencyMetricGroups.isEmpty()) {
             return null;
         }
 
-        return new LatencyMetricGroupSummaryCollector(name, help, newLatencyMetricGroups);
+        return this;
     }
 
     @Override
@@ -141,14 +182,11 @@ public class LatencyMetricGroupSummaryCollector extends MBeanGroupMetricFamilyCo
                 })
                 .filter(e -> !e.latencyMetricGroup.incomplete())
                 .map(e -> {
-                    final float count = e.latencyMetricGroup.latencyTimer.object.getCount();
-                    final float sum = microsecondsToSeconds(e.latencyMetricGroup.totalLatencyCounter.object.getCount());
-
-                    final Iterable<Interval> quantiles = Iterables.transform(e.latencyMetricGroup.latencyTimer.object.getIntervals(),
-                            i -> i.transform(MetricValueConversionFunctions::nanosecondsToSeconds)
-                    );
+                    final double count = e.latencyMetricGroup.latencyTimer.object.getCount();
+                    final double sum = microsecondsToSeconds(e.latencyMetricGroup.totalLatencyCounter.object.getCount());
 
-                    return new SummaryMetricFamily.Summary(e.labels, sum, count, quantiles);
+                    return new SummaryMetricFamily.Summary(e.labels, sum, count, SamplingCounting.QUANTILES,
+                            quantileValues -> e.latencyMetricGroup.latencyTimer.object.getQuantiles(quantileValues, MetricValueConversionFunctions::nanosecondsToSeconds));
                 });
 
 
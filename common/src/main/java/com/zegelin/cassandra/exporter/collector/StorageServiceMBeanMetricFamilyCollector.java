@@ -1,11 +1,16 @@
 package com.zegelin.cassandra.exporter.collector;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.cassandra.exporter.MetadataFactory;
 import com.zegelin.prometheus.domain.GaugeMetricFamily;
 import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
 import com.zegelin.prometheus.domain.MetricFamily;
 import com.zegelin.prometheus.domain.NumericMetric;
 import org.apache.cassandra.service.StorageServiceMBean;
@@ -20,6 +25,7 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static com.zegelin.cassandra.exporter.CassandraObjectNames.STORAGE_SERVICE_MBEAN_NAME;
@@ -43,6 +49,20 @@ public class StorageServiceMBeanMetricFamilyCollector extends MBeanGroupMetricFa
 
     private final Map<Labels, FileStore> labeledFileStores;
 
+    // retained between collections so that their encoded forms are reused
+    private final LoadingCache<Map.Entry<Labels, String>, Labels> keyspaceEndpointLabels = CacheBuilder.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build(new CacheLoader<Map.Entry<Labels, String>, Labels>() {
+                @Override
+                public Labels load(final Map.Entry<Labels, String> key) {
+                    return Labels.of(ImmutableMap.<String, String>builder()
+                            .putAll(key.getKey())
+                            .put("keyspace", key.getValue())
+                            .build()
+                    );
+                }
+            });
+
 
     private StorageServiceMBeanMetricFamilyCollector(final StorageServiceMBean storageServiceMBean,
                                                      final MetadataFactory metadataFactory, final Set<String> excludedKeyspaces) {
@@ -102,11 +122,7 @@ public class StorageServiceMBeanMetricFamilyCollector extends MBeanGroupMetricFa
                                         final float ownership = e.getValue();
                                     })
                                     .map(e -> {
-                                        final Labels labels = new Labels(ImmutableMap.<String, String>builder()
-                                                .putAll(metadataFactory.endpointLabels(e.endpoint))
-                                                .put("keyspace", keyspace)
-                                                .build()
-                                        );
+                                        final Labels labels = keyspaceEndpointLabels.getUnchecked(Maps.immutableEntry(metadataFactory.endpointLabels(e.endpoint), keyspace));
 
                                         return new NumericMetric(labels, e.ownership);
                                     });
@@ -130,9 +146,9 @@ public class StorageServiceMBeanMetricFamilyCollector extends MBeanGroupMetricFa
                 final FileStore fileStore = entry.getValue();
 
                 try {
-                    fileStoreTotalSpaceMetrics.add(new NumericMetric(labels, fileStore.getTotalSpace()));
-                    fileStoreUsableSpaceMetrics.add(new NumericMetric(labels, fileStore.getUsableSpace()));
-                    fileStoreUnallocatedSpaceMetrics.add(new NumericMetric(labels, fileStore.getUnallocatedSpace()));
+                    fileStoreTotalSpaceMetrics.add(new LongMetric(labels, fileStore.getTotalSpace()));
+                    fileStoreUsableSpaceMetrics.add(new LongMetric(labels, fileStore.getUsableSpace()));
+                    fileStoreUnallocatedSpaceMetrics.add(new LongMetric(labels, fileStore.getUnallocatedSpace()));
 
                 } catch (final IOException e) {
                     logger.warn("Failed to get FileStore {} consumption metrics.", fileStore, e);
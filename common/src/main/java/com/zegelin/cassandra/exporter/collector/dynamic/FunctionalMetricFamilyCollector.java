@@ -1,15 +1,19 @@
 package com.zegelin.cassandra.exporter.collector.dynamic;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
 import com.zegelin.jmx.NamedObject;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.prometheus.domain.Labels;
 import com.zegelin.prometheus.domain.MetricFamily;
 
 import javax.management.ObjectName;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -20,6 +24,17 @@ public class FunctionalMetricFamilyCollector<T> extends MBeanGroupMetricFamilyCo
         String name();
         String help();
         Map<Labels, T> labeledObjects();
+
+        /**
+         * Iterate the labeled objects without allocating a view of them.
+         */
+        void forEachLabeledObject(BiConsumer<Labels, T> consumer);
+
+        /**
+         * Per-collector state for the {@link CollectorFunction}, such as reusable {@link com.zegelin.prometheus.domain.NumericMetricBatchSource}s.
+         * The state is created by {@param stateFactory} on first use and retained for the lifetime of the collector.
+         */
+        <S> S state(Function<LabeledObjectGroup<T>, S> stateFactory);
     }
 
     public interface CollectorFunction<T> extends Function<LabeledObjectGroup<T>, Stream<MetricFamily>> {}
@@ -27,7 +42,10 @@ public class FunctionalMetricFamilyCollector<T> extends MBeanGroupMetricFamilyCo
 
     private final CollectorFunction<T> collectorFunction;
 
-    private final Map<Labels, NamedObject<T>> labeledObjects;
+    // updated in place by merge and removeMBean (which the Harvester never calls concurrently for the same collector).
+    // iteration by collector functions is weakly consistent, and the order is stable between updates
+    private final ConcurrentMap<Labels, NamedObject<T>> labeledObjects = new ConcurrentHashMap<>();
+    private final SetMultimap<ObjectName, Labels> labelsByMBeanName = Multimaps.synchronizedSetMultimap(HashMultimap.create());
 
     private final LabeledObjectGroup<T> objectGroup = new LabeledObjectGroup<T>() {
         @Override
@@ -44,15 +62,53 @@ public class FunctionalMetricFamilyCollector<T> extends MBeanGroupMetricFamilyCo
         public Map<Labels, T> labeledObjects() {
             return Maps.transformValues(FunctionalMetricFamilyCollector.this.labeledObjects, o -> o.object);
         }
+
+        @Override
+        public void forEachLabeledObject(final BiConsumer<Labels, T> consumer) {
+            for (final Map.Entry<Labels, NamedObject<T>> entry : FunctionalMetricFamilyCollector.this.labeledObjects.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue().object);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <S> S state(final Function<LabeledObjectGroup<T>, S> stateFactory) {
+            Object state = collectorFunctionState;
+
+            if (state == null) {
+                synchronized (this) {
+                    state = collectorFunctionState;
+
+                    if (state == null) {
+                        collectorFunctionState = state = stateFactory.apply(this);
+                    }
+                }
+            }
+
+            return (S) state;
+        }
     };
 
+    private volatile Object collectorFunctionState;
+
     public FunctionalMetricFamilyCollector(final String name, final String help,
                                            final Map<Labels, NamedObject<T>> labeledObjects,
                                            final CollectorFunction<T> collectorFunction) {
         this.name = name;
         this.help = help;
-        this.labeledObjects = ImmutableMap.copyOf(labeledObjects);
         this.collectorFunction = collectorFunction;
+
+        labeledObjects.forEach(this::put);
+    }
+
+    private void put(final Labels labels, final NamedObject<T> object) {
+        final NamedObject<T> existing = labeledObjects.putIfAbsent(labels, object);
+
+        if (existing != null) {
+            throw new IllegalStateException(String.format("Object %s and %s cannot be merged, yet their labels are the same.", existing, object));
+        }
+
+        labelsByMBeanName.put(object.name, labels);
     }
 
     @Override
@@ -60,6 +116,12 @@ public class FunctionalMetricFamilyCollector<T> extends MBeanGroupMetricFamilyCo
         return name;
     }
 
+    /**
+     * Merges other into this collector, in place. Each merge is O(size of other), rather than a copy of
+     * every labeled object, so that registering the MBeans of many tables isn't quadratic.
+     *
+     * @return this collector
+     */
     @Override
     public MBeanGroupMetricFamilyCollector merge(final MBeanGroupMetricFamilyCollector rawOther) {
         if (!(rawOther instanceof FunctionalMetricFamilyCollector)) {
@@ -68,23 +130,33 @@ public class FunctionalMetricFamilyCollector<T> extends MBeanGroupMetricFamilyCo
 
         final FunctionalMetricFamilyCollector<T> other = (FunctionalMetricFamilyCollector<T>) rawOther;
 
-        final Map<Labels, NamedObject<T>> newLabeledObjects = new HashMap<>(labeledObjects);
         for (final Map.Entry<Labels, NamedObject<T>> entry : other.labeledObjects.entrySet()) {
-            newLabeledObjects.merge(entry.getKey(), entry.getValue(), (o1, o2) -> {throw new IllegalStateException(String.format("Object %s and %s cannot be merged, yet their labels are the same.", o1, o2));});
+            // check for conflicts first, so that a failed merge leaves this collector unchanged
+            if (labeledObjects.containsKey(entry.getKey())) {
+                throw new IllegalStateException(String.format("Object %s and %s cannot be merged, yet their labels are the same.", labeledObjects.get(entry.getKey()), entry.getValue()));
+            }
         }
 
-        return new FunctionalMetricFamilyCollector<>(name, help, newLabeledObjects, collectorFunction);
+        other.labeledObjects.forEach(this::put);
+
+        return this;
     }
 
+    /**
+     * Removes the named MBean from this collector, in place.
+     *
+     * @return this collector, or null if it's now empty
+     */
     @Override
     public MBeanGroupMetricFamilyCollector removeMBean(final ObjectName objectName) {
-        @SuppressWarnings("ConstantConditions") // ImmutableMap values cannot be null
-        final Map<Labels, NamedObject<T>> metrics = ImmutableMap.copyOf(Maps.filterValues(this.labeledObjects, m -> !m.name.equals(objectName)));
+        for (final Labels labels : labelsByMBeanName.removeAll(objectName)) {
+            labeledObjects.remove(labels);
+        }
 
-        if (metrics.isEmpty())
+        if (labeledObjects.isEmpty())
             return null;
 
-        return new FunctionalMetricFamilyCollector<>(this.name, this.help, metrics, collectorFunction);
+        return this;
     }
 
     @Override
@@ -5,6 +5,7 @@ import com.zegelin.jmx.ObjectNames;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.prometheus.domain.GaugeMetricFamily;
 import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
 import com.zegelin.prometheus.domain.MetricFamily;
 import com.zegelin.prometheus.domain.NumericMetric;
 
@@ -64,8 +65,8 @@ public class BufferPoolMXBeanMetricFamilyCollector extends MBeanGroupMetricFamil
             final Labels labels = entry.getKey();
             final BufferPoolMXBean bufferPoolMXBean = entry.getValue();
 
-            estimatedBuffersMetrics.add(new NumericMetric(labels, bufferPoolMXBean.getCount()));
-            totalCapacityBytesMetrics.add(new NumericMetric(labels, bufferPoolMXBean.getTotalCapacity()));
+            estimatedBuffersMetrics.add(new LongMetric(labels, bufferPoolMXBean.getCount()));
+            totalCapacityBytesMetrics.add(new LongMetric(labels, bufferPoolMXBean.getTotalCapacity()));
             usedBytesMetrics.add(new NumericMetric(labels, neg1ToNaN(bufferPoolMXBean.getMemoryUsed())));
         }
 
@@ -5,6 +5,7 @@ import com.zegelin.jmx.ObjectNames;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.prometheus.domain.GaugeMetricFamily;
 import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
 import com.zegelin.prometheus.domain.MetricFamily;
 import com.zegelin.prometheus.domain.NumericMetric;
 
@@ -27,7 +28,7 @@ public class MemoryPoolMXBeanMetricFamilyCollector extends MBeanGroupMetricFamil
 
         final MemoryPoolMXBean memoryPoolMXBean = (MemoryPoolMXBean) mBean.object;
 
-        final Labels poolLabels = new Labels(ImmutableMap.of(
+        final Labels poolLabels = Labels.of(ImmutableMap.of(
                 "pool", memoryPoolMXBean.getName(),
                 "type", memoryPoolMXBean.getType().name()
         ));
@@ -79,8 +80,8 @@ public class MemoryPoolMXBeanMetricFamilyCollector extends MBeanGroupMetricFamil
             final MemoryUsage usage = memoryPoolMXBean.getUsage();
 
             initialBytesMetrics.add(new NumericMetric(labels, neg1ToNaN(usage.getInit())));
-            usedBytesMetrics.add(new NumericMetric(labels, usage.getUsed()));
-            committedBytesMetrics.add(new NumericMetric(labels, usage.getCommitted()));
+            usedBytesMetrics.add(new LongMetric(labels, usage.getUsed()));
+            committedBytesMetrics.add(new LongMetric(labels, usage.getCommitted()));
             maximumBytesMetrics.add(new NumericMetric(labels, neg1ToNaN(usage.getMax())));
         }
 
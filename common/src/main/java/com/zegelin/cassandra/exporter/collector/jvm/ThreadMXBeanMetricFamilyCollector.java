@@ -1,6 +1,10 @@
 package com.zegelin.cassandra.exporter.collector.jvm;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.zegelin.jmx.ObjectNames;
 import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
 import com.zegelin.prometheus.domain.*;
@@ -9,6 +13,8 @@ import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static com.zegelin.cassandra.exporter.MetricValueConversionFunctions.nanosecondsToSeconds;
@@ -28,9 +34,38 @@ public class ThreadMXBeanMetricFamilyCollector extends  MBeanGroupMetricFamilyCo
         };
     }
 
+    private static final class ThreadLabels {
+        final Labels systemMode, userMode;
+
+        ThreadLabels(final long id, final String name) {
+            this.systemMode = Labels.of(ImmutableMap.of(
+                    "id", String.valueOf(id),
+                    "name", name,
+                    "mode", "system"
+            ));
+
+            this.userMode = Labels.of(ImmutableMap.of(
+                    "id", String.valueOf(id),
+                    "name", name,
+                    "mode", "user"
+            ));
+        }
+    }
+
     private final ThreadMXBean threadMXBean;
     private final boolean perThreadTimingEnabled;
 
+    // per-thread labels are retained between collections so that their encoded forms are reused -- threads that
+    // have exited (or been renamed) expire
+    private final LoadingCache<Map.Entry<Long, String>, ThreadLabels> threadLabels = CacheBuilder.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build(new CacheLoader<Map.Entry<Long, String>, ThreadLabels>() {
+                @Override
+                public ThreadLabels load(final Map.Entry<Long, String> key) {
+                    return new ThreadLabels(key.getKey(), key.getValue());
+                }
+            });
+
     private ThreadMXBeanMetricFamilyCollector(final ThreadMXBean threadMXBean, final boolean perThreadTimingEnabled) {
         this.threadMXBean = threadMXBean;
         this.perThreadTimingEnabled = perThreadTimingEnabled;
@@ -46,12 +81,12 @@ public class ThreadMXBeanMetricFamilyCollector extends  MBeanGroupMetricFamilyCo
             final int userThreadCount = threadCount - daemonThreadCount;
 
             metricFamilies.add(new GaugeMetricFamily("cassandra_jvm_thread_count", "Current number of live threads.", Stream.of(
-                    new NumericMetric(USER_THREAD_COUNT_LABELS, userThreadCount),
-                    new NumericMetric(DAEMON_THREAD_COUNT_LABELS, daemonThreadCount)
+                    new LongMetric(USER_THREAD_COUNT_LABELS, userThreadCount),
+                    new LongMetric(DAEMON_THREAD_COUNT_LABELS, daemonThreadCount)
             )));
         }
 
-        metricFamilies.add(new GaugeMetricFamily("cassandra_jvm_threads_started_total", "Cumulative number of started threads (since JVM start).", Stream.of(new NumericMetric(null, threadMXBean.getTotalStartedThreadCount()))));
+        metricFamilies.add(new GaugeMetricFamily("cassandra_jvm_threads_started_total", "Cumulative number of started threads (since JVM start).", Stream.of(new LongMetric(null, threadMXBean.getTotalStartedThreadCount()))));
 
         if (perThreadTimingEnabled && threadMXBean instanceof com.sun.management.ThreadMXBean && threadMXBean.isThreadCpuTimeEnabled()) {
             final com.sun.management.ThreadMXBean threadMXBeanEx = (com.sun.management.ThreadMXBean) threadMXBean;
@@ -73,20 +108,10 @@ public class ThreadMXBeanMetricFamilyCollector extends  MBeanGroupMetricFamilyCo
 
                 final long threadSystemTime = threadCpuTime - threadUserTime;
 
-                final Labels systemModeLabels = new Labels(ImmutableMap.of(
-                        "id", String.valueOf(threadIds[i]),
-                        "name", threadInfos[i].getThreadName(),
-                        "mode", "system"
-                ));
-
-                final Labels userModeLabels = new Labels(ImmutableMap.of(
-                        "id", String.valueOf(threadIds[i]),
-                        "name", threadInfos[i].getThreadName(),
-                        "mode", "user"
-                        ));
+                final ThreadLabels threadLabels = this.threadLabels.getUnchecked(Maps.immutableEntry(threadIds[i], threadInfos[i].getThreadName()));
 
-                threadCpuTimeMetrics.add(new NumericMetric(systemModeLabels, nanosecondsToSeconds(threadSystemTime)));
-                threadCpuTimeMetrics.add(new NumericMetric(userModeLabels, nanosecondsToSeconds(threadUserTime)));
+                threadCpuTimeMetrics.add(new NumericMetric(threadLabels.systemMode, nanosecondsToSeconds(threadSystemTime)));
+                threadCpuTimeMetrics.add(new NumericMetric(threadLabels.userMode, nanosecondsToSeconds(threadUserTime)));
             }
 
             metricFamilies.add(new CounterMetricFamily("cassandra_jvm_thread_cpu_time_seconds_total", "Cumulative thread CPU time (since JVM start).", threadCpuTimeMetrics.build()));
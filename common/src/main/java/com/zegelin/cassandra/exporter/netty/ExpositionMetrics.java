@@ -0,0 +1,69 @@
+package com.zegelin.cassandra.exporter.netty;
+
+import com.google.common.collect.ImmutableMap;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.LongMetric;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.NumericMetric;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Exporter self-metrics about the exposition formats' chunk sizing and the pooled allocator used for chunk buffers.
+ */
+final class ExpositionMetrics {
+    private static final Labels DIRECT_MEMORY_LABELS = Labels.of("memory", "direct");
+    private static final Labels HEAP_MEMORY_LABELS = Labels.of("memory", "heap");
+
+    private final Map<Labels, AdaptiveChunkSizer> chunkSizers;
+    private final PooledByteBufAllocator allocator;
+
+    ExpositionMetrics(final Map<String, AdaptiveChunkSizer> chunkSizersByFormat, final PooledByteBufAllocator allocator) {
+        final ImmutableMap.Builder<Labels, AdaptiveChunkSizer> builder = ImmutableMap.builder();
+        chunkSizersByFormat.forEach((format, chunkSizer) -> builder.put(Labels.of("format", format), chunkSizer));
+
+        this.chunkSizers = builder.build();
+        this.allocator = allocator;
+    }
+
+    private Stream<NumericMetric> chunkSizerMetrics(final ToLongFunction<AdaptiveChunkSizer> valueFunction) {
+        return chunkSizers.entrySet().stream()
+                .filter(e -> e.getValue().lastExpositionSize() >= 0) // only formats that have been exposed
+                .map(e -> new LongMetric(e.getKey(), valueFunction.applyAsLong(e.getValue())));
+    }
+
+    private static long sumArenas(final List<PoolArenaMetric> arenas, final ToLongFunction<PoolArenaMetric> valueFunction) {
+        long sum = 0;
+
+        for (final PoolArenaMetric arena : arenas) {
+            sum += valueFunction.applyAsLong(arena);
+        }
+
+        return sum;
+    }
+
+    private Stream<NumericMetric> allocatorMetrics(final ToLongFunction<PoolArenaMetric> valueFunction) {
+        return Stream.of(
+                new LongMetric(DIRECT_MEMORY_LABELS, sumArenas(allocator.directArenas(), valueFunction)),
+                new LongMetric(HEAP_MEMORY_LABELS, sumArenas(allocator.heapArenas(), valueFunction))
+        );
+    }
+
+    Stream<MetricFamily> collect() {
+        return Stream.of(
+                new GaugeMetricFamily("cassandra_exporter_exposition_size_bytes", "Size of the most recent exposition (before compression), per format.", chunkSizerMetrics(AdaptiveChunkSizer::lastExpositionSize)),
+                new GaugeMetricFamily("cassandra_exporter_exposition_chunks", "Number of chunks written for the most recent exposition, per format.", chunkSizerMetrics(AdaptiveChunkSizer::lastChunkCount)),
+                new GaugeMetricFamily("cassandra_exporter_exposition_max_chunk_capacity_bytes", "Largest chunk buffer capacity allocated for the most recent exposition, per format.", chunkSizerMetrics(AdaptiveChunkSizer::lastMaxChunkCapacity)),
+                new GaugeMetricFamily("cassandra_exporter_exposition_max_slice_size_bytes", "Largest single write into a chunk buffer, per format. Reserved as headroom in each chunk.", chunkSizerMetrics(AdaptiveChunkSizer::maxSliceSize)),
+                new GaugeMetricFamily("cassandra_exporter_netty_allocator_active_bytes", "Bytes of memory currently held by the pooled allocator arenas (whole chunks, plus huge allocations).", allocatorMetrics(PoolArenaMetric::numActiveBytes)),
+                new GaugeMetricFamily("cassandra_exporter_netty_allocator_active_allocations", "Number of buffers currently allocated from the pooled allocator arenas.", allocatorMetrics(PoolArenaMetric::numActiveAllocations))
+        );
+    }
+}
@@ -2,30 +2,47 @@ package com.zegelin.cassandra.exporter.netty;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.net.MediaType;
 import com.zegelin.netty.Resources;
+import com.zegelin.cassandra.exporter.CollectionProfile;
+import com.zegelin.cassandra.exporter.CollectionSnapshot;
+import com.zegelin.cassandra.exporter.CollectorSelection;
+import com.zegelin.cassandra.exporter.Deadline;
 import com.zegelin.cassandra.exporter.Harvester;
 import com.zegelin.prometheus.domain.Labels;
 import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
 import com.zegelin.prometheus.exposition.json.JsonFormatChunkedInput;
+import com.zegelin.prometheus.exposition.protobuf.ProtobufFormatChunkedInput;
+import com.zegelin.prometheus.exposition.text.OpenMetricsFormatChunkedInput;
 import com.zegelin.prometheus.exposition.text.TextFormatChunkedInput;
+import com.zegelin.prometheus.exposition.text.TextFormatSeriesPrefixCache;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -43,9 +60,37 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
     private static final String TEXT_FORMAT_VERSION_004 = "0.0.4";
 
+    // sent by Prometheus with each scrape
+    private static final String SCRAPE_TIMEOUT_HEADER = "X-Prometheus-Scrape-Timeout-Seconds";
+
     private static final MediaType TEXT_FORMAT_004_TYPE = MediaType.create("text", "plain")
             .withParameter("version", TEXT_FORMAT_VERSION_004);
 
+    private static final MediaType OPENMETRICS_TEXT_TYPE = MediaType.create("application", "openmetrics-text")
+            .withParameter("version", "1.0.0");
+
+    private static final MediaType PROTOBUF_DELIMITED_TYPE = MediaType.create("application", "vnd.google.protobuf")
+            .withParameter("proto", "io.prometheus.client.MetricFamily")
+            .withParameter("encoding", "delimited");
+
+    // parameters of these types select the encoding -- accepted types only match if their parameters (if any) match exactly
+    private static final Set<MediaType> PARAMETER_SENSITIVE_TYPES = ImmutableSet.of(PROTOBUF_DELIMITED_TYPE);
+
+    // chunk sizing is learnt from previous expositions, which are specific to each format
+    private static final AdaptiveChunkSizer TEXT_FORMAT_CHUNK_SIZER = new AdaptiveChunkSizer();
+    private static final AdaptiveChunkSizer OPENMETRICS_FORMAT_CHUNK_SIZER = new AdaptiveChunkSizer();
+    private static final AdaptiveChunkSizer JSON_FORMAT_CHUNK_SIZER = new AdaptiveChunkSizer();
+    private static final AdaptiveChunkSizer PROTOBUF_FORMAT_CHUNK_SIZER = new AdaptiveChunkSizer();
+
+    private static final ExpositionMetrics EXPOSITION_METRICS = new ExpositionMetrics(ImmutableMap.of(
+            "text", TEXT_FORMAT_CHUNK_SIZER,
+            "openmetrics", OPENMETRICS_FORMAT_CHUNK_SIZER,
+            "json", JSON_FORMAT_CHUNK_SIZER,
+            "protobuf", PROTOBUF_FORMAT_CHUNK_SIZER
+    ), PooledByteBufAllocator.DEFAULT);
+
+    private static final String METRICS_PROFILE_PATH_PREFIX = "/metrics/";
+
     private static final ByteBuf ROOT_DOCUMENT = Resources.asByteBuf(HttpHandler.class, "root.html");
 
     private static class HttpException extends RuntimeException {
@@ -69,48 +114,111 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
     private final Harvester harvester;
     private final HelpExposition helpExposition;
+    private final TextFormatSeriesPrefixCache textFormatPrefixCache;
+    private final TextFormatSeriesPrefixCache openMetricsPrefixCache;
+    private final boolean keepAliveEnabled;
+    private final long scrapeTimeoutOffsetMillis;
+
+    // requests whose responses haven't been completely written. decremented from the event loop
+    private final AtomicInteger pendingResponses = new AtomicInteger();
 
-    public HttpHandler(final Harvester harvester, final HelpExposition helpExposition) {
+    public HttpHandler(final Harvester harvester, final HelpExposition helpExposition, final TextFormatSeriesPrefixCache textFormatPrefixCache, final TextFormatSeriesPrefixCache openMetricsPrefixCache, final boolean keepAliveEnabled, final long scrapeTimeoutOffsetMillis) {
         this.harvester = harvester;
         this.helpExposition = helpExposition;
+        this.textFormatPrefixCache = textFormatPrefixCache;
+        this.openMetricsPrefixCache = openMetricsPrefixCache;
+        this.keepAliveEnabled = keepAliveEnabled;
+        this.scrapeTimeoutOffsetMillis = scrapeTimeoutOffsetMillis;
     }
 
     @Override
     protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest request) throws Exception {
         final QueryStringDecoder queryString = new QueryStringDecoder(request.getUri());
 
+        // Requests are handled one at a time, in the order they are received, and ChunkedWriteHandler writes
+        // each response in its entirety before starting on the next -- pipelined responses can't be interleaved.
+        // HttpServerKeepAliveHandler (see Server.ChildInitializer) closes the connection once the last response is written
+        // if the client or the response asked for it.
+        pendingResponses.incrementAndGet();
+
         ChannelFuture lastWriteFuture = null;
 
         try {
+            checkRequest(request);
+
             switch (queryString.path()) {
                 case "/":
                     lastWriteFuture = sendRoot(ctx, request);
                     return;
 
                 case "/metrics":
-                    lastWriteFuture = sendMetrics(ctx, request, queryString);
+                    lastWriteFuture = sendMetrics(ctx, request, queryString, null);
                     return;
 
                 default:
+                    if (queryString.path().startsWith(METRICS_PROFILE_PATH_PREFIX)) {
+                        lastWriteFuture = sendMetrics(ctx, request, queryString, queryString.path().substring(METRICS_PROFILE_PATH_PREFIX.length()));
+                        return;
+                    }
+
                     throw new HttpException(HttpResponseStatus.NOT_FOUND, "The requested URI could not be found.");
             }
 
         } catch (final HttpException e) {
-            lastWriteFuture = sendError(ctx, e.responseStatus, e.getMessage());
+            lastWriteFuture = sendError(ctx, request, e.responseStatus, e.getMessage());
 
         } catch (final Exception e) {
             logger.error("Exception while processing HTTP request {}.", request, e);
 
-            lastWriteFuture = sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An internal server error occurred while processing the request for this URI.");
+            lastWriteFuture = sendError(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR, "An internal server error occurred while processing the request for this URI.");
 
         } finally {
             if (lastWriteFuture != null) {
+                // a failure part way through a response leaves the client with no way to know where it ended
                 lastWriteFuture.addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE)
-                        .addListener(ChannelFutureListener.CLOSE);
+                        .addListener(ChannelFutureListener.CLOSE_ON_FAILURE)
+                        .addListener(f -> pendingResponses.decrementAndGet());
+
+            } else {
+                pendingResponses.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
+        // close idle persistent connections, but not while a (slow) response is still being produced
+        if (evt instanceof IdleStateEvent) {
+            if (pendingResponses.get() == 0) {
+                ctx.close();
             }
+
+            return;
+        }
+
+        super.userEventTriggered(ctx, evt);
+    }
+
+    private static boolean isHttp1(final HttpRequest request) {
+        return request.getDecoderResult().isSuccess() && request.getProtocolVersion().majorVersion() == 1;
+    }
+
+    private void checkRequest(final HttpRequest request) {
+        if (!request.getDecoderResult().isSuccess()) {
+            throw new HttpException(HttpResponseStatus.BAD_REQUEST, "The request could not be decoded.");
+        }
+
+        // Netty 4.0 has no HTTP/2 codec. Clients that attempt h2c with "prior knowledge" send the HTTP/2 connection preface,
+        // which decodes as a "PRI * HTTP/2.0" request. Upgrade: h2c requests are served as HTTP/1.1, ignoring the upgrade (as allowed).
+        if (!isHttp1(request)) {
+            throw new HttpException(HttpResponseStatus.HTTP_VERSION_NOT_SUPPORTED, "Only HTTP/1.0 and HTTP/1.1 are supported.");
         }
     }
 
+    private void setKeepAlive(final HttpRequest request, final HttpResponse response) {
+        HttpHeaders.setKeepAlive(response, keepAliveEnabled && isHttp1(request) && HttpHeaders.isKeepAlive(request));
+    }
+
     @Override
     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
         super.exceptionCaught(ctx, cause);
@@ -173,10 +281,61 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
                 .collect(Collectors.toList());
     }
 
+    private Deadline scrapeDeadline(final HttpRequest request) {
+        final String headerValue = request.headers().get(SCRAPE_TIMEOUT_HEADER);
+
+        if (headerValue == null) {
+            return Deadline.NONE;
+        }
+
+        final double timeoutSeconds;
+
+        try {
+            timeoutSeconds = Double.parseDouble(headerValue);
+
+        } catch (final NumberFormatException e) {
+            throw new HttpException(HttpResponseStatus.BAD_REQUEST, "The value of the " + SCRAPE_TIMEOUT_HEADER + " header is invalid.");
+        }
+
+        if (!(timeoutSeconds > 0)) {
+            throw new HttpException(HttpResponseStatus.BAD_REQUEST, "The value of the " + SCRAPE_TIMEOUT_HEADER + " header is invalid.");
+        }
+
+        if (Double.isInfinite(timeoutSeconds)) {
+            return Deadline.NONE;
+        }
+
+        final long timeoutMillis = (long) (timeoutSeconds * 1000) - scrapeTimeoutOffsetMillis;
+
+        return Deadline.after(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS);
+    }
+
     private Multimap<MediaType, MediaType> checkAndGetPreferredMediaTypes(final HttpRequest request, final MediaType... supportedMediaTypes) {
         return checkAndGetPreferredMediaTypes(parseAcceptHeader(request), supportedMediaTypes);
     }
 
+    private static boolean isMatchingMediaType(final MediaType supportedMediaType, final MediaType acceptedMediaType) {
+        if (!supportedMediaType.is(acceptedMediaType.withoutParameters())) {
+            return false;
+        }
+
+        if (!PARAMETER_SENSITIVE_TYPES.contains(supportedMediaType)) {
+            return true;
+        }
+
+        for (final Map.Entry<String, String> parameter : acceptedMediaType.parameters().entries()) {
+            if (parameter.getKey().equals("q")) {
+                continue;
+            }
+
+            if (!supportedMediaType.parameters().containsEntry(parameter.getKey(), parameter.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /***
      * @return map of matched SupportedMediaTypes -> AcceptedMediaTypes
      */
@@ -192,7 +351,7 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         outer:
         for (final MediaType acceptedMediaType : acceptedMediaTypes) {
             for (final MediaType supportedMediaType : supportedMediaTypes) {
-                if (supportedMediaType.is(acceptedMediaType.withoutParameters())) {
+                if (isMatchingMediaType(supportedMediaType, acceptedMediaType)) {
                     preferredMediaTypes.put(supportedMediaType, acceptedMediaType);
                     continue outer;
                 }
@@ -208,10 +367,12 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         return map;
     }
 
-    private ChannelFuture sendError(final ChannelHandlerContext ctx, final HttpResponseStatus status, final String message) {
+    private ChannelFuture sendError(final ChannelHandlerContext ctx, final HttpRequest request, final HttpResponseStatus status, final String message) {
         final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, ByteBufUtil.writeUtf8(ctx.alloc(), message));
 
         response.headers().add(HttpHeaders.Names.CONTENT_TYPE, "text/html");
+        HttpHeaders.setContentLength(response, response.content().readableBytes());
+        setKeepAlive(request, response);
 
         return ctx.writeAndFlush(response);
     }
@@ -224,11 +385,22 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
         final DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
         response.headers().add(HttpHeaders.Names.CONTENT_TYPE, MediaType.HTML_UTF_8);
+        HttpHeaders.setContentLength(response, ROOT_DOCUMENT.readableBytes());
+        setKeepAlive(request, response);
 
         return ctx.writeAndFlush(response);
     }
 
-    private ChannelFuture sendMetrics(final ChannelHandlerContext ctx, final FullHttpRequest request, final QueryStringDecoder queryString) {
+    private ChannelFuture sendMetrics(final ChannelHandlerContext ctx, final FullHttpRequest request, final QueryStringDecoder queryString, final String profileName) {
+        final CollectionProfile profile = (profileName != null ? harvester.profile(profileName) : null);
+
+        if (profileName != null && profile == null) {
+            throw new HttpException(HttpResponseStatus.NOT_FOUND, "The requested metrics profile could not be found.");
+        }
+
+        // profiles may override the server's help exposition
+        final HelpExposition helpExposition = (profile != null && profile.helpExposition != null ? profile.helpExposition : this.helpExposition);
+
         checkRequestMethod(request, HttpMethod.GET, HttpMethod.HEAD);
 
         final List<MediaType> acceptedMediaTypes = Optional.ofNullable(queryString.parameters().get("x-accept"))
@@ -276,45 +448,108 @@ public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
                     }
                 });
 
-        final Multimap<MediaType, MediaType> preferredMediaTypes = checkAndGetPreferredMediaTypes(acceptedMediaTypes, TEXT_FORMAT_004_TYPE, TEXT_PLAIN, APPLICATION_JSON);
+        // collectors are selected before collection, so that unselected collectors aren't run at all
+        final Optional<CollectorSelection> collectorSelection = Optional.ofNullable(queryString.parameters().get("name[]"))
+                .map(v -> {
+                    try {
+                        return CollectorSelection.parse(v);
+
+                    } catch (final IllegalArgumentException e) {
+                        throw new HttpException(HttpResponseStatus.BAD_REQUEST, "A regular expression specified for 'name[]' is invalid.");
+                    }
+                });
+
+        final Multimap<MediaType, MediaType> preferredMediaTypes = checkAndGetPreferredMediaTypes(acceptedMediaTypes, TEXT_FORMAT_004_TYPE, TEXT_PLAIN, APPLICATION_JSON, OPENMETRICS_TEXT_TYPE, PROTOBUF_DELIMITED_TYPE);
 
         for (final Map.Entry<MediaType, ?> preferredMediaType : preferredMediaTypes.asMap().entrySet()) {
             final MediaType supportedType = preferredMediaType.getKey();
 
-            final DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
-            response.headers().set(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+            final MediaType contentType;
 
-            final Stream<MetricFamily> metricFamilyStream = harvester.collect();
-            final Instant timestamp = Instant.now();
-            final Labels globalLabels = harvester.globalLabels();
+            if (supportedType.equals(TEXT_FORMAT_004_TYPE) || supportedType.equals(TEXT_PLAIN)) {
+                contentType = TEXT_FORMAT_004_TYPE;
 
-            ChannelFuture lastWriteFuture = null;
+            } else if (supportedType.equals(APPLICATION_JSON)) {
+                contentType = MediaType.JSON_UTF_8;
 
-            if (supportedType.equals(TEXT_FORMAT_004_TYPE) || supportedType.equals(TEXT_PLAIN)) {
-                response.headers().set(HttpHeaders.Names.CONTENT_TYPE, TEXT_FORMAT_004_TYPE);
+            } else if (supportedType.equals(OPENMETRICS_TEXT_TYPE)) {
+                contentType = OPENMETRICS_TEXT_TYPE.withCharset(StandardCharsets.UTF_8);
 
-                lastWriteFuture = ctx.writeAndFlush(response);
+            } else if (supportedType.equals(PROTOBUF_DELIMITED_TYPE)) {
+                contentType = PROTOBUF_DELIMITED_TYPE;
 
-                if (request.getMethod() == HttpMethod.GET) {
-                    lastWriteFuture = ctx.writeAndFlush(new HttpChunkedInput(new TextFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp)));
-                }
+            } else {
+                continue;
+            }
 
-                return lastWriteFuture;
+            // everything that can fail is done before the response headers are written -- once they are, a failure
+            // can't be reported with an error response
+            final Deadline deadline = scrapeDeadline(request);
+
+            // HEAD requests never start a collection
+            if (request.getMethod() == HttpMethod.HEAD) {
+                ctx.write(metricsResponse(request, contentType));
+
+                return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
             }
 
-            if (supportedType.equals(APPLICATION_JSON)) {
-                response.headers().set(HttpHeaders.Names.CONTENT_TYPE, MediaType.JSON_UTF_8);
+            // scrapes of all collectors are served from the most recent background collection, when available
+            final Optional<CollectionSnapshot> snapshot = (profileName == null && !collectorSelection.isPresent()) ?
+                    harvester.snapshot() :
+                    Optional.empty();
 
-                lastWriteFuture = ctx.writeAndFlush(response);
+            final Stream<MetricFamily> metricFamilyStream;
 
-                if (request.getMethod() == HttpMethod.GET) {
-                    lastWriteFuture = ctx.writeAndFlush(new HttpChunkedInput(new JsonFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp)));
-                }
+            if (profileName != null) {
+                metricFamilyStream = collectorSelection
+                        .map(selection -> harvester.collectProfile(profileName, selection, deadline))
+                        .orElseGet(() -> harvester.collectProfile(profileName, deadline));
+
+            } else if (snapshot.isPresent()) {
+                metricFamilyStream = Stream.concat(snapshot.get().metricFamilies(), EXPOSITION_METRICS.collect());
+
+            } else {
+                metricFamilyStream = collectorSelection
+                        .map(selection -> harvester.collect(selection, deadline))
+                        .orElseGet(() -> Stream.concat(harvester.collect(deadline), EXPOSITION_METRICS.collect()));
+            }
+
+            final Instant timestamp = snapshot.map(CollectionSnapshot::timestamp).orElseGet(Instant::now);
+            final Labels globalLabels = harvester.globalLabels();
 
-                return lastWriteFuture;
+            final ChunkedInput<ByteBuf> chunkedInput;
+
+            if (contentType.equals(TEXT_FORMAT_004_TYPE)) {
+                final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape = textFormatPrefixCache.beginScrape(harvester.collectorsGeneration(), globalLabels);
+
+                chunkedInput = new TextFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp, prefixCacheScrape, TEXT_FORMAT_CHUNK_SIZER);
+
+            } else if (contentType.equals(MediaType.JSON_UTF_8)) {
+                chunkedInput = new JsonFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp, JSON_FORMAT_CHUNK_SIZER);
+
+            } else if (contentType.equals(PROTOBUF_DELIMITED_TYPE)) {
+                chunkedInput = new ProtobufFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp, PROTOBUF_FORMAT_CHUNK_SIZER);
+
+            } else {
+                final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape = openMetricsPrefixCache.beginScrape(harvester.collectorsGeneration(), globalLabels);
+
+                chunkedInput = new OpenMetricsFormatChunkedInput(metricFamilyStream, timestamp, globalLabels, includeHelp, prefixCacheScrape, OPENMETRICS_FORMAT_CHUNK_SIZER);
             }
+
+            ctx.write(metricsResponse(request, contentType));
+
+            return ctx.writeAndFlush(new HttpChunkedInput(chunkedInput));
         }
 
         throw new IllegalStateException();
     }
+
+    private HttpResponse metricsResponse(final HttpRequest request, final MediaType contentType) {
+        final DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        response.headers().set(HttpHeaders.Names.CONTENT_TYPE, contentType);
+        setKeepAlive(request, response);
+
+        return response;
+    }
 }
@@ -0,0 +1,222 @@
+package com.zegelin.cassandra.exporter.netty;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zegelin.cassandra.exporter.cli.HttpServerOptions;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server {@link SslContext} that is rebuilt when its certificate, private key or session ticket key file is modified.
+ *
+ * The TLS session cache belongs to the context, and is shared by all connections (and event loops), hence
+ * sessions may be resumed on any connection. A reload starts with an empty cache.
+ *
+ * Session tickets are only configured for the OpenSSL implementation. Its ticket keys are read from the session ticket
+ * key file, if any, otherwise they're generated once at startup. Either way the same keys are given to every reloaded
+ * context, so tickets survive reloads. With the JDK implementation only the session cache is used to resume sessions.
+ */
+final class ReloadableSslContext {
+    private static final Logger logger = LoggerFactory.getLogger(ReloadableSslContext.class);
+
+    private static final int TICKET_KEY_SIZE = 48;
+
+    /**
+     * Delay before a replaced context is released. In-flight handshakes may still be using it.
+     */
+    private static final long REPLACED_CONTEXT_RELEASE_DELAY_SECONDS = 60;
+
+    private final HttpServerOptions options;
+    private final SslProvider provider;
+
+    // only used when there's no session ticket key file
+    private final byte[] generatedTicketKeys;
+
+    private final ScheduledExecutorService reloadExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("cassandra-exporter-ssl-reload")
+            .build());
+
+    private volatile SslContext sslContext;
+
+    private FileTime certificateModifiedTime;
+    private FileTime privateKeyModifiedTime;
+    private FileTime ticketKeyModifiedTime;
+
+    ReloadableSslContext(final HttpServerOptions options) throws SSLException, IOException {
+        this.options = options;
+        this.provider = provider(options.sslImplementation);
+
+        if (options.sslSessionTicketKeyFile != null && provider != SslProvider.OPENSSL) {
+            throw new IllegalStateException("Session ticket keys (--ssl-session-ticket-key-file) require the OPENSSL SSL implementation.");
+        }
+
+        this.generatedTicketKeys = new byte[TICKET_KEY_SIZE];
+        new SecureRandom().nextBytes(generatedTicketKeys);
+
+        reload();
+    }
+
+    private static SslProvider provider(final HttpServerOptions.SslImplementation implementation) {
+        switch (implementation) {
+            case OPENSSL:
+                if (!OpenSsl.isAvailable()) {
+                    throw new IllegalStateException("OpenSSL is not available.", OpenSsl.unavailabilityCause());
+                }
+
+                return SslProvider.OPENSSL;
+
+            case JDK:
+                return SslProvider.JDK;
+
+            case DISCOVER:
+                return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static FileTime lastModifiedTime(final Path path) throws IOException {
+        return path == null ? null : Files.getLastModifiedTime(path);
+    }
+
+    /**
+     * The ticket key file holds one or more 48 byte keys, each a 16 byte name, 16 byte HMAC key and 16 byte AES key.
+     * New tickets are encrypted with the first key. All the keys are used to decrypt tickets, which allows keys to be rotated.
+     */
+    private byte[] readTicketKeys() throws IOException {
+        if (options.sslSessionTicketKeyFile == null) {
+            return generatedTicketKeys;
+        }
+
+        final byte[] keys = Files.readAllBytes(options.sslSessionTicketKeyFile);
+
+        if (keys.length == 0 || keys.length % TICKET_KEY_SIZE != 0) {
+            throw new IOException(String.format("Session ticket key file %s must contain a multiple of %d bytes, found %d bytes.",
+                    options.sslSessionTicketKeyFile, TICKET_KEY_SIZE, keys.length));
+        }
+
+        return keys;
+    }
+
+    private static void setTicketKeys(final SslContext sslContext, final byte[] keys) {
+        final OpenSslSessionTicketKey[] ticketKeys = new OpenSslSessionTicketKey[keys.length / TICKET_KEY_SIZE];
+
+        for (int i = 0; i < ticketKeys.length; i++) {
+            final int offset = i * TICKET_KEY_SIZE;
+
+            ticketKeys[i] = new OpenSslSessionTicketKey(
+                    Arrays.copyOfRange(keys, offset, offset + 16),
+                    Arrays.copyOfRange(keys, offset + 16, offset + 32),
+                    Arrays.copyOfRange(keys, offset + 32, offset + 48)
+            );
+        }
+
+        ((OpenSslSessionContext) sslContext.sessionContext()).setTicketKeys(ticketKeys);
+    }
+
+    private void reload() throws SSLException, IOException {
+        // read the modification times first -- if a file is replaced while the context is being built it'll be reloaded again next check
+        final FileTime certificateModifiedTime = lastModifiedTime(options.sslCertificateFile);
+        final FileTime privateKeyModifiedTime = lastModifiedTime(options.sslPrivateKeyFile);
+        final FileTime ticketKeyModifiedTime = lastModifiedTime(options.sslSessionTicketKeyFile);
+
+        final byte[] ticketKeys = provider == SslProvider.OPENSSL ? readTicketKeys() : null;
+
+        final SslContext sslContext = SslContextBuilder.forServer(options.sslCertificateFile.toFile(), options.sslPrivateKeyFile.toFile(), options.sslPrivateKeyPassword)
+                .sslProvider(provider)
+                .sessionCacheSize(options.sslSessionCacheSize)
+                .sessionTimeout(options.sslSessionTimeoutSeconds)
+                .build();
+
+        if (ticketKeys != null) {
+            try {
+                setTicketKeys(sslContext, ticketKeys);
+
+            } catch (final RuntimeException e) {
+                ReferenceCountUtil.release(sslContext);
+                throw e;
+            }
+        }
+
+        final SslContext replacedContext = this.sslContext;
+
+        this.sslContext = sslContext;
+
+        this.certificateModifiedTime = certificateModifiedTime;
+        this.privateKeyModifiedTime = privateKeyModifiedTime;
+        this.ticketKeyModifiedTime = ticketKeyModifiedTime;
+
+        if (replacedContext != null) {
+            // the OpenSSL context holds native resources. SslHandlers created from it don't retain it, so give them time to finish handshaking first
+            reloadExecutorService.schedule(() -> ReferenceCountUtil.release(replacedContext), REPLACED_CONTEXT_RELEASE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void reloadIfModified() {
+        try {
+            if (Objects.equals(lastModifiedTime(options.sslCertificateFile), certificateModifiedTime) &&
+                    Objects.equals(lastModifiedTime(options.sslPrivateKeyFile), privateKeyModifiedTime) &&
+                    Objects.equals(lastModifiedTime(options.sslSessionTicketKeyFile), ticketKeyModifiedTime)) {
+                return;
+            }
+
+            reload();
+
+            logger.info("Reloaded SSL certificate {} and private key {}.", options.sslCertificateFile, options.sslPrivateKeyFile);
+
+        } catch (final Exception e) {
+            // keep using the current context -- the files may be mid-update
+            logger.warn("Failed to reload SSL certificate {} and private key {}. The previously loaded certificate and key will continue to be used.",
+                    options.sslCertificateFile, options.sslPrivateKeyFile, e);
+        }
+    }
+
+    /**
+     * Check for modified files on a dedicated thread, so that the file I/O doesn't block exposition.
+     */
+    void scheduleReload() {
+        final long interval = options.sslReloadIntervalSeconds;
+
+        if (interval <= 0) {
+            return;
+        }
+
+        reloadExecutorService.scheduleWithFixedDelay(this::reloadIfModified, interval, interval, TimeUnit.SECONDS);
+    }
+
+    synchronized void close() {
+        reloadExecutorService.shutdownNow();
+
+        ReferenceCountUtil.release(sslContext);
+    }
+
+    SslProvider provider() {
+        return provider;
+    }
+
+    SslHandler newHandler(final ByteBufAllocator allocator) {
+        return sslContext.newHandler(allocator);
+    }
+}
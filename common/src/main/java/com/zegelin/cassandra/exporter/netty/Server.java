@@ -4,27 +4,39 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.zegelin.cassandra.exporter.Harvester;
+import com.zegelin.cassandra.exporter.cli.HttpServerOptions;
+import com.zegelin.prometheus.exposition.text.TextFormatSeriesPrefixCache;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.List;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
@@ -32,56 +44,134 @@ public class Server {
     private List<Channel> channels;
 
     private EventLoopGroup eventLoopGroup;
+    private EventExecutorGroup expositionExecutorGroup;
+    private ReloadableSslContext sslContext;
 
-    public Server(final List<Channel> channels, final EventLoopGroup eventLoopGroup) {
+    private Server(final List<Channel> channels, final EventLoopGroup eventLoopGroup, final EventExecutorGroup expositionExecutorGroup, final ReloadableSslContext sslContext) {
         this.channels = channels;
         this.eventLoopGroup = eventLoopGroup;
+        this.expositionExecutorGroup = expositionExecutorGroup;
+        this.sslContext = sslContext;
     }
 
     public static class ChildInitializer extends ChannelInitializer<SocketChannel> {
         private final Harvester harvester;
         private final HttpHandler.HelpExposition helpExposition;
+        private final EventExecutorGroup expositionExecutorGroup;
+        private final int keepAliveTimeoutSeconds;
+        private final ReloadableSslContext sslContext;
+        private final long scrapeTimeoutOffsetMillis;
 
-        ChildInitializer(final Harvester harvester, final HttpHandler.HelpExposition helpExposition) {
+        // shared by all connections
+        private final TextFormatSeriesPrefixCache textFormatPrefixCache = new TextFormatSeriesPrefixCache();
+        private final TextFormatSeriesPrefixCache openMetricsPrefixCache = new TextFormatSeriesPrefixCache();
+
+        ChildInitializer(final Harvester harvester, final HttpHandler.HelpExposition helpExposition, final EventExecutorGroup expositionExecutorGroup, final int keepAliveTimeoutSeconds, final ReloadableSslContext sslContext, final long scrapeTimeoutOffsetMillis) {
             this.harvester = harvester;
             this.helpExposition = helpExposition;
+            this.expositionExecutorGroup = expositionExecutorGroup;
+            this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+            this.sslContext = sslContext;
+            this.scrapeTimeoutOffsetMillis = scrapeTimeoutOffsetMillis;
         }
 
         @Override
         public void initChannel(final SocketChannel ch) {
+            // Collection and encoding (HttpHandler and the ChunkedInputs driven by ChunkedWriteHandler), and compression
+            // run on the exposition executors rather than the I/O event loop, so that a slow scrape doesn't stall other connections.
+            // Chunks are handed back to the event loop to be written, and ChunkedWriteHandler stops reading chunks while
+            // the channel is unwritable, which bounds the amount of encoded output that is buffered per connection.
+            final boolean keepAliveEnabled = keepAliveTimeoutSeconds > 0;
+
+            if (sslContext != null) {
+                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+            }
+
+            if (keepAliveEnabled) {
+                // HttpHandler closes the connection on idle
+                ch.pipeline().addLast(new IdleStateHandler(0, 0, keepAliveTimeoutSeconds, TimeUnit.SECONDS));
+            }
+
             ch.pipeline()
                     .addLast(new HttpServerCodec())
+                    .addLast(new HttpServerKeepAliveHandler())
                     .addLast(new HttpObjectAggregator(1048576))
-                    .addLast(new HttpContentCompressor())
-                    .addLast(new ChunkedWriteHandler())
-                    .addLast(new HttpHandler(harvester, helpExposition));
+                    .addLast(expositionExecutorGroup, new HttpContentCompressor())
+                    .addLast(expositionExecutorGroup, new ChunkedWriteHandler())
+                    .addLast(expositionExecutorGroup, new HttpHandler(harvester, helpExposition, textFormatPrefixCache, openMetricsPrefixCache, keepAliveEnabled, scrapeTimeoutOffsetMillis));
         }
     }
 
-    public static Server start(final List<InetSocketAddress> listenAddresses,
-                             final Harvester harvester,
-                             final HttpHandler.HelpExposition helpExposition) throws InterruptedException {
-
+    public static Server start(final Harvester harvester, final HttpServerOptions options) throws InterruptedException {
         final ThreadFactory threadFactory = new ThreadFactoryBuilder()
                 .setDaemon(true)
                 .setNameFormat("prometheus-netty-pool-%d")
                 .build();
 
-        final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1, threadFactory);
+        final boolean useEpoll = !options.nativeTransportDisabled && Epoll.isAvailable();
+
+        if (!options.nativeTransportDisabled && !Epoll.isAvailable()) {
+            logger.debug("Native epoll transport is not available, falling back to NIO.", Epoll.unavailabilityCause());
+        }
+
+        final EventLoopGroup eventLoopGroup = useEpoll ?
+                new EpollEventLoopGroup(options.ioThreads, threadFactory) :
+                new NioEventLoopGroup(options.ioThreads, threadFactory);
+
+        final ThreadFactory expositionThreadFactory = new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("cassandra-exporter-exposition-%d")
+                .build();
+
+        final EventExecutorGroup expositionExecutorGroup = new DefaultEventExecutorGroup(options.expositionThreads, expositionThreadFactory);
+
+        final ReloadableSslContext sslContext;
+
+        try {
+            sslContext = options.isSslEnabled() ? new ReloadableSslContext(options) : null;
+
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to load the SSL certificate and private key.", e);
+        }
+
+        if (sslContext != null) {
+            sslContext.scheduleReload();
+        }
 
         final ServerBootstrap bootstrap = new ServerBootstrap();
 
         bootstrap.group(eventLoopGroup)
                 .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .channel(NioServerSocketChannel.class)
-                .childHandler(new ChildInitializer(harvester, helpExposition));
+                .childHandler(new ChildInitializer(harvester, options.helpExposition, expositionExecutorGroup, options.keepAliveTimeoutSeconds, sslContext, options.scrapeTimeoutOffsetMillis));
+
+        // With epoll, each listen address is bound once per event loop with SO_REUSEPORT, giving each event loop
+        // its own acceptor. NIO has no SO_REUSEPORT, so a single acceptor hands connections out to all the event loops.
+        final int bindsPerAddress;
+
+        if (useEpoll) {
+            bootstrap.channel(EpollServerSocketChannel.class)
+                    .option(EpollChannelOption.SO_REUSEPORT, true);
+
+            bindsPerAddress = options.ioThreads;
+
+        } else {
+            bootstrap.channel(NioServerSocketChannel.class);
+
+            bindsPerAddress = 1;
+        }
 
         final List<Channel> serverChannels;
         {
             final ImmutableList.Builder<Channel> builder = ImmutableList.builder();
 
-            for (final InetSocketAddress listenAddress : listenAddresses) {
-                builder.add(bootstrap.bind(listenAddress).sync().channel());
+            for (final InetSocketAddress listenAddress : options.listenAddresses) {
+                final Channel channel = bootstrap.bind(listenAddress).sync().channel();
+                builder.add(channel);
+
+                // re-bind to the bound address rather than listenAddress, in case the port was ephemeral (0)
+                for (int i = 1; i < bindsPerAddress; i++) {
+                    builder.add(bootstrap.bind(channel.localAddress()).sync().channel());
+                }
             }
 
             serverChannels = builder.build();
@@ -90,20 +180,30 @@ public class Server {
         final SocketAddress socketAddress1 = serverChannels.get(0).localAddress();
 
         if (logger.isInfoEnabled()) {
-            logger.info("cassandra-exporter server has started. Listening on {}.", Joiner.on(", ").join(
+            final String scheme = (sslContext != null ? "https" : "http");
+
+            logger.info("cassandra-exporter server has started ({} transport, {} I/O threads{}). Listening on {}.",
+                    useEpoll ? "epoll" : "NIO", options.ioThreads, sslContext != null ? ", " + sslContext.provider() + " SSL" : "", Joiner.on(", ").join(
                     serverChannels.stream()
                             .map(channel -> {
                                 final InetSocketAddress socketAddress = (InetSocketAddress) channel.localAddress();
-                                return String.format("http://%s:%d", socketAddress.getHostString(), socketAddress.getPort());
+                                return String.format("%s://%s:%d", scheme, socketAddress.getHostString(), socketAddress.getPort());
                             })
+                            .distinct()
                             .iterator()
             ));
         }
 
-        return new Server(serverChannels, eventLoopGroup);
+        return new Server(serverChannels, eventLoopGroup, expositionExecutorGroup, sslContext);
     }
 
     public Future<?> stop() {
+        expositionExecutorGroup.shutdownGracefully();
+
+        if (sslContext != null) {
+            sslContext.close();
+        }
+
         final Future<?> future = eventLoopGroup.shutdownGracefully();
 
         future.addListener(f -> {
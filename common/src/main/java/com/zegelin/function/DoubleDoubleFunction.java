@@ -0,0 +1,15 @@
+package com.zegelin.function;
+
+@FunctionalInterface
+public interface DoubleDoubleFunction {
+    /**
+     * A single instance, so that callers may compare against {@link #identity()} to skip the transform.
+     */
+    DoubleDoubleFunction IDENTITY = (d) -> d;
+
+    double apply(double d);
+
+    static DoubleDoubleFunction identity() {
+        return IDENTITY;
+    }
+}
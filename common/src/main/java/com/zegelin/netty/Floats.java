@@ -1,6 +1,6 @@
 package com.zegelin.netty;
 
-import info.adams.ryu.RyuFloat;
+import info.adams.ryu.RyuDouble;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 
@@ -9,11 +9,11 @@ public final class Floats {
 
     private Floats() {}
 
-    public static void writeFloatString(final ByteBuf buffer, final float f) {
+    public static void writeDoubleString(final ByteBuf buffer, final double d) {
         if (useFastFloat) {
-            RyuFloat.floatToString(buffer, f);
+            RyuDouble.doubleToString(buffer, d);
         } else {
-            ByteBufUtil.writeAscii(buffer, Float.toString(f));
+            ByteBufUtil.writeAscii(buffer, Double.toString(d));
         }
     }
 }
@@ -0,0 +1,55 @@
+package com.zegelin.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+public final class Longs {
+    // sign + 19 digits
+    private static final int MAX_LENGTH = 20;
+
+    private Longs() {}
+
+    /**
+     * Write the decimal representation of {@code l} (as per {@link Long#toString(long)}) directly to {@code buffer}.
+     */
+    public static void writeLongString(final ByteBuf buffer, final long l) {
+        if (l == Long.MIN_VALUE) {
+            // cannot be negated
+            ByteBufUtil.writeAscii(buffer, "-9223372036854775808");
+            return;
+        }
+
+        buffer.ensureWritable(MAX_LENGTH);
+
+        int index = buffer.writerIndex();
+        long value = l;
+
+        if (value < 0) {
+            buffer.setByte(index++, '-');
+            value = -value;
+        }
+
+        final int length = decimalLength(value);
+
+        for (int i = index + length - 1; i >= index; i--) {
+            buffer.setByte(i, (int) ('0' + value % 10));
+            value /= 10;
+        }
+
+        buffer.writerIndex(index + length);
+    }
+
+    private static int decimalLength(final long v) {
+        long limit = 10;
+
+        for (int length = 1; length < 19; length++) {
+            if (v < limit) {
+                return length;
+            }
+
+            limit *= 10;
+        }
+
+        return 19;
+    }
+}
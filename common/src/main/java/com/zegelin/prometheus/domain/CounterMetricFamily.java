@@ -5,13 +5,25 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class CounterMetricFamily extends MetricFamily<NumericMetric> {
+public class CounterMetricFamily extends NumericMetricFamily {
     public CounterMetricFamily(final String name, final String help, final Stream<NumericMetric> metrics) {
-        this(name, help, () -> metrics);
+        this(name, help, () -> metrics, null);
     }
 
-    CounterMetricFamily(final String name, final String help, final Supplier<Stream<NumericMetric>> metricsStreamSupplier) {
-        super(name, help, metricsStreamSupplier);
+    public CounterMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource) {
+        super(name, help, batchSource);
+    }
+
+    private CounterMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource, final MetricFamilyObserver observer) {
+        super(name, help, batchSource, observer);
+    }
+
+    private CounterMetricFamily(final CounterMetricFamily family, final MetricFamilyObserver observer) {
+        super(family, observer);
+    }
+
+    CounterMetricFamily(final String name, final String help, final Supplier<Stream<NumericMetric>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
     }
 
     @Override
@@ -21,8 +33,17 @@ public class CounterMetricFamily extends MetricFamily<NumericMetric> {
 
     @Override
     public CounterMetricFamily cachedCopy() {
+        if (batchSource() != null) {
+            return new CounterMetricFamily(name, help, cachedBatchSource(), observer());
+        }
+
         final List<NumericMetric> metrics = metrics().collect(Collectors.toList());
 
-        return new CounterMetricFamily(name, help, metrics::stream);
+        return new CounterMetricFamily(name, help, metrics::stream, observer());
+    }
+
+    @Override
+    public CounterMetricFamily observedCopy(final MetricFamilyObserver observer) {
+        return new CounterMetricFamily(this, observer);
     }
 }
@@ -5,13 +5,25 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class GaugeMetricFamily extends MetricFamily<NumericMetric> {
+public class GaugeMetricFamily extends NumericMetricFamily {
     public GaugeMetricFamily(final String name, final String help, final Stream<NumericMetric> metrics) {
-        this(name, help, () -> metrics);
+        this(name, help, () -> metrics, null);
     }
 
-    GaugeMetricFamily(final String name, final String help, final Supplier<Stream<NumericMetric>> metricsStreamSupplier) {
-        super(name, help, metricsStreamSupplier);
+    public GaugeMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource) {
+        super(name, help, batchSource);
+    }
+
+    private GaugeMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource, final MetricFamilyObserver observer) {
+        super(name, help, batchSource, observer);
+    }
+
+    private GaugeMetricFamily(final GaugeMetricFamily family, final MetricFamilyObserver observer) {
+        super(family, observer);
+    }
+
+    GaugeMetricFamily(final String name, final String help, final Supplier<Stream<NumericMetric>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
     }
 
 
@@ -22,8 +34,17 @@ public class GaugeMetricFamily extends MetricFamily<NumericMetric> {
 
     @Override
     public GaugeMetricFamily cachedCopy() {
+        if (batchSource() != null) {
+            return new GaugeMetricFamily(name, help, cachedBatchSource(), observer());
+        }
+
         final List<NumericMetric> metrics = metrics().collect(Collectors.toList());
 
-        return new GaugeMetricFamily(name, help, metrics::stream);
+        return new GaugeMetricFamily(name, help, metrics::stream, observer());
+    }
+
+    @Override
+    public GaugeMetricFamily observedCopy(final MetricFamilyObserver observer) {
+        return new GaugeMetricFamily(this, observer);
     }
 }
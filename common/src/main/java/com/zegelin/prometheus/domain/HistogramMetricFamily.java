@@ -9,11 +9,11 @@ import java.util.stream.Stream;
 
 public class HistogramMetricFamily extends MetricFamily<HistogramMetricFamily.Histogram> {
     public HistogramMetricFamily(final String name, final String help, final Stream<Histogram> metrics) {
-        this(name, help, () -> metrics);
+        this(name, help, () -> metrics, null);
     }
 
-    HistogramMetricFamily(final String name, final String help, final Supplier<Stream<Histogram>> metricsStreamSupplier) {
-        super(name, help, metricsStreamSupplier);
+    HistogramMetricFamily(final String name, final String help, final Supplier<Stream<Histogram>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
     }
 
     @Override
@@ -25,15 +25,20 @@ public class HistogramMetricFamily extends MetricFamily<HistogramMetricFamily.Hi
     public HistogramMetricFamily cachedCopy() {
         final List<Histogram> metrics = metrics().collect(Collectors.toList());
 
-        return new HistogramMetricFamily(name, help, metrics::stream);
+        return new HistogramMetricFamily(name, help, metrics::stream, observer());
+    }
+
+    @Override
+    public HistogramMetricFamily observedCopy(final MetricFamilyObserver observer) {
+        return new HistogramMetricFamily(name, help, metricsStreamSupplier(), observer);
     }
 
     public static class Histogram extends Metric {
-        public final float sum;
-        public final float count;
+        public final double sum;
+        public final double count;
         public final Iterable<Interval> buckets;
 
-        public Histogram(final Labels labels, final float sum, final float count, final Iterable<Interval> buckets) {
+        public Histogram(final Labels labels, final double sum, final double count, final Iterable<Interval> buckets) {
             super(labels);
 
             this.sum = sum;
@@ -1,9 +1,15 @@
 package com.zegelin.prometheus.domain;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.zegelin.function.FloatFloatFunction;
+import com.zegelin.function.DoubleDoubleFunction;
+import com.zegelin.netty.Floats;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -22,6 +28,11 @@ public final class Interval {
         public static final Quantile P_99_9 = q(.999f);
 
         public static final Set<Quantile> STANDARD_PERCENTILES = ImmutableSet.of(P_50, P_75, P_95, P_98, P_99, P_99_9);
+
+        /**
+         * The standard percentiles, indexable (e.g. for quantile values stored in a double[]).
+         */
+        public static final List<Quantile> STANDARD_PERCENTILES_TABLE = ImmutableList.copyOf(STANDARD_PERCENTILES);
         public static final Quantile POSITIVE_INFINITY = q(Float.POSITIVE_INFINITY);
 
         public final float value;
@@ -30,9 +41,13 @@ public final class Interval {
         private final Labels summaryLabel, histogramLabel;
 
         public Quantile(final float value) {
+            this(value, Float.toString(value));
+        }
+
+        private Quantile(final float value, final String stringRepr) {
             this.value = value;
 
-            this.stringRepr = Float.toString(value);
+            this.stringRepr = stringRepr;
             this.summaryLabel = Labels.of("quantile", this.stringRepr);
             this.histogramLabel = Labels.of("le", this.stringRepr);
         }
@@ -41,6 +56,23 @@ public final class Interval {
             return new Quantile(value);
         }
 
+        /**
+         * @return a histogram bucket upper bound, represented as formatted by {@link Floats#writeDoubleString(ByteBuf, double)}
+         * (as are series values) rather than via its float approximation.
+         */
+        public static Quantile upperBound(final double value) {
+            final ByteBuf buffer = Unpooled.buffer();
+
+            try {
+                Floats.writeDoubleString(buffer, value);
+
+                return new Quantile((float) value, buffer.toString(StandardCharsets.US_ASCII));
+
+            } finally {
+                buffer.release();
+            }
+        }
+
         public Labels asSummaryLabel() {
             return summaryLabel;
         }
@@ -56,19 +88,19 @@ public final class Interval {
     }
 
     public final Quantile quantile;
-    public final float value;
+    public final double value;
 
-    public Interval(final Quantile quantile, final float value) {
+    public Interval(final Quantile quantile, final double value) {
         this.quantile = quantile;
         this.value = value;
     }
 
-    public static Iterable<Interval> asIntervals(final Iterable<Quantile> quantiles, final Function<Quantile, Float> valueFn) {
+    public static Iterable<Interval> asIntervals(final Iterable<Quantile> quantiles, final Function<Quantile, Double> valueFn) {
         return Iterables.transform(quantiles, q -> new Interval(q, valueFn.apply(q)));
     }
 
-    public Interval transform(final FloatFloatFunction valueTransformFn) {
-        if (valueTransformFn == FloatFloatFunction.identity())
+    public Interval transform(final DoubleDoubleFunction valueTransformFn) {
+        if (valueTransformFn == DoubleDoubleFunction.identity())
             return this;
 
         return new Interval(this.quantile, valueTransformFn.apply(this.value));
@@ -2,29 +2,107 @@ package com.zegelin.prometheus.domain;
 
 import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
 import com.zegelin.prometheus.exposition.json.JsonFormatChunkedInput;
+import com.zegelin.prometheus.exposition.protobuf.ProtobufFormatLabels;
 import com.zegelin.prometheus.exposition.text.TextFormatLabels;
 import io.netty.buffer.ByteBuf;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
+/**
+ * An immutable set of labels.
+ *
+ * Instances are interned -- equal label sets share a single instance (and hence a single copy of each lazily encoded
+ * exposition format representation) for as long as the instance is strongly reachable.
+ *
+ * Encoded representations are released once the instance becomes phantom reachable. Released references are
+ * processed whenever labels are interned or encoded (similar to how {@link java.util.WeakHashMap} expunges stale
+ * entries), which avoids both a finalizer and a dedicated cleaner thread.
+ */
 public final class Labels extends ForwardingMap<String, String> {
+    private static final Interner<Labels> INTERNER = Interners.newWeakInterner();
+
+    private static final ReferenceQueue<Labels> RELEASED_LABELS = new ReferenceQueue<>();
+    private static final Set<EncodedFormatsReference> ENCODED_FORMATS_REFERENCES = Sets.newConcurrentHashSet();
+
+    private static final Labels EMPTY = of(ImmutableMap.of());
+
+    private static final int PLAIN_TEXT_FORMAT = 0, JSON_FORMAT = 1, PROTOBUF_FORMAT = 2;
+
+    /**
+     * Lazily encoded format representations, kept separate from the {@link Labels} instance so that they
+     * remain reachable (for release) after the instance itself is collected.
+     */
+    private static final class EncodedFormats extends AtomicReferenceArray<ByteBuf> {
+        EncodedFormats() {
+            super(3);
+        }
+
+        void release() {
+            for (int i = 0; i < length(); i++) {
+                final ByteBuf buffer = getAndSet(i, null);
+
+                if (buffer != null) {
+                    buffer.release();
+                }
+            }
+        }
+    }
+
+    private static final class EncodedFormatsReference extends PhantomReference<Labels> {
+        private final EncodedFormats encodedFormats;
+
+        EncodedFormatsReference(final Labels labels, final EncodedFormats encodedFormats) {
+            super(labels, RELEASED_LABELS);
+
+            this.encodedFormats = encodedFormats;
+        }
+    }
+
     private final ImmutableMap<String, String> labels;
     private final boolean isEmpty;
+    private final int hashCode;
 
-    private ByteBuf plainTextFormatUTF8EncodedByteBuf, jsonFormatUTF8EncodedByteBuf;
+    private volatile EncodedFormats encodedFormats;
 
-    public Labels(final Map<String, String> labels) {
-        this.labels = ImmutableMap.copyOf(labels);
-        this.isEmpty = this.labels.isEmpty();
+    private Labels(final ImmutableMap<String, String> labels) {
+        this.labels = labels;
+        this.isEmpty = labels.isEmpty();
+        this.hashCode = labels.hashCode();
+    }
+
+    public static Labels of(final Map<String, String> labels) {
+        releaseUnreachable();
+
+        return INTERNER.intern(new Labels(ImmutableMap.copyOf(labels)));
     }
 
     public static Labels of(final String key, final String value) {
-        return new Labels(ImmutableMap.of(key, value));
+        return of(ImmutableMap.of(key, value));
     }
 
     public static Labels of() {
-        return new Labels(ImmutableMap.of());
+        return EMPTY;
+    }
+
+    private static void releaseUnreachable() {
+        Reference<? extends Labels> reference;
+
+        while ((reference = RELEASED_LABELS.poll()) != null) {
+            final EncodedFormatsReference encodedFormatsReference = (EncodedFormatsReference) reference;
+
+            ENCODED_FORMATS_REFERENCES.remove(encodedFormatsReference);
+            encodedFormatsReference.encodedFormats.release();
+        }
     }
 
     @Override
@@ -37,27 +115,75 @@ public final class Labels extends ForwardingMap<String, String> {
         return isEmpty;
     }
 
-    public ByteBuf asPlainTextFormatUTF8EncodedByteBuf() {
-        if (plainTextFormatUTF8EncodedByteBuf == null) {
-            this.plainTextFormatUTF8EncodedByteBuf = TextFormatLabels.formatLabels(labels);
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (object == this) {
+            return true;
+        }
+
+        if (object instanceof Labels && ((Labels) object).hashCode != hashCode) {
+            return false;
         }
 
-        return plainTextFormatUTF8EncodedByteBuf;
+        return super.equals(object);
     }
 
-    public ByteBuf asJSONFormatUTF8EncodedByteBuf() {
-        if (jsonFormatUTF8EncodedByteBuf == null) {
-            this.jsonFormatUTF8EncodedByteBuf = JsonFormatChunkedInput.formatLabels(labels);
+    private EncodedFormats encodedFormats() {
+        EncodedFormats encodedFormats = this.encodedFormats;
+
+        if (encodedFormats == null) {
+            synchronized (this) {
+                encodedFormats = this.encodedFormats;
+
+                if (encodedFormats == null) {
+                    releaseUnreachable();
+
+                    encodedFormats = new EncodedFormats();
+                    ENCODED_FORMATS_REFERENCES.add(new EncodedFormatsReference(this, encodedFormats));
+
+                    this.encodedFormats = encodedFormats;
+                }
+            }
         }
 
-        return jsonFormatUTF8EncodedByteBuf;
+        return encodedFormats;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        this.plainTextFormatUTF8EncodedByteBuf.release();
-        this.jsonFormatUTF8EncodedByteBuf.release();
+    private ByteBuf encoded(final int format, final Function<Map<String, String>, ByteBuf> encoder) {
+        final EncodedFormats encodedFormats = encodedFormats();
+
+        final ByteBuf buffer = encodedFormats.get(format);
+
+        if (buffer != null) {
+            return buffer;
+        }
+
+        final ByteBuf encodedBuffer = encoder.apply(labels);
+
+        if (encodedFormats.compareAndSet(format, null, encodedBuffer)) {
+            return encodedBuffer;
+        }
+
+        // lost a race with another thread encoding the same format
+        encodedBuffer.release();
+
+        return encodedFormats.get(format);
+    }
+
+    public ByteBuf asPlainTextFormatUTF8EncodedByteBuf() {
+        return encoded(PLAIN_TEXT_FORMAT, TextFormatLabels::formatLabels);
+    }
+
+    public ByteBuf asJSONFormatUTF8EncodedByteBuf() {
+        return encoded(JSON_FORMAT, JsonFormatChunkedInput::formatLabels);
+    }
 
-        super.finalize();
+    public ByteBuf asProtobufFormatEncodedByteBuf() {
+        return encoded(PROTOBUF_FORMAT, ProtobufFormatLabels::formatLabels);
     }
 }
@@ -0,0 +1,16 @@
+package com.zegelin.prometheus.domain;
+
+/**
+ * A {@link NumericMetric} with an exact integer value.
+ *
+ * Writers format the integer value directly, rather than via the (slower, and for values beyond 2^53, inexact)
+ * floating-point representation.
+ */
+public class LongMetric extends NumericMetric {
+    public final long longValue;
+
+    public LongMetric(final Labels labels, final long value) {
+        super(labels, value);
+        this.longValue = value;
+    }
+}
@@ -3,26 +3,146 @@ package com.zegelin.prometheus.domain;
 import com.google.common.base.MoreObjects;
 
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class MetricFamily<T extends Metric> {
     public final String name, help;
 
-    private Supplier<Stream<T>> metricsStreamSupplier;
+    private final Supplier<Stream<T>> metricsStreamSupplier;
+    private final MetricFamilyObserver observer;
 
     public MetricFamily(final String name, final String help, final Supplier<Stream<T>> metricsStreamSupplier) {
+        this(name, help, metricsStreamSupplier, null);
+    }
+
+    MetricFamily(final String name, final String help, final Supplier<Stream<T>> metricsStreamSupplier, final MetricFamilyObserver observer) {
         this.name = name;
         this.help = help;
         this.metricsStreamSupplier = metricsStreamSupplier;
+        this.observer = observer;
     }
 
     public abstract <R> R accept(final MetricFamilyVisitor<R> visitor);
 
+    /**
+     * @return a copy of this family with its metrics collected. The copy keeps the observer (if any) of this family.
+     */
     public abstract MetricFamily<T> cachedCopy();
 
+    /**
+     * @return a copy of this family (which remains lazy) whose collection and exposition is observed by observer.
+     */
+    public abstract MetricFamily<T> observedCopy(final MetricFamilyObserver observer);
+
+    Supplier<Stream<T>> metricsStreamSupplier() {
+        return metricsStreamSupplier;
+    }
+
+    MetricFamilyObserver observer() {
+        return observer;
+    }
+
     public Stream<T> metrics() {
-        return metricsStreamSupplier.get();
+        if (observer == null) {
+            return metricsStreamSupplier.get();
+        }
+
+        final Stream<T> metrics;
+
+        observer.collectionStarted();
+        try {
+            metrics = metricsStreamSupplier.get();
+
+        } finally {
+            observer.collectionFinished(0);
+        }
+
+        return StreamSupport.stream(new ObservedSpliterator<>(metrics.spliterator(), observer), false);
+    }
+
+    /**
+     * Notify the observer of this family (if any) that the family has been written by an exposition writer.
+     */
+    public void encoded(final long bytes) {
+        if (observer != null) {
+            observer.encoded(bytes);
+        }
+    }
+
+    /**
+     * Observes the advances of the underlying spliterator, from the first to exhaustion, as a single collection.
+     * Downstream actions run within the observation.
+     */
+    private static final class ObservedSpliterator<T> implements Spliterator<T> {
+        private final Spliterator<T> spliterator;
+        private final MetricFamilyObserver observer;
+
+        private boolean started, finished;
+        private int seriesCount;
+
+        ObservedSpliterator(final Spliterator<T> spliterator, final MetricFamilyObserver observer) {
+            this.spliterator = spliterator;
+            this.observer = observer;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+
+                observer.collectionFinished(seriesCount);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            if (finished) {
+                return false;
+            }
+
+            if (!started) {
+                started = true;
+
+                observer.collectionStarted();
+            }
+
+            final boolean advanced;
+
+            try {
+                advanced = spliterator.tryAdvance(action);
+
+            } catch (final RuntimeException | Error e) {
+                finish();
+                throw e;
+            }
+
+            if (advanced) {
+                seriesCount++;
+
+            } else {
+                finish();
+            }
+
+            return advanced;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return spliterator.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return spliterator.characteristics() & ~(Spliterator.SUBSIZED);
+        }
     }
 
     @Override
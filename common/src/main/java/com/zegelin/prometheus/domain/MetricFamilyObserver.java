@@ -0,0 +1,26 @@
+package com.zegelin.prometheus.domain;
+
+/**
+ * Observes the collection and exposition of a {@link MetricFamily}.
+ *
+ * Metric families are typically lazy -- their metrics are collected as they're written by an exposition writer,
+ * interleaved with encoding. Each call to {@link #collectionStarted()} is followed, on the same thread, by a call to
+ * {@link #collectionFinished(int)}. For lazy families, a single observation spans the family's series, from the
+ * first to the last, and hence includes their encoding (observing each series separately would cost more than
+ * collecting most series).
+ *
+ * @see MetricFamily#observedCopy(MetricFamilyObserver)
+ */
+public interface MetricFamilyObserver {
+    void collectionStarted();
+
+    /**
+     * @param seriesCount the number of series collected since the matching call to {@link #collectionStarted()}.
+     */
+    void collectionFinished(int seriesCount);
+
+    /**
+     * Called by exposition writers once the family has been written.
+     */
+    void encoded(long bytes);
+}
@@ -0,0 +1,101 @@
+package com.zegelin.prometheus.domain;
+
+import java.util.Arrays;
+
+/**
+ * A columnar batch of numeric metrics -- the labels and value of each series are stored in parallel arrays rather
+ * than as individual {@link NumericMetric} objects.
+ *
+ * Batches are reused: each collection resets and refills the same arrays, which only grow when the number of series
+ * increases. See {@link NumericMetricBatchSource}.
+ */
+public final class NumericMetricBatch {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Labels[] labels = new Labels[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long[] longValues = new long[INITIAL_CAPACITY];
+    private boolean[] integral = new boolean[INITIAL_CAPACITY];
+
+    private int size;
+
+    NumericMetricBatch() {}
+
+    private NumericMetricBatch(final NumericMetricBatch batch) {
+        this.size = batch.size;
+
+        this.labels = Arrays.copyOf(batch.labels, size);
+        this.values = Arrays.copyOf(batch.values, size);
+        this.longValues = Arrays.copyOf(batch.longValues, size);
+        this.integral = Arrays.copyOf(batch.integral, size);
+    }
+
+    /**
+     * @return a copy of this batch, trimmed to its size. The value arrays are copied, while the {@link Labels}
+     * (which are immutable and interned) are shared.
+     */
+    NumericMetricBatch copy() {
+        return new NumericMetricBatch(this);
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    private int nextIndex() {
+        if (size == labels.length) {
+            final int capacity = labels.length * 2;
+
+            labels = Arrays.copyOf(labels, capacity);
+            values = Arrays.copyOf(values, capacity);
+            longValues = Arrays.copyOf(longValues, capacity);
+            integral = Arrays.copyOf(integral, capacity);
+        }
+
+        return size++;
+    }
+
+    public void add(final Labels labels, final double value) {
+        final int i = nextIndex();
+
+        this.labels[i] = labels;
+        this.values[i] = value;
+        this.integral[i] = false;
+    }
+
+    public void add(final Labels labels, final long value) {
+        final int i = nextIndex();
+
+        this.labels[i] = labels;
+        this.values[i] = value;
+        this.longValues[i] = value;
+        this.integral[i] = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Labels labels(final int i) {
+        return labels[i];
+    }
+
+    /**
+     * @return true if the value at index {@code i} is an exact integer, available via {@link #longValue(int)}.
+     */
+    public boolean isIntegral(final int i) {
+        return integral[i];
+    }
+
+    public double value(final int i) {
+        return values[i];
+    }
+
+    public long longValue(final int i) {
+        return longValues[i];
+    }
+
+    public NumericMetric metric(final int i) {
+        return integral[i] ? new LongMetric(labels[i], longValues[i]) : new NumericMetric(labels[i], values[i]);
+    }
+}
@@ -0,0 +1,86 @@
+package com.zegelin.prometheus.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Fills {@link NumericMetricBatch}es on demand, recycling released batches.
+ *
+ * Typically owned by a collector for its lifetime, so that steady-state collections reuse the same batch.
+ * A single released batch is retained. Concurrent collections (or batches never released, e.g. when a client
+ * disconnects mid-exposition) allocate a new batch instead.
+ *
+ * A source may instead be fixed to a single, already filled batch (see {@link #cachedCopy()}), which is handed out to
+ * every caller and never refilled.
+ */
+public final class NumericMetricBatchSource {
+    private final Consumer<NumericMetricBatch> fillFunction;
+
+    private final NumericMetricBatch cachedBatch;
+
+    private final AtomicReference<NumericMetricBatch> released = new AtomicReference<>();
+
+    public NumericMetricBatchSource(final Consumer<NumericMetricBatch> fillFunction) {
+        this.fillFunction = fillFunction;
+        this.cachedBatch = null;
+    }
+
+    private NumericMetricBatchSource(final NumericMetricBatch cachedBatch) {
+        this.fillFunction = null;
+        this.cachedBatch = cachedBatch;
+    }
+
+    /**
+     * @return a source fixed to a copy of the given batch.
+     */
+    static NumericMetricBatchSource cachedCopy(final NumericMetricBatch batch) {
+        return new NumericMetricBatchSource(batch.copy());
+    }
+
+    /**
+     * @return a freshly filled batch, owned by the caller until passed to {@link #release(NumericMetricBatch)}.
+     */
+    public NumericMetricBatch acquire() {
+        if (cachedBatch != null) {
+            return cachedBatch;
+        }
+
+        NumericMetricBatch batch = released.getAndSet(null);
+
+        if (batch == null) {
+            batch = new NumericMetricBatch();
+        }
+
+        batch.reset();
+        fillFunction.accept(batch);
+
+        return batch;
+    }
+
+    public void release(final NumericMetricBatch batch) {
+        if (cachedBatch != null) {
+            return;
+        }
+
+        released.set(batch);
+    }
+
+    /**
+     * Collect and materialize the batch as individual {@link NumericMetric}s.
+     */
+    Stream<NumericMetric> metrics() {
+        final NumericMetricBatch batch = acquire();
+
+        final List<NumericMetric> metrics = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            metrics.add(batch.metric(i));
+        }
+
+        release(batch);
+
+        return metrics.stream();
+    }
+}
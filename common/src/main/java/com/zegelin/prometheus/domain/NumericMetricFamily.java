@@ -0,0 +1,79 @@
+package com.zegelin.prometheus.domain;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Base for metric families of plain {@link NumericMetric}s, which may be backed by either a {@link Stream}
+ * of metrics or a {@link NumericMetricBatchSource}.
+ *
+ * Exposition writers that support batches should prefer {@link #acquireBatch()} when {@link #batchSource()} is
+ * non-null, as {@link #metrics()} materializes each series of the batch as an object.
+ */
+public abstract class NumericMetricFamily extends MetricFamily<NumericMetric> {
+    private final NumericMetricBatchSource batchSource;
+
+    NumericMetricFamily(final String name, final String help, final Supplier<Stream<NumericMetric>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
+        this.batchSource = null;
+    }
+
+    NumericMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource) {
+        this(name, help, batchSource, null);
+    }
+
+    NumericMetricFamily(final String name, final String help, final NumericMetricBatchSource batchSource, final MetricFamilyObserver observer) {
+        super(name, help, batchSource::metrics, observer);
+        this.batchSource = batchSource;
+    }
+
+    NumericMetricFamily(final NumericMetricFamily family, final MetricFamilyObserver observer) {
+        super(family.name, family.help, family.metricsStreamSupplier(), observer);
+        this.batchSource = family.batchSource;
+    }
+
+    /**
+     * @return the source of batches for this family, or null if the family isn't batch-backed.
+     */
+    public NumericMetricBatchSource batchSource() {
+        return batchSource;
+    }
+
+    /**
+     * Collect a batch and copy it into a fixed {@link NumericMetricBatchSource}, so that cached copies of batch-backed
+     * families remain columnar.
+     */
+    NumericMetricBatchSource cachedBatchSource() {
+        final NumericMetricBatch batch = acquireBatch();
+
+        try {
+            return NumericMetricBatchSource.cachedCopy(batch);
+
+        } finally {
+            batchSource.release(batch);
+        }
+    }
+
+    /**
+     * Acquire a batch from {@link #batchSource()}, observed by the observer of this family (if any).
+     * The batch must be released back to {@link #batchSource()}.
+     */
+    public NumericMetricBatch acquireBatch() {
+        final MetricFamilyObserver observer = observer();
+
+        if (observer == null) {
+            return batchSource.acquire();
+        }
+
+        NumericMetricBatch batch = null;
+
+        observer.collectionStarted();
+        try {
+            batch = batchSource.acquire();
+            return batch;
+
+        } finally {
+            observer.collectionFinished(batch == null ? 0 : batch.size());
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package com.zegelin.prometheus.domain;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SummaryMetricFamily extends MetricFamily<SummaryMetricFamily.Summary> {
     public SummaryMetricFamily(final String name, final String help, final Stream<Summary> metrics) {
-        this(name, help, () -> metrics);
+        this(name, help, () -> metrics, null);
     }
 
-    SummaryMetricFamily(final String name, final String help, final Supplier<Stream<Summary>> metricsStreamSupplier) {
-        super(name, help, metricsStreamSupplier);
+    SummaryMetricFamily(final String name, final String help, final Supplier<Stream<Summary>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
     }
 
     @Override
@@ -25,20 +28,81 @@ public class SummaryMetricFamily extends MetricFamily<SummaryMetricFamily.Summar
     public SummaryMetricFamily cachedCopy() {
         final List<Summary> metrics = metrics().collect(Collectors.toList());
 
-        return new SummaryMetricFamily(name, help, metrics::stream);
+        return new SummaryMetricFamily(name, help, metrics::stream, observer());
+    }
+
+    @Override
+    public SummaryMetricFamily observedCopy(final MetricFamilyObserver observer) {
+        return new SummaryMetricFamily(name, help, metricsStreamSupplier(), observer);
     }
 
     public static class Summary extends Metric {
-        public final float sum;
-        public final float count;
-        public final Iterable<Interval> quantiles;
+        public final double sum;
+        public final double count;
+
+        /**
+         * The quantile of each value (see {@link #quantileValue(int)}), by index.
+         */
+        public final List<Interval.Quantile> quantiles;
+        private final double[] quantileValues;
+
+        /**
+         * @param quantileValues the value of each quantile in {@param quantiles}, by index. The array is copied.
+         */
+        public Summary(final Labels labels, final double sum, final double count, final List<Interval.Quantile> quantiles, final double[] quantileValues) {
+            this(labels, sum, count, quantiles, quantileValues.length, values -> System.arraycopy(quantileValues, 0, values, 0, values.length));
+        }
 
-        public Summary(final Labels labels, final float sum, final float count, final Iterable<Interval> quantiles) {
+        /**
+         * @param quantileValuesWriter called once with an array, sized to {@param quantiles}, that it must fill with
+         *                             the value of each quantile, by index. The array is owned by the Summary.
+         */
+        public Summary(final Labels labels, final double sum, final double count, final List<Interval.Quantile> quantiles, final Consumer<double[]> quantileValuesWriter) {
+            this(labels, sum, count, quantiles, quantiles.size(), quantileValuesWriter);
+        }
+
+        private Summary(final Labels labels, final double sum, final double count, final List<Interval.Quantile> quantiles, final int quantileValuesLength, final Consumer<double[]> quantileValuesWriter) {
             super(labels);
 
+            if (quantiles.size() != quantileValuesLength) {
+                throw new IllegalArgumentException(String.format("Expected %d quantile values, got %d.", quantiles.size(), quantileValuesLength));
+            }
+
             this.sum = sum;
             this.count = count;
-            this.quantiles = ImmutableList.copyOf(quantiles);
+            this.quantiles = quantiles;
+            this.quantileValues = new double[quantileValuesLength];
+
+            quantileValuesWriter.accept(this.quantileValues);
+        }
+
+        public Summary(final Labels labels, final double sum, final double count, final Iterable<Interval> intervals) {
+            super(labels);
+
+            this.sum = sum;
+            this.count = count;
+
+            final ImmutableList.Builder<Interval.Quantile> quantiles = ImmutableList.builder();
+            final List<Double> quantileValues = new ArrayList<>();
+
+            for (final Interval interval : intervals) {
+                quantiles.add(interval.quantile);
+                quantileValues.add(interval.value);
+            }
+
+            this.quantiles = quantiles.build();
+            this.quantileValues = Doubles.toArray(quantileValues);
+        }
+
+        public int quantileCount() {
+            return quantileValues.length;
+        }
+
+        /**
+         * @return the value of the quantile at index {@param i} of {@link #quantiles}.
+         */
+        public double quantileValue(final int i) {
+            return quantileValues[i];
         }
     }
 }
@@ -8,11 +8,11 @@ import java.util.stream.Stream;
 
 public class UntypedMetricFamily extends MetricFamily<UntypedMetricFamily.Untyped> {
     public UntypedMetricFamily(final String name, final String help, final Stream<Untyped> metrics) {
-        this(name, help, () -> metrics);
+        this(name, help, () -> metrics, null);
     }
 
-    UntypedMetricFamily(final String name, final String help, final Supplier<Stream<Untyped>> metricsStreamSupplier) {
-        super(name, help, metricsStreamSupplier);
+    UntypedMetricFamily(final String name, final String help, final Supplier<Stream<Untyped>> metricsStreamSupplier, final MetricFamilyObserver observer) {
+        super(name, help, metricsStreamSupplier, observer);
     }
 
     @Override
@@ -24,13 +24,18 @@ public class UntypedMetricFamily extends MetricFamily<UntypedMetricFamily.Untype
     public MetricFamily<Untyped> cachedCopy() {
         final List<Untyped> metrics = metrics().collect(Collectors.toList());
 
-        return new UntypedMetricFamily(name, help, metrics::stream);
+        return new UntypedMetricFamily(name, help, metrics::stream, observer());
+    }
+
+    @Override
+    public UntypedMetricFamily observedCopy(final MetricFamilyObserver observer) {
+        return new UntypedMetricFamily(name, help, metricsStreamSupplier(), observer);
     }
 
     public static class Untyped extends NumericMetric {
         public final String name;
 
-        public Untyped(final Labels labels, final String name, final float value) {
+        public Untyped(final Labels labels, final String name, final double value) {
             super(labels, value);
 
             this.name = name;
@@ -0,0 +1,116 @@
+package com.zegelin.prometheus.exposition;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Sizes the chunk buffers of an exposition format based on previous expositions.
+ *
+ * Chunks are filled one slice (a header, a metric, etc) at a time. Each chunk is allocated with enough capacity for
+ * what is expected to remain of the exposition (the size of the previous exposition less what has been written so far),
+ * up to {@link #MAX_CHUNK_CAPACITY}, and is considered full once there is no longer room for the largest slice
+ * seen so far. This avoids both over-allocating (the pooled allocator rounds capacities up to a power of two,
+ * so a 5 MiB request occupies 8 MiB of an arena) and having to grow buffers while they're being filled.
+ *
+ * One sizer is shared by all expositions of a format. Each exposition gets its own {@link ChunkWriter}.
+ */
+public final class AdaptiveChunkSizer {
+    public static final int MAX_CHUNK_CAPACITY = 1024 * 1024;
+    private static final int MIN_CHUNK_CAPACITY = 4 * 1024;
+    private static final int INITIAL_MAX_SLICE_SIZE = 16 * 1024;
+
+    // concurrent expositions of the same format race to update these, which is fine -- any of their values will do
+    private volatile long lastExpositionSize = -1;
+    private volatile int lastChunkCount = 0;
+    private volatile int lastMaxChunkCapacity = 0;
+    private volatile int maxSliceSize = INITIAL_MAX_SLICE_SIZE;
+
+    public final class ChunkWriter {
+        private final long expectedExpositionSize = lastExpositionSize;
+
+        private long exposedBytes = 0;
+        private int chunkCount = 0;
+        private int maxChunkCapacity = 0;
+
+        private ChunkWriter() {}
+
+        private int chunkCapacity() {
+            final long remaining = expectedExpositionSize - exposedBytes;
+
+            // unknown (first exposition) or larger than last time -- assume there is plenty left
+            final long expected = (remaining > 0) ? remaining : MAX_CHUNK_CAPACITY;
+
+            final long capacity = Long.highestOneBit(Math.max(expected + maxSliceSize - 1, 1)) << 1;
+
+            return (int) Math.max(MIN_CHUNK_CAPACITY, Math.min(capacity, MAX_CHUNK_CAPACITY));
+        }
+
+        /**
+         * Allocate a chunk buffer and fill it using sliceWriter until either it is full or endOfInput is true.
+         */
+        public ByteBuf readChunk(final ByteBufAllocator allocator, final Consumer<ByteBuf> sliceWriter, final BooleanSupplier endOfInput) {
+            final int capacity = chunkCapacity();
+            final ByteBuf chunkBuffer = allocator.buffer(capacity);
+
+            try {
+                int sliceSize = maxSliceSize;
+
+                // always write at least one slice, even if it's larger than the chunk
+                while ((chunkBuffer.readableBytes() == 0 || chunkBuffer.writableBytes() >= sliceSize) && !endOfInput.getAsBoolean()) {
+                    final int sliceStart = chunkBuffer.writerIndex();
+
+                    sliceWriter.accept(chunkBuffer);
+
+                    final int writtenSliceSize = chunkBuffer.writerIndex() - sliceStart;
+
+                    if (writtenSliceSize > sliceSize) {
+                        maxSliceSize = sliceSize = writtenSliceSize;
+                    }
+                }
+
+            } catch (final Exception e) {
+                chunkBuffer.release();
+
+                throw e;
+            }
+
+            exposedBytes += chunkBuffer.readableBytes();
+            chunkCount++;
+            maxChunkCapacity = Math.max(maxChunkCapacity, chunkBuffer.capacity());
+
+            if (endOfInput.getAsBoolean()) {
+                lastExpositionSize = exposedBytes;
+                lastChunkCount = chunkCount;
+                lastMaxChunkCapacity = maxChunkCapacity;
+            }
+
+            return chunkBuffer;
+        }
+    }
+
+    public ChunkWriter newChunkWriter() {
+        return new ChunkWriter();
+    }
+
+    /**
+     * @return the size, in bytes, of the last completed exposition, or -1 if no exposition has completed yet.
+     */
+    public long lastExpositionSize() {
+        return lastExpositionSize;
+    }
+
+    public int lastChunkCount() {
+        return lastChunkCount;
+    }
+
+    public int lastMaxChunkCapacity() {
+        return lastMaxChunkCapacity;
+    }
+
+    public int maxSliceSize() {
+        return maxSliceSize;
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.escape.CharEscaperBuilder;
 import com.google.common.escape.Escaper;
 import com.zegelin.prometheus.domain.*;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
@@ -58,9 +59,12 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
     private final Instant timestamp;
     private final Labels globalLabels;
     private final boolean includeHelp;
+    private final AdaptiveChunkSizer.ChunkWriter chunkWriter;
 
     private State state = State.HEADER;
+    private MetricFamily<?> metricFamily;
     private MetricFamilyWriter metricFamilyWriter;
+    private long metricFamilyEncodedBytes;
 
     private int metricFamilyCount = 0;
     private int metricCount = 0;
@@ -68,11 +72,12 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
     private final Stopwatch stopwatch = Stopwatch.createUnstarted();
 
 
-    public JsonFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp) {
+    public JsonFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final AdaptiveChunkSizer chunkSizer) {
         this.metricFamilyIterator = metricFamilies.iterator();
         this.timestamp = timestamp;
         this.globalLabels = globalLabels;
         this.includeHelp = includeHelp;
+        this.chunkWriter = chunkSizer.newChunkWriter();
     }
 
     @Override
@@ -166,6 +171,16 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
         }
 
         class MetricVisitor implements MetricFamilyVisitor<Function<ByteBuf, Boolean>> {
+            private void writeLabels(final ByteBuf buffer, final Labels labels) {
+                writeObjectKey(buffer, "labels");
+                if (labels != null) {
+                    final ByteBuf encodedLabels = labels.asJSONFormatUTF8EncodedByteBuf();
+                    buffer.writeBytes(encodedLabels, encodedLabels.readerIndex(), encodedLabels.readableBytes());
+                } else {
+                    writeNull(buffer);
+                }
+            }
+
             private <T extends Metric> Function<ByteBuf, Boolean> metricWriter(final MetricFamily<T> metricFamily, final BiConsumer<T, ByteBuf> valueWriter) {
                 final Iterator<T> metricIterator = metricFamily.metrics().iterator();
 
@@ -174,12 +189,7 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                         final T metric = metricIterator.next();
 
                         JsonToken.OBJECT_START.write(buffer);
-                        writeObjectKey(buffer, "labels");
-                        if (metric.labels != null) {
-                            buffer.writeBytes(metric.labels.asJSONFormatUTF8EncodedByteBuf().slice());
-                        } else {
-                            writeNull(buffer);
-                        }
+                        writeLabels(buffer, metric.labels);
 
                         JsonToken.COMMA.write(buffer);
 
@@ -199,28 +209,71 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                 };
             }
 
+            private Function<ByteBuf, Boolean> numericMetricWriter(final NumericMetricFamily metricFamily) {
+                final NumericMetricBatchSource batchSource = metricFamily.batchSource();
+
+                if (batchSource == null) {
+                    return metricWriter(metricFamily, (metric, buffer) -> {
+                        writeNumber(buffer, metric);
+                    });
+                }
+
+                final NumericMetricBatch batch = metricFamily.acquireBatch();
+
+                return new Function<ByteBuf, Boolean>() {
+                    private int index = 0;
+
+                    @Override
+                    public Boolean apply(final ByteBuf buffer) {
+                        if (index < batch.size()) {
+                            JsonToken.OBJECT_START.write(buffer);
+                            writeLabels(buffer, batch.labels(index));
+
+                            JsonToken.COMMA.write(buffer);
+
+                            writeObjectKey(buffer, "value");
+                            writeNumber(buffer, batch, index);
+
+                            JsonToken.OBJECT_END.write(buffer);
+
+                            index++;
+
+                            if (index < batch.size()) {
+                                JsonToken.COMMA.write(buffer);
+                            }
+
+                            return true;
+                        }
+
+                        if (index == batch.size()) {
+                            index++; // only release once
+
+                            batchSource.release(batch);
+                        }
+
+                        return false;
+                    }
+                };
+            }
+
             @Override
             public Function<ByteBuf, Boolean> visit(final CounterMetricFamily metricFamily) {
-                return metricWriter(metricFamily, (counter, buffer) -> {
-                    writeFloat(buffer, counter.value);
-                });
+                return numericMetricWriter(metricFamily);
             }
 
             @Override
             public Function<ByteBuf, Boolean> visit(final GaugeMetricFamily metricFamily) {
-                return metricWriter(metricFamily, (gauge, buffer) -> {
-                    writeFloat(buffer, gauge.value);
-                });
+                return numericMetricWriter(metricFamily);
             }
 
-            private void writeSumAndCount(final ByteBuf buffer, final float sum, final float count) {
+            private void writeSumAndCount(final ByteBuf buffer, final double sum, final double count) {
                 writeObjectKey(buffer, "sum");
-                writeFloat(buffer, sum);
+                writeDouble(buffer, sum);
 
                 JsonToken.COMMA.write(buffer);
 
                 writeObjectKey(buffer, "count");
-                writeFloat(buffer, count);
+                writeDouble(buffer, count);
             }
 
             private void writeIntervals(final ByteBuf buffer, final Iterable<Interval> intervals) {
@@ -232,7 +285,7 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                     final Interval interval = iterator.next();
 
                     writeObjectKey(buffer, interval.quantile.toString());
-                    writeFloat(buffer, interval.value);
+                    writeDouble(buffer, interval.value);
 
                     if (iterator.hasNext()) {
                         JsonToken.COMMA.write(buffer);
@@ -242,6 +295,21 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                 JsonToken.OBJECT_END.write(buffer);
             }
 
+            private void writeQuantiles(final ByteBuf buffer, final SummaryMetricFamily.Summary summary) {
+                JsonToken.OBJECT_START.write(buffer);
+
+                for (int i = 0; i < summary.quantileCount(); i++) {
+                    if (i > 0) {
+                        JsonToken.COMMA.write(buffer);
+                    }
+
+                    writeObjectKey(buffer, summary.quantiles.get(i).toString());
+                    writeDouble(buffer, summary.quantileValue(i));
+                }
+
+                JsonToken.OBJECT_END.write(buffer);
+            }
+
             @Override
             public Function<ByteBuf, Boolean> visit(final SummaryMetricFamily metricFamily) {
                 return metricWriter(metricFamily, (summary, buffer) -> {
@@ -252,7 +320,7 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                     JsonToken.COMMA.write(buffer);
 
                     writeObjectKey(buffer, "quantiles");
-                    writeIntervals(buffer, summary.quantiles);
+                    writeQuantiles(buffer, summary);
 
                     JsonToken.OBJECT_END.write(buffer);
                 });
@@ -277,7 +345,7 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
             @Override
             public Function<ByteBuf, Boolean> visit(final UntypedMetricFamily metricFamily) {
                 return metricWriter(metricFamily, (untyped, buffer) -> {
-                    writeFloat(buffer, untyped.value);
+                    writeNumber(buffer, untyped);
                 });
             }
         }
@@ -351,19 +419,25 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
 
                 metricFamilyCount++;
 
-                final MetricFamily<?> metricFamily = metricFamilyIterator.next();
+                metricFamily = metricFamilyIterator.next();
 
                 metricFamilyWriter = new MetricFamilyWriter(metricFamily);
 
+                final int familyHeaderStart = chunkBuffer.writerIndex();
                 metricFamilyWriter.writeFamilyHeader(chunkBuffer);
+                metricFamilyEncodedBytes = chunkBuffer.writerIndex() - familyHeaderStart;
 
                 state = State.METRIC;
                 return;
 
             case METRIC:
+                final int metricStart = chunkBuffer.writerIndex();
+
                 if (!metricFamilyWriter.writeMetric(chunkBuffer)) {
                     metricFamilyWriter.writeFamilyFooter(chunkBuffer);
 
+                    metricFamily.encoded(metricFamilyEncodedBytes + chunkBuffer.writerIndex() - metricStart);
+
                     if (metricFamilyIterator.hasNext()) {
                         JsonToken.COMMA.write(chunkBuffer);
                     }
@@ -372,6 +446,8 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
                     return;
                 }
 
+                metricFamilyEncodedBytes += chunkBuffer.writerIndex() - metricStart;
+
                 metricCount++;
 
                 return;
@@ -401,19 +477,6 @@ public class JsonFormatChunkedInput implements ChunkedInput<ByteBuf> {
 
     @Override
     public ByteBuf readChunk(final ChannelHandlerContext ctx) throws Exception {
-        final ByteBuf chunkBuffer = ctx.alloc().buffer(1024 * 1024 * 5);
-
-        // add slices till we hit the chunk size (or slightly over it), or hit EOF
-        while (chunkBuffer.readableBytes() < 1024 * 1024 && state != State.EOF) {
-            try {
-                nextSlice(chunkBuffer);
-
-            } catch (final Exception e) {
-                chunkBuffer.release();
-                throw e;
-            }
-        }
-
-        return chunkBuffer;
+        return chunkWriter.readChunk(ctx.alloc(), this::nextSlice, () -> state == State.EOF);
     }
 }
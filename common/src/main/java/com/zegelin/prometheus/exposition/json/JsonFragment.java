@@ -3,6 +3,10 @@ package com.zegelin.prometheus.exposition.json;
 import com.google.common.escape.CharEscaperBuilder;
 import com.google.common.escape.Escaper;
 import com.zegelin.netty.Floats;
+import com.zegelin.netty.Longs;
+import com.zegelin.prometheus.domain.LongMetric;
+import com.zegelin.prometheus.domain.NumericMetricBatch;
+import com.zegelin.prometheus.domain.NumericMetric;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 
@@ -40,18 +44,36 @@ final class JsonFragment {
         JsonToken.COLON.write(buffer);
     }
 
-    static void writeFloat(final ByteBuf buffer, final float f) {
-        if (Float.isNaN(f)) {
+    static void writeDouble(final ByteBuf buffer, final double d) {
+        if (Double.isNaN(d)) {
             ByteBufUtil.writeAscii(buffer, "\"NaN\"");
             return;
         }
 
-        if (Float.isInfinite(f)) {
-            ByteBufUtil.writeAscii(buffer, (f < 0 ? "\"-Inf\"" : "\"+Inf\""));
+        if (Double.isInfinite(d)) {
+            ByteBufUtil.writeAscii(buffer, (d < 0 ? "\"-Inf\"" : "\"+Inf\""));
             return;
         }
 
-        Floats.writeFloatString(buffer, f);
+        Floats.writeDoubleString(buffer, d);
+    }
+
+    static void writeNumber(final ByteBuf buffer, final NumericMetric metric) {
+        if (metric instanceof LongMetric) {
+            Longs.writeLongString(buffer, ((LongMetric) metric).longValue);
+            return;
+        }
+
+        writeDouble(buffer, metric.value);
+    }
+
+    static void writeNumber(final ByteBuf buffer, final NumericMetricBatch batch, final int i) {
+        if (batch.isIntegral(i)) {
+            Longs.writeLongString(buffer, batch.longValue(i));
+            return;
+        }
+
+        writeDouble(buffer, batch.value(i));
     }
 
     static void writeLong(final ByteBuf buffer, final long l) {
@@ -0,0 +1,101 @@
+package com.zegelin.prometheus.exposition.protobuf;
+
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exposes metric families in the Prometheus protocol buffer format -- a stream of varint length-delimited
+ * {@code io.prometheus.client.MetricFamily} messages.
+ *
+ * Unlike the text and JSON formats there is no banner or footer, as the format has no place for comments.
+ */
+public class ProtobufFormatChunkedInput implements ChunkedInput<ByteBuf> {
+    private enum State {
+        METRIC_FAMILY,
+        METRIC,
+        EOF
+    }
+
+    private final Iterator<MetricFamily> metricFamiliesIterator;
+
+    private final Instant timestamp;
+    private final Labels globalLabels;
+    private final boolean includeHelp;
+    private final AdaptiveChunkSizer.ChunkWriter chunkWriter;
+
+    private State state = State.METRIC_FAMILY;
+    private MetricFamily<?> metricFamily;
+    private ProtobufFormatMetricFamilyWriter metricFamilyWriter;
+    private long metricFamilyEncodedBytes;
+
+
+    public ProtobufFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final AdaptiveChunkSizer chunkSizer) {
+        this.metricFamiliesIterator = metricFamilies.iterator();
+        this.timestamp = timestamp;
+        this.globalLabels = globalLabels;
+        this.includeHelp = includeHelp;
+        this.chunkWriter = chunkSizer.newChunkWriter();
+    }
+
+    @Override
+    public boolean isEndOfInput() {
+        return state == State.EOF;
+    }
+
+    @Override
+    public void close() {}
+
+
+    private void nextSlice(final ByteBuf chunkBuffer) {
+        switch (state) {
+            case METRIC_FAMILY:
+                if (!metricFamiliesIterator.hasNext()) {
+                    state = State.EOF;
+                    return;
+                }
+
+                metricFamily = metricFamiliesIterator.next();
+
+                metricFamilyWriter = new ProtobufFormatMetricFamilyWriter(timestamp, globalLabels, includeHelp, metricFamily);
+
+                final int familyHeaderStart = chunkBuffer.writerIndex();
+                metricFamilyWriter.writeFamilyHeader(chunkBuffer);
+                metricFamilyEncodedBytes = chunkBuffer.writerIndex() - familyHeaderStart;
+
+                state = State.METRIC;
+                return;
+
+            case METRIC:
+                final int metricStart = chunkBuffer.writerIndex();
+                final boolean hasMoreMetrics = metricFamilyWriter.writeMetric(chunkBuffer);
+
+                metricFamilyEncodedBytes += chunkBuffer.writerIndex() - metricStart;
+
+                if (!hasMoreMetrics) {
+                    metricFamily.encoded(metricFamilyEncodedBytes);
+                    state = State.METRIC_FAMILY;
+                }
+
+                return;
+
+            case EOF:
+                return;
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @Override
+    public ByteBuf readChunk(final ChannelHandlerContext ctx) {
+        return chunkWriter.readChunk(ctx.alloc(), this::nextSlice, () -> state == State.EOF);
+    }
+}
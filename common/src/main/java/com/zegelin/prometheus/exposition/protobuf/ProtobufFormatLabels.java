@@ -0,0 +1,45 @@
+package com.zegelin.prometheus.exposition.protobuf;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.Map;
+
+import static com.zegelin.prometheus.exposition.protobuf.ProtobufFragment.*;
+
+public final class ProtobufFormatLabels {
+    // io.prometheus.client.Metric.label
+    private static final byte METRIC_LABEL_TAG = tag(1, WireType.LENGTH_DELIMITED);
+
+    // io.prometheus.client.LabelPair fields
+    private static final byte LABEL_PAIR_NAME_TAG = tag(1, WireType.LENGTH_DELIMITED);
+    private static final byte LABEL_PAIR_VALUE_TAG = tag(2, WireType.LENGTH_DELIMITED);
+
+    private ProtobufFormatLabels() {}
+
+    /**
+     * @return a buffer containing each label encoded as a repeated {@code io.prometheus.client.Metric.label} field,
+     * ready to be copied verbatim into a {@code Metric} message.
+     */
+    public static ByteBuf formatLabels(final Map<String, String> labels) {
+        if (labels.isEmpty())
+            return Unpooled.EMPTY_BUFFER;
+
+        final ByteBuf buffer = Unpooled.buffer();
+
+        for (final Map.Entry<String, String> label : labels.entrySet()) {
+            final byte[] name = utf8Bytes(label.getKey());
+            final byte[] value = utf8Bytes(label.getValue());
+
+            final int labelPairSize = 1 + lengthDelimitedSize(name.length) + 1 + lengthDelimitedSize(value.length);
+
+            buffer.writeByte(METRIC_LABEL_TAG);
+            writeVarint(buffer, labelPairSize);
+
+            writeBytesField(buffer, LABEL_PAIR_NAME_TAG, name);
+            writeBytesField(buffer, LABEL_PAIR_VALUE_TAG, value);
+        }
+
+        return buffer;
+    }
+}
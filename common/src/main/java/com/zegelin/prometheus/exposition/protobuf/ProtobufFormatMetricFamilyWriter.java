@@ -0,0 +1,400 @@
+package com.zegelin.prometheus.exposition.protobuf;
+
+import com.zegelin.prometheus.domain.*;
+import io.netty.buffer.ByteBuf;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import static com.zegelin.prometheus.exposition.protobuf.ProtobufFragment.*;
+
+/**
+ * Writes a {@link MetricFamily} as a varint length-delimited {@code io.prometheus.client.MetricFamily} message.
+ *
+ * Messages are encoded directly, without first building generated protobuf objects.
+ * The length prefix of the family message must be known before anything is written, so the metrics of a family are
+ * gathered into a list (or, for batch-backed families, a {@link NumericMetricBatch} is acquired) and sized up-front,
+ * and then written one at a time via {@link #writeMetric(ByteBuf)}.
+ */
+class ProtobufFormatMetricFamilyWriter {
+    // io.prometheus.client.MetricType
+    private enum MetricType {
+        COUNTER(0),
+        GAUGE(1),
+        SUMMARY(2),
+        UNTYPED(3),
+        HISTOGRAM(4);
+
+        final int id;
+
+        MetricType(final int id) {
+            this.id = id;
+        }
+    }
+
+    // io.prometheus.client.MetricFamily fields
+    private static final byte FAMILY_NAME_TAG = tag(1, WireType.LENGTH_DELIMITED);
+    private static final byte FAMILY_HELP_TAG = tag(2, WireType.LENGTH_DELIMITED);
+    private static final byte FAMILY_TYPE_TAG = tag(3, WireType.VARINT);
+    private static final byte FAMILY_METRIC_TAG = tag(4, WireType.LENGTH_DELIMITED);
+
+    // io.prometheus.client.Metric fields (label is handled by ProtobufFormatLabels)
+    private static final byte METRIC_GAUGE_TAG = tag(2, WireType.LENGTH_DELIMITED);
+    private static final byte METRIC_COUNTER_TAG = tag(3, WireType.LENGTH_DELIMITED);
+    private static final byte METRIC_SUMMARY_TAG = tag(4, WireType.LENGTH_DELIMITED);
+    private static final byte METRIC_UNTYPED_TAG = tag(5, WireType.LENGTH_DELIMITED);
+    private static final byte METRIC_TIMESTAMP_TAG = tag(6, WireType.VARINT);
+    private static final byte METRIC_HISTOGRAM_TAG = tag(7, WireType.LENGTH_DELIMITED);
+
+    // io.prometheus.client.Gauge/Counter/Untyped.value
+    private static final byte VALUE_TAG = tag(1, WireType.FIXED_64);
+
+    // io.prometheus.client.Summary/Histogram fields
+    private static final byte SAMPLE_COUNT_TAG = tag(1, WireType.VARINT);
+    private static final byte SAMPLE_SUM_TAG = tag(2, WireType.FIXED_64);
+    private static final byte QUANTILE_OR_BUCKET_TAG = tag(3, WireType.LENGTH_DELIMITED);
+
+    // io.prometheus.client.Quantile fields
+    private static final byte QUANTILE_QUANTILE_TAG = tag(1, WireType.FIXED_64);
+    private static final byte QUANTILE_VALUE_TAG = tag(2, WireType.FIXED_64);
+    private static final int QUANTILE_SIZE = (1 + FIXED_64_SIZE) * 2;
+
+    // io.prometheus.client.Bucket fields
+    private static final byte BUCKET_CUMULATIVE_COUNT_TAG = tag(1, WireType.VARINT);
+    private static final byte BUCKET_UPPER_BOUND_TAG = tag(2, WireType.FIXED_64);
+
+    private static final int DOUBLE_FIELD_SIZE = 1 + FIXED_64_SIZE;
+
+    // Quantile values are floats. Widening them directly to doubles (i.e., 0.95f -> 0.949999988079071) would result
+    // in different series than the text format (where the shortest representation, "0.95", is parsed by Prometheus).
+    // Convert via the decimal representation instead, which is done once per Quantile.
+    private static final Map<Interval.Quantile, Double> QUANTILE_VALUES = new ConcurrentHashMap<>();
+
+    private final long timestamp;
+    private final Labels globalLabels;
+    private final boolean includeHelp;
+    private final MetricFamily<?> metricFamily;
+
+    private final MetricWriter metricWriter;
+
+    ProtobufFormatMetricFamilyWriter(final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final MetricFamily<?> metricFamily) {
+        this.timestamp = timestamp.toEpochMilli();
+        this.globalLabels = globalLabels;
+        this.includeHelp = includeHelp;
+        this.metricFamily = metricFamily;
+
+        this.metricWriter = metricFamily.accept(new MetricVisitor());
+    }
+
+    private static double quantileValue(final Interval.Quantile quantile) {
+        return QUANTILE_VALUES.computeIfAbsent(quantile, q -> Double.parseDouble(q.toString()));
+    }
+
+    private static int labelsSize(final Labels labels) {
+        return (labels == null) ? 0 : labels.asProtobufFormatEncodedByteBuf().readableBytes();
+    }
+
+    private static void writeLabels(final ByteBuf buffer, final Labels labels) {
+        if (labels == null)
+            return;
+
+        final ByteBuf encodedLabels = labels.asProtobufFormatEncodedByteBuf();
+        buffer.writeBytes(encodedLabels, encodedLabels.readerIndex(), encodedLabels.readableBytes());
+    }
+
+    private abstract static class MetricWriter {
+        final MetricType type;
+
+        MetricWriter(final MetricType type) {
+            this.type = type;
+        }
+
+        /**
+         * @return the total size of the (tagged and length-prefixed) Metric messages of the family.
+         */
+        abstract int metricsSize();
+
+        abstract boolean writeMetric(final ByteBuf buffer);
+    }
+
+    private int metricHeaderSize(final Labels labels, final int valueSize) {
+        return labelsSize(labels) + labelsSize(globalLabels)
+                + 1 + lengthDelimitedSize(valueSize)
+                + 1 + varintSize(timestamp);
+    }
+
+    private void writeMetricHeader(final ByteBuf buffer, final Labels labels, final byte valueTag, final int valueSize) {
+        buffer.writeByte(FAMILY_METRIC_TAG);
+        writeVarint(buffer, metricHeaderSize(labels, valueSize));
+
+        writeLabels(buffer, labels);
+        writeLabels(buffer, globalLabels);
+
+        buffer.writeByte(valueTag);
+        writeVarint(buffer, valueSize);
+    }
+
+    private void writeMetricTimestamp(final ByteBuf buffer) {
+        buffer.writeByte(METRIC_TIMESTAMP_TAG);
+        writeVarint(buffer, timestamp);
+    }
+
+    private final class ListMetricWriter<T extends Metric> extends MetricWriter {
+        private final byte valueTag;
+        private final ToIntFunction<T> valueSizeFunction;
+        private final BiConsumer<T, ByteBuf> valueWriter;
+
+        private final List<T> metrics;
+        private final Iterator<T> metricsIterator;
+
+        ListMetricWriter(final MetricFamily<T> metricFamily, final MetricType type, final byte valueTag,
+                         final ToIntFunction<T> valueSizeFunction, final BiConsumer<T, ByteBuf> valueWriter) {
+            super(type);
+
+            this.valueTag = valueTag;
+            this.valueSizeFunction = valueSizeFunction;
+            this.valueWriter = valueWriter;
+
+            this.metrics = metricFamily.metrics().collect(Collectors.toList());
+            this.metricsIterator = metrics.iterator();
+        }
+
+        @Override
+        int metricsSize() {
+            int size = 0;
+
+            for (final T metric : metrics) {
+                size += 1 + lengthDelimitedSize(metricHeaderSize(metric.labels, valueSizeFunction.applyAsInt(metric)));
+            }
+
+            return size;
+        }
+
+        @Override
+        boolean writeMetric(final ByteBuf buffer) {
+            if (!metricsIterator.hasNext()) {
+                return false;
+            }
+
+            final T metric = metricsIterator.next();
+
+            writeMetricHeader(buffer, metric.labels, valueTag, valueSizeFunction.applyAsInt(metric));
+            valueWriter.accept(metric, buffer);
+            writeMetricTimestamp(buffer);
+
+            return true;
+        }
+    }
+
+    /**
+     * Writes the series of a {@link NumericMetricBatch} directly from its columns.
+     * The batch is released back to its source once the last series has been written.
+     */
+    private final class BatchMetricWriter extends MetricWriter {
+        private final byte valueTag;
+
+        private final NumericMetricBatchSource batchSource;
+        private final NumericMetricBatch batch;
+
+        private int index = 0;
+
+        BatchMetricWriter(final NumericMetricFamily metricFamily, final MetricType type, final byte valueTag) {
+            super(type);
+
+            this.valueTag = valueTag;
+
+            this.batchSource = metricFamily.batchSource();
+            this.batch = metricFamily.acquireBatch();
+        }
+
+        @Override
+        int metricsSize() {
+            int size = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                size += 1 + lengthDelimitedSize(metricHeaderSize(batch.labels(i), DOUBLE_FIELD_SIZE));
+            }
+
+            return size;
+        }
+
+        @Override
+        boolean writeMetric(final ByteBuf buffer) {
+            if (index < batch.size()) {
+                writeMetricHeader(buffer, batch.labels(index), valueTag, DOUBLE_FIELD_SIZE);
+
+                buffer.writeByte(VALUE_TAG);
+                writeDouble(buffer, batch.value(index));
+
+                writeMetricTimestamp(buffer);
+
+                index++;
+
+                return true;
+            }
+
+            if (index == batch.size()) {
+                index++; // only release once
+
+                batchSource.release(batch);
+            }
+
+            return false;
+        }
+    }
+
+    private final class MetricVisitor implements MetricFamilyVisitor<MetricWriter> {
+        private MetricWriter numericMetricWriter(final NumericMetricFamily metricFamily, final MetricType type, final byte valueTag) {
+            if (metricFamily.batchSource() != null) {
+                return new BatchMetricWriter(metricFamily, type, valueTag);
+            }
+
+            return listNumericMetricWriter(metricFamily, type, valueTag);
+        }
+
+        private <T extends NumericMetric> MetricWriter listNumericMetricWriter(final MetricFamily<T> metricFamily, final MetricType type, final byte valueTag) {
+            return new ListMetricWriter<>(metricFamily, type, valueTag,
+                    metric -> DOUBLE_FIELD_SIZE,
+                    (metric, buffer) -> {
+                        buffer.writeByte(VALUE_TAG);
+                        writeDouble(buffer, metric.value);
+                    });
+        }
+
+        @Override
+        public MetricWriter visit(final CounterMetricFamily metricFamily) {
+            return numericMetricWriter(metricFamily, MetricType.COUNTER, METRIC_COUNTER_TAG);
+        }
+
+        @Override
+        public MetricWriter visit(final GaugeMetricFamily metricFamily) {
+            return numericMetricWriter(metricFamily, MetricType.GAUGE, METRIC_GAUGE_TAG);
+        }
+
+        @Override
+        public MetricWriter visit(final UntypedMetricFamily metricFamily) {
+            return listNumericMetricWriter(metricFamily, MetricType.UNTYPED, METRIC_UNTYPED_TAG);
+        }
+
+        private int sampleCountAndSumSize(final long count) {
+            return 1 + varintSize(count) + DOUBLE_FIELD_SIZE;
+        }
+
+        private void writeSampleCountAndSum(final ByteBuf buffer, final long count, final double sum) {
+            buffer.writeByte(SAMPLE_COUNT_TAG);
+            writeVarint(buffer, count);
+
+            buffer.writeByte(SAMPLE_SUM_TAG);
+            writeDouble(buffer, sum);
+        }
+
+        @Override
+        public MetricWriter visit(final SummaryMetricFamily metricFamily) {
+            return new ListMetricWriter<>(metricFamily, MetricType.SUMMARY, METRIC_SUMMARY_TAG,
+                    summary -> {
+                        int size = sampleCountAndSumSize((long) summary.count);
+
+                        size += summary.quantileCount() * (1 + lengthDelimitedSize(QUANTILE_SIZE));
+
+                        return size;
+                    },
+                    (summary, buffer) -> {
+                        writeSampleCountAndSum(buffer, (long) summary.count, summary.sum);
+
+                        for (int i = 0; i < summary.quantileCount(); i++) {
+                            buffer.writeByte(QUANTILE_OR_BUCKET_TAG);
+                            writeVarint(buffer, QUANTILE_SIZE);
+
+                            buffer.writeByte(QUANTILE_QUANTILE_TAG);
+                            writeDouble(buffer, quantileValue(summary.quantiles.get(i)));
+
+                            buffer.writeByte(QUANTILE_VALUE_TAG);
+                            writeDouble(buffer, summary.quantileValue(i));
+                        }
+                    });
+        }
+
+        private int bucketSize(final double cumulativeCount) {
+            return 1 + varintSize((long) cumulativeCount) + DOUBLE_FIELD_SIZE;
+        }
+
+        private void writeBucket(final ByteBuf buffer, final Interval.Quantile upperBound, final double cumulativeCount) {
+            buffer.writeByte(QUANTILE_OR_BUCKET_TAG);
+            writeVarint(buffer, bucketSize(cumulativeCount));
+
+            buffer.writeByte(BUCKET_CUMULATIVE_COUNT_TAG);
+            writeVarint(buffer, (long) cumulativeCount);
+
+            buffer.writeByte(BUCKET_UPPER_BOUND_TAG);
+            writeDouble(buffer, quantileValue(upperBound));
+        }
+
+        @Override
+        public MetricWriter visit(final HistogramMetricFamily metricFamily) {
+            return new ListMetricWriter<>(metricFamily, MetricType.HISTOGRAM, METRIC_HISTOGRAM_TAG,
+                    histogram -> {
+                        int size = sampleCountAndSumSize((long) histogram.count);
+
+                        for (final Interval interval : histogram.buckets) {
+                            size += 1 + lengthDelimitedSize(bucketSize(interval.value));
+                        }
+
+                        size += 1 + lengthDelimitedSize(bucketSize(histogram.count));
+
+                        return size;
+                    },
+                    (histogram, buffer) -> {
+                        writeSampleCountAndSum(buffer, (long) histogram.count, histogram.sum);
+
+                        for (final Interval interval : histogram.buckets) {
+                            writeBucket(buffer, interval.quantile, interval.value);
+                        }
+
+                        writeBucket(buffer, Interval.Quantile.POSITIVE_INFINITY, histogram.count);
+                    });
+        }
+    }
+
+
+    /***
+     * Write the length prefix and header fields (name, help, type) of the MetricFamily message to the provided ByteBuf.
+     */
+    void writeFamilyHeader(final ByteBuf buffer) {
+        final byte[] help = (includeHelp && metricFamily.help != null) ? utf8Bytes(metricFamily.help) : null;
+
+        int familySize = 1 + lengthDelimitedSize(metricFamily.name.length());
+
+        if (help != null) {
+            familySize += 1 + lengthDelimitedSize(help.length);
+        }
+
+        familySize += 1 + varintSize(metricWriter.type.id);
+        familySize += metricWriter.metricsSize();
+
+        writeVarint(buffer, familySize);
+
+        writeAsciiField(buffer, FAMILY_NAME_TAG, metricFamily.name);
+
+        if (help != null) {
+            writeBytesField(buffer, FAMILY_HELP_TAG, help);
+        }
+
+        buffer.writeByte(FAMILY_TYPE_TAG);
+        writeVarint(buffer, metricWriter.type.id);
+    }
+
+    /***
+     * Write the next Metric from the MetricFamily to the provided ByteBuf.
+     *
+     * @return true if a Metric was written, false if there are no more Metrics to write.
+     */
+    boolean writeMetric(final ByteBuf buffer) {
+        return metricWriter.writeMetric(buffer);
+    }
+}
@@ -0,0 +1,79 @@
+package com.zegelin.prometheus.exposition.protobuf;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocol Buffers wire format primitives.
+ *
+ * See https://developers.google.com/protocol-buffers/docs/encoding
+ */
+final class ProtobufFragment {
+    private ProtobufFragment() {}
+
+    enum WireType {
+        VARINT(0),
+        FIXED_64(1),
+        LENGTH_DELIMITED(2);
+
+        final int id;
+
+        WireType(final int id) {
+            this.id = id;
+        }
+    }
+
+    static final int FIXED_64_SIZE = 8;
+
+    static byte tag(final int fieldNumber, final WireType wireType) {
+        // all field numbers used by the Prometheus client model are < 16, hence the tag always fits in a single byte
+        return (byte) ((fieldNumber << 3) | wireType.id);
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    static void writeVarint(final ByteBuf buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.writeByte((int) value);
+    }
+
+    static void writeDouble(final ByteBuf buffer, final double value) {
+        // fixed64 values are little-endian
+        buffer.writeLong(Long.reverseBytes(Double.doubleToRawLongBits(value)));
+    }
+
+    static int lengthDelimitedSize(final int length) {
+        return varintSize(length) + length;
+    }
+
+    static void writeAsciiField(final ByteBuf buffer, final byte tag, final String value) {
+        buffer.writeByte(tag);
+        writeVarint(buffer, value.length());
+        ByteBufUtil.writeAscii(buffer, value);
+    }
+
+    static void writeBytesField(final ByteBuf buffer, final byte tag, final byte[] value) {
+        buffer.writeByte(tag);
+        writeVarint(buffer, value.length);
+        buffer.writeBytes(value);
+    }
+
+    static byte[] utf8Bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
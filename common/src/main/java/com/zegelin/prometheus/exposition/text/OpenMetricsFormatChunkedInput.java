@@ -0,0 +1,117 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exposes metric families in the OpenMetrics 1.0 text format.
+ *
+ * OpenMetrics doesn't permit arbitrary comments or blank lines, hence there is no banner or footer
+ * (unlike {@link TextFormatChunkedInput}) and the exposition is terminated with "# EOF".
+ */
+public class OpenMetricsFormatChunkedInput implements ChunkedInput<ByteBuf> {
+    private enum State {
+        METRIC_FAMILY,
+        METRIC,
+        EOF_MARKER,
+        EOF
+    }
+
+    private final Iterator<MetricFamily> metricFamiliesIterator;
+
+    private final Instant timestamp;
+    private final Labels globalLabels;
+    private final boolean includeHelp;
+    private final AdaptiveChunkSizer.ChunkWriter chunkWriter;
+    private final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape;
+
+    private State state = State.METRIC_FAMILY;
+    private MetricFamily<?> metricFamily;
+    private OpenMetricsFormatMetricFamilyWriter metricFamilyWriter;
+    private long metricFamilyEncodedBytes;
+
+
+    /**
+     * @param prefixCacheScrape scrape of the cache of encoded OpenMetrics series prefixes, as returned by
+     *                          {@link TextFormatSeriesPrefixCache#beginScrape(long, Labels)} for the same global labels.
+     *                          The cache must not be shared with the 0.0.4 format.
+     */
+    public OpenMetricsFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp,
+                                         final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape, final AdaptiveChunkSizer chunkSizer) {
+        this.metricFamiliesIterator = metricFamilies.iterator();
+        this.timestamp = timestamp;
+        this.globalLabels = globalLabels;
+        this.includeHelp = includeHelp;
+        this.prefixCacheScrape = prefixCacheScrape;
+        this.chunkWriter = chunkSizer.newChunkWriter();
+    }
+
+    @Override
+    public boolean isEndOfInput() {
+        return state == State.EOF;
+    }
+
+    @Override
+    public void close() {}
+
+
+    private void nextSlice(final ByteBuf chunkBuffer) {
+        switch (state) {
+            case METRIC_FAMILY:
+                if (!metricFamiliesIterator.hasNext()) {
+                    state = State.EOF_MARKER;
+                    return;
+                }
+
+                metricFamily = metricFamiliesIterator.next();
+
+                metricFamilyWriter = new OpenMetricsFormatMetricFamilyWriter(timestamp, globalLabels, includeHelp, prefixCacheScrape, metricFamily);
+
+                final int familyHeaderStart = chunkBuffer.writerIndex();
+                metricFamilyWriter.writeFamilyHeader(chunkBuffer);
+                metricFamilyEncodedBytes = chunkBuffer.writerIndex() - familyHeaderStart;
+
+                state = State.METRIC;
+                return;
+
+            case METRIC:
+                final int metricStart = chunkBuffer.writerIndex();
+                final boolean hasMoreMetrics = metricFamilyWriter.writeMetric(chunkBuffer);
+
+                metricFamilyEncodedBytes += chunkBuffer.writerIndex() - metricStart;
+
+                if (!hasMoreMetrics) {
+                    metricFamily.encoded(metricFamilyEncodedBytes);
+                    state = State.METRIC_FAMILY;
+                }
+
+                return;
+
+            case EOF_MARKER:
+                ByteBufUtil.writeAscii(chunkBuffer, "# EOF\n");
+
+                state = State.EOF;
+                return;
+
+            case EOF:
+                return;
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @Override
+    public ByteBuf readChunk(final ChannelHandlerContext ctx) {
+        return chunkWriter.readChunk(ctx.alloc(), this::nextSlice, () -> state == State.EOF);
+    }
+}
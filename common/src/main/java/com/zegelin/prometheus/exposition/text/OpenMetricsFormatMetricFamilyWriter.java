@@ -0,0 +1,404 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.escape.CharEscaperBuilder;
+import com.google.common.escape.Escaper;
+import com.zegelin.netty.Floats;
+import com.zegelin.netty.Longs;
+import com.zegelin.prometheus.domain.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Writes a {@link MetricFamily} in the OpenMetrics 1.0 text format.
+ *
+ * Differences to the Prometheus 0.0.4 text format ({@link TextFormatMetricFamilyWriter}):
+ *
+ * - counter family names (in the metadata) never end in "_total", while counter sample names always do.
+ * - "# UNIT" metadata is written for families whose name ends in a well-known unit suffix.
+ * - untyped families are exposed with the type "unknown".
+ * - +Inf, -Inf and NaN are written as such, including the "le" label of the +Inf histogram bucket.
+ * - timestamps are in seconds, not milliseconds.
+ *
+ * Counter "_created" samples are optional and are not written -- the creation time of Cassandra metrics isn't known.
+ * Summary and histogram "_sum" samples are also optional, and are not written when the sum is unknown (NaN).
+ *
+ * Series prefixes are cached in the same way as the 0.0.4 format (see {@link TextFormatSeriesPrefixCache}), though
+ * in a separate cache, as the prefixes of the two formats differ.
+ */
+class OpenMetricsFormatMetricFamilyWriter {
+    private enum MetricFamilyType {
+        GAUGE,
+        COUNTER,
+        HISTOGRAM,
+        SUMMARY,
+        UNKNOWN;
+
+        private final String encoded;
+
+        MetricFamilyType() {
+            encoded = this.name().toLowerCase();
+        }
+
+        void write(final ByteBuf buffer) {
+            ByteBufUtil.writeAscii(buffer, encoded);
+        }
+    }
+
+    private static final String COUNTER_SUFFIX = "_total";
+
+    private static final List<String> UNITS = ImmutableList.of("seconds", "bytes", "ratio");
+
+    private static final Labels POSITIVE_INFINITY_HISTOGRAM_LABEL = Labels.of("le", "+Inf");
+
+    private static Escaper HELP_STRING_ESCAPER = new CharEscaperBuilder()
+            .addEscape('\\', "\\\\")
+            .addEscape('\n', "\\n")
+            .addEscape('"', "\\\"")
+            .toEscaper();
+
+    private final String timestamp;
+    private final Labels globalLabels;
+    private final boolean includeHelp;
+    private final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape;
+    private final TextFormatSeriesPrefixCache.FamilyPrefixes familyPrefixes;
+
+    private final MetricFamily<?> metricFamily;
+    private final MetricFamilyType type;
+    private final String familyName, sampleName, unit;
+
+    private final Function<ByteBuf, Boolean> metricWriter;
+
+    OpenMetricsFormatMetricFamilyWriter(final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape, final MetricFamily<?> metricFamily) {
+        this.timestamp = String.format(" %d.%03d", timestamp.getEpochSecond(), timestamp.getNano() / 1_000_000);
+        this.globalLabels = globalLabels;
+        this.includeHelp = includeHelp;
+        this.prefixCacheScrape = prefixCacheScrape;
+        this.familyPrefixes = prefixCacheScrape.checkOut(metricFamily.name);
+
+        this.metricFamily = metricFamily;
+        this.type = metricFamily.accept(new TypeVisitor());
+
+        if (type == MetricFamilyType.COUNTER) {
+            this.familyName = metricFamily.name.endsWith(COUNTER_SUFFIX) ?
+                    metricFamily.name.substring(0, metricFamily.name.length() - COUNTER_SUFFIX.length()) :
+                    metricFamily.name;
+            this.sampleName = familyName + COUNTER_SUFFIX;
+
+        } else {
+            this.familyName = metricFamily.name;
+            this.sampleName = metricFamily.name;
+        }
+
+        this.unit = UNITS.stream()
+                .filter(u -> familyName.endsWith("_" + u))
+                .findFirst()
+                .orElse(null);
+
+        this.metricWriter = metricFamily.accept(new MetricVisitor());
+    }
+
+    private static void writeValue(final ByteBuf buffer, final double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            ByteBufUtil.writeAscii(buffer, "+Inf");
+
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            ByteBufUtil.writeAscii(buffer, "-Inf");
+
+        } else if (Double.isNaN(value)) {
+            ByteBufUtil.writeAscii(buffer, "NaN");
+
+        } else {
+            Floats.writeDoubleString(buffer, value);
+        }
+    }
+
+    class TypeVisitor implements MetricFamilyVisitor<MetricFamilyType> {
+        @Override
+        public MetricFamilyType visit(final CounterMetricFamily metricFamily) {
+            return MetricFamilyType.COUNTER;
+        }
+
+        @Override
+        public MetricFamilyType visit(final GaugeMetricFamily metricFamily) {
+            return MetricFamilyType.GAUGE;
+        }
+
+        @Override
+        public MetricFamilyType visit(final SummaryMetricFamily metricFamily) {
+            return MetricFamilyType.SUMMARY;
+        }
+
+        @Override
+        public MetricFamilyType visit(final HistogramMetricFamily metricFamily) {
+            return MetricFamilyType.HISTOGRAM;
+        }
+
+        @Override
+        public MetricFamilyType visit(final UntypedMetricFamily metricFamily) {
+            return MetricFamilyType.UNKNOWN;
+        }
+    }
+
+    class MetricVisitor implements MetricFamilyVisitor<Function<ByteBuf, Boolean>> {
+        private void writeLabels(final ByteBuf buffer, final Labels labels, final boolean commaPrefix) {
+            if (commaPrefix) {
+                buffer.writeByte(',');
+            }
+
+            // label escaping is identical between the 0.0.4 and OpenMetrics formats
+            buffer.writeBytes(labels.asPlainTextFormatUTF8EncodedByteBuf().slice());
+        }
+
+        private void writeLabelSets(final ByteBuf buffer, final Labels labels, final Labels extraLabels) {
+            buffer.writeByte('{');
+
+            boolean needsComma = false;
+
+            if (labels != null && !labels.isEmpty()) {
+                writeLabels(buffer, labels, false);
+                needsComma = true;
+            }
+
+            if (extraLabels != null && !extraLabels.isEmpty()) {
+                writeLabels(buffer, extraLabels, needsComma);
+                needsComma = true;
+            }
+
+            if (!globalLabels.isEmpty()) {
+                writeLabels(buffer, globalLabels, needsComma);
+            }
+
+            buffer.writeByte('}');
+        }
+
+        private void writeSeriesPrefix(final ByteBuf buffer, final String suffix, final Labels labels, final Labels extraLabels) {
+            final byte[] cachedPrefix = familyPrefixes.get(suffix, labels, extraLabels);
+
+            if (cachedPrefix != null) {
+                buffer.writeBytes(cachedPrefix);
+                familyPrefixes.advance();
+                return;
+            }
+
+            final int prefixStart = buffer.writerIndex();
+
+            ByteBufUtil.writeAscii(buffer, sampleName);
+            if (suffix != null) {
+                ByteBufUtil.writeAscii(buffer, suffix);
+            }
+
+            writeLabelSets(buffer, labels, extraLabels);
+
+            buffer.writeByte(' ');
+
+            final byte[] prefix = new byte[buffer.writerIndex() - prefixStart];
+            buffer.getBytes(prefixStart, prefix);
+
+            familyPrefixes.put(suffix, labels, extraLabels, prefix);
+            familyPrefixes.advance();
+        }
+
+        private void writeMetric(final ByteBuf buffer, final String suffix, final double value, final Labels labels, final Labels extraLabels) {
+            writeSeriesPrefix(buffer, suffix, labels, extraLabels);
+
+            writeValue(buffer, value);
+            ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
+            buffer.writeByte('\n');
+        }
+
+        private void writeMetric(final ByteBuf buffer, final String suffix, final double value, final Labels labels) {
+            writeMetric(buffer, suffix, value, labels, null);
+        }
+
+        /**
+         * Counts (and histogram buckets) are whole numbers, and are written as integers when they are.
+         */
+        private void writeCount(final ByteBuf buffer, final String suffix, final double count, final Labels labels, final Labels extraLabels) {
+            if (count != (long) count) {
+                writeMetric(buffer, suffix, count, labels, extraLabels);
+                return;
+            }
+
+            writeSeriesPrefix(buffer, suffix, labels, extraLabels);
+
+            Longs.writeLongString(buffer, (long) count);
+            ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
+            buffer.writeByte('\n');
+        }
+
+        private void writeSum(final ByteBuf buffer, final double sum, final Labels labels) {
+            // unknown sums are omitted rather than written as NaN
+            if (Double.isNaN(sum)) {
+                return;
+            }
+
+            writeMetric(buffer, "_sum", sum, labels);
+        }
+
+        private void writeMetric(final ByteBuf buffer, final Labels labels, final long value) {
+            writeSeriesPrefix(buffer, null, labels, null);
+
+            Longs.writeLongString(buffer, value);
+            ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
+            buffer.writeByte('\n');
+        }
+
+        private void writeMetric(final ByteBuf buffer, final NumericMetric metric) {
+            if (metric instanceof LongMetric) {
+                writeMetric(buffer, metric.labels, ((LongMetric) metric).longValue);
+
+            } else {
+                writeMetric(buffer, null, metric.value, metric.labels);
+            }
+        }
+
+        private void writeMetric(final ByteBuf buffer, final NumericMetricBatch batch, final int i) {
+            if (batch.isIntegral(i)) {
+                writeMetric(buffer, batch.labels(i), batch.longValue(i));
+
+            } else {
+                writeMetric(buffer, null, batch.value(i), batch.labels(i));
+            }
+        }
+
+        private <T extends Metric> Function<ByteBuf, Boolean> metricWriter(final MetricFamily<T> metricFamily, final BiConsumer<T, ByteBuf> writer) {
+            final Iterator<T> metricIterator = metricFamily.metrics().iterator();
+
+            return (buffer) -> {
+                if (metricIterator.hasNext()) {
+                    writer.accept(metricIterator.next(), buffer);
+
+                    return true;
+                }
+
+                prefixCacheScrape.checkIn(metricFamily.name, familyPrefixes);
+
+                return false;
+            };
+        }
+
+        private Function<ByteBuf, Boolean> numericMetricWriter(final NumericMetricFamily metricFamily) {
+            final NumericMetricBatchSource batchSource = metricFamily.batchSource();
+
+            if (batchSource == null) {
+                return metricWriter(metricFamily, (metric, buffer) -> {
+                    writeMetric(buffer, metric);
+                });
+            }
+
+            final NumericMetricBatch batch = metricFamily.acquireBatch();
+
+            return new Function<ByteBuf, Boolean>() {
+                private int index = 0;
+
+                @Override
+                public Boolean apply(final ByteBuf buffer) {
+                    if (index < batch.size()) {
+                        writeMetric(buffer, batch, index++);
+
+                        return true;
+                    }
+
+                    if (index == batch.size()) {
+                        index++; // only release & check-in once
+
+                        batchSource.release(batch);
+                        prefixCacheScrape.checkIn(metricFamily.name, familyPrefixes);
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public Function<ByteBuf, Boolean> visit(final CounterMetricFamily metricFamily) {
+            return numericMetricWriter(metricFamily);
+        }
+
+        @Override
+        public Function<ByteBuf, Boolean> visit(final GaugeMetricFamily metricFamily) {
+            return numericMetricWriter(metricFamily);
+        }
+
+        @Override
+        public Function<ByteBuf, Boolean> visit(final SummaryMetricFamily metricFamily) {
+            return metricWriter(metricFamily, (summary, buffer) -> {
+                for (int i = 0; i < summary.quantileCount(); i++) {
+                    writeMetric(buffer, null, summary.quantileValue(i), summary.labels, summary.quantiles.get(i).asSummaryLabel());
+                }
+
+                writeSum(buffer, summary.sum, summary.labels);
+                writeCount(buffer, "_count", summary.count, summary.labels, null);
+            });
+        }
+
+        @Override
+        public Function<ByteBuf, Boolean> visit(final HistogramMetricFamily metricFamily) {
+            return metricWriter(metricFamily, (histogram, buffer) -> {
+                histogram.buckets.forEach(interval -> {
+                    writeCount(buffer, "_bucket", interval.value, histogram.labels, interval.quantile.asHistogramLabel());
+                });
+
+                writeCount(buffer, "_bucket", histogram.count, histogram.labels, POSITIVE_INFINITY_HISTOGRAM_LABEL);
+
+                writeSum(buffer, histogram.sum, histogram.labels);
+                writeCount(buffer, "_count", histogram.count, histogram.labels, null);
+            });
+        }
+
+        @Override
+        public Function<ByteBuf, Boolean> visit(final UntypedMetricFamily metricFamily) {
+            return metricWriter(metricFamily, (untyped, buffer) -> {
+                writeMetric(buffer, untyped);
+            });
+        }
+    }
+
+
+    /***
+     * Write the metadata (TYPE, UNIT, HELP) for the MetricFamily to the provided ByteBuf.
+     */
+    void writeFamilyHeader(final ByteBuf buffer) {
+        // # TYPE <family name> <type>\n
+        ByteBufUtil.writeAscii(buffer, "# TYPE ");
+        ByteBufUtil.writeAscii(buffer, familyName);
+        buffer.writeByte(' ');
+        type.write(buffer);
+        buffer.writeByte('\n');
+
+        // # UNIT <family name> <unit>\n
+        if (unit != null) {
+            ByteBufUtil.writeAscii(buffer, "# UNIT ");
+            ByteBufUtil.writeAscii(buffer, familyName);
+            buffer.writeByte(' ');
+            ByteBufUtil.writeAscii(buffer, unit);
+            buffer.writeByte('\n');
+        }
+
+        // # HELP <family name> <help>\n
+        if (includeHelp && metricFamily.help != null) {
+            ByteBufUtil.writeAscii(buffer, "# HELP ");
+            ByteBufUtil.writeAscii(buffer, familyName);
+            buffer.writeByte(' ');
+            ByteBufUtil.writeUtf8(buffer, HELP_STRING_ESCAPER.escape(metricFamily.help));
+            buffer.writeByte('\n');
+        }
+    }
+
+    /***
+     * Write the next Metric from the MetricFamily to the provided ByteBuf.
+     *
+     * @return true if there are more Metrics to write, false if not.
+     */
+    boolean writeMetric(final ByteBuf buffer) {
+        return this.metricWriter.apply(buffer);
+    }
+}
@@ -5,6 +5,7 @@ import com.google.common.escape.CharEscaperBuilder;
 import com.google.common.escape.Escaper;
 import com.zegelin.netty.Resources;
 import com.zegelin.prometheus.domain.*;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
@@ -33,9 +34,13 @@ public class TextFormatChunkedInput implements ChunkedInput<ByteBuf> {
     private final Instant timestamp;
     private final Labels globalLabels;
     private final boolean includeHelp;
+    private final AdaptiveChunkSizer.ChunkWriter chunkWriter;
+    private final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape;
 
     private State state = State.BANNER;
+    private MetricFamily<?> metricFamily;
     private TextFormatMetricFamilyWriter metricFamilyWriter;
+    private long metricFamilyEncodedBytes;
 
     private int metricFamilyCount = 0;
     private int metricCount = 0;
@@ -43,11 +48,18 @@ public class TextFormatChunkedInput implements ChunkedInput<ByteBuf> {
     private final Stopwatch stopwatch = Stopwatch.createUnstarted();
 
 
-    public TextFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp) {
+    /**
+     * @param prefixCacheScrape scrape of the cache of encoded series prefixes, as returned by
+     *                          {@link TextFormatSeriesPrefixCache#beginScrape(long, Labels)} for the same global labels.
+     */
+    public TextFormatChunkedInput(final Stream<MetricFamily> metricFamilies, final Instant timestamp, final Labels globalLabels, final boolean includeHelp,
+                                  final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape, final AdaptiveChunkSizer chunkSizer) {
         this.metricFamiliesIterator = metricFamilies.iterator();
         this.timestamp = timestamp;
         this.globalLabels = globalLabels;
         this.includeHelp = includeHelp;
+        this.prefixCacheScrape = prefixCacheScrape;
+        this.chunkWriter = chunkSizer.newChunkWriter();
     }
 
     @Override
@@ -77,26 +89,32 @@ public class TextFormatChunkedInput implements ChunkedInput<ByteBuf> {
 
                 metricFamilyCount++;
 
-                final MetricFamily<?> metricFamily = metricFamiliesIterator.next();
+                metricFamily = metricFamiliesIterator.next();
 
-                metricFamilyWriter = new TextFormatMetricFamilyWriter(timestamp, globalLabels, includeHelp, metricFamily);
+                metricFamilyWriter = new TextFormatMetricFamilyWriter(timestamp, globalLabels, includeHelp, prefixCacheScrape, metricFamily);
 
+                final int familyHeaderStart = chunkBuffer.writerIndex();
                 metricFamilyWriter.writeFamilyHeader(chunkBuffer);
+                metricFamilyEncodedBytes = chunkBuffer.writerIndex() - familyHeaderStart;
 
                 state = State.METRIC;
                 return;
 
             case METRIC:
+                final int metricStart = chunkBuffer.writerIndex();
                 final boolean hasMoreMetrics = metricFamilyWriter.writeMetric(chunkBuffer);
 
                 metricCount ++;
 
                 if (!hasMoreMetrics) {
                     chunkBuffer.writeByte('\n'); // separate from next family
+                    metricFamily.encoded(metricFamilyEncodedBytes + chunkBuffer.writerIndex() - metricStart);
                     state = State.METRIC_FAMILY;
                     return;
                 }
 
+                metricFamilyEncodedBytes += chunkBuffer.writerIndex() - metricStart;
+
                 return;
 
             case FOOTER:
@@ -117,20 +135,6 @@ public class TextFormatChunkedInput implements ChunkedInput<ByteBuf> {
 
     @Override
     public ByteBuf readChunk(final ChannelHandlerContext ctx) {
-        final ByteBuf chunkBuffer = ctx.alloc().buffer(1024 * 1024 * 5);
-
-        // add slices till we hit the chunk size (or slightly over it), or hit EOF
-        while (chunkBuffer.readableBytes() < 1024 * 1024 && state != State.EOF) {
-            try {
-                nextSlice(chunkBuffer);
-
-            } catch (final Exception e) {
-                chunkBuffer.release();
-
-                throw e;
-            }
-        }
-
-        return chunkBuffer;
+        return chunkWriter.readChunk(ctx.alloc(), this::nextSlice, () -> state == State.EOF);
     }
 }
@@ -3,6 +3,7 @@ package com.zegelin.prometheus.exposition.text;
 import com.google.common.escape.CharEscaperBuilder;
 import com.google.common.escape.Escaper;
 import com.zegelin.netty.Floats;
+import com.zegelin.netty.Longs;
 import com.zegelin.prometheus.domain.*;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
@@ -40,14 +41,18 @@ class TextFormatMetricFamilyWriter {
     private final String timestamp;
     private final Labels globalLabels;
     private final boolean includeHelp;
+    private final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape;
+    private final TextFormatSeriesPrefixCache.FamilyPrefixes familyPrefixes;
 
     private final Consumer<ByteBuf> headerWriter;
     private final Function<ByteBuf, Boolean> metricWriter;
 
-    TextFormatMetricFamilyWriter(final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final MetricFamily<?> metricFamily) {
+    TextFormatMetricFamilyWriter(final Instant timestamp, final Labels globalLabels, final boolean includeHelp, final TextFormatSeriesPrefixCache.Scrape prefixCacheScrape, final MetricFamily<?> metricFamily) {
         this.timestamp = " " + timestamp.toEpochMilli();
         this.globalLabels = globalLabels;
         this.includeHelp = includeHelp;
+        this.prefixCacheScrape = prefixCacheScrape;
+        this.familyPrefixes = prefixCacheScrape.checkOut(metricFamily.name);
 
         this.headerWriter = metricFamily.accept(new HeaderVisitor());
         this.metricWriter = metricFamily.accept(new MetricVisitor());
@@ -113,17 +118,18 @@ class TextFormatMetricFamilyWriter {
             buffer.writeBytes(labels.asPlainTextFormatUTF8EncodedByteBuf().slice());
         }
 
-        private void writeLabelSets(final ByteBuf buffer, final Labels... labelSets) {
+        private void writeLabelSets(final ByteBuf buffer, final Labels labels, final Labels extraLabels) {
             buffer.writeByte('{');
 
             boolean needsComma = false;
 
-            for (final Labels labels : labelSets) {
-                if (labels == null || labels.isEmpty())
-                    continue;
-
-                writeLabels(buffer, labels, needsComma);
+            if (labels != null && !labels.isEmpty()) {
+                writeLabels(buffer, labels, false);
+                needsComma = true;
+            }
 
+            if (extraLabels != null && !extraLabels.isEmpty()) {
+                writeLabels(buffer, extraLabels, needsComma);
                 needsComma = true;
             }
 
@@ -134,21 +140,87 @@ class TextFormatMetricFamilyWriter {
             buffer.writeByte('}');
         }
 
-        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final String suffix, final float value, final Labels... labelSets) {
+        private void writeSeriesPrefix(final ByteBuf buffer, final MetricFamily metricFamily, final String suffix, final Labels labels, final Labels extraLabels) {
+            final byte[] cachedPrefix = familyPrefixes.get(suffix, labels, extraLabels);
+
+            if (cachedPrefix != null) {
+                buffer.writeBytes(cachedPrefix);
+                familyPrefixes.advance();
+                return;
+            }
+
+            final int prefixStart = buffer.writerIndex();
+
             ByteBufUtil.writeAscii(buffer, metricFamily.name);
             if (suffix != null) {
                 ByteBufUtil.writeAscii(buffer, suffix);
             }
 
-            writeLabelSets(buffer, labelSets);
+            writeLabelSets(buffer, labels, extraLabels);
 
             buffer.writeByte(' ');
 
-            Floats.writeFloatString(buffer, value);
+            final byte[] prefix = new byte[buffer.writerIndex() - prefixStart];
+            buffer.getBytes(prefixStart, prefix);
+
+            familyPrefixes.put(suffix, labels, extraLabels, prefix);
+            familyPrefixes.advance();
+        }
+
+        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final String suffix, final double value, final Labels labels, final Labels extraLabels) {
+            writeSeriesPrefix(buffer, metricFamily, suffix, labels, extraLabels);
+
+            Floats.writeDoubleString(buffer, value);
+            ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
+            buffer.writeByte('\n');
+        }
+
+        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final String suffix, final double value, final Labels labels) {
+            writeMetric(buffer, metricFamily, suffix, value, labels, null);
+        }
+
+        /**
+         * Counts (and histogram buckets) are whole numbers, and are written as integers when they are.
+         */
+        private void writeCount(final ByteBuf buffer, final MetricFamily metricFamily, final String suffix, final double count, final Labels labels, final Labels extraLabels) {
+            if (count != (long) count) {
+                writeMetric(buffer, metricFamily, suffix, count, labels, extraLabels);
+                return;
+            }
+
+            writeSeriesPrefix(buffer, metricFamily, suffix, labels, extraLabels);
+
+            Longs.writeLongString(buffer, (long) count);
             ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
             buffer.writeByte('\n');
         }
 
+        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final Labels labels, final long value) {
+            writeSeriesPrefix(buffer, metricFamily, null, labels, null);
+
+            Longs.writeLongString(buffer, value);
+            ByteBufUtil.writeAscii(buffer, timestamp); // timestamp already has a leading space
+            buffer.writeByte('\n');
+        }
+
+        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final NumericMetric metric) {
+            if (metric instanceof LongMetric) {
+                writeMetric(buffer, metricFamily, metric.labels, ((LongMetric) metric).longValue);
+
+            } else {
+                writeMetric(buffer, metricFamily, null, metric.value, metric.labels);
+            }
+        }
+
+        private void writeMetric(final ByteBuf buffer, final MetricFamily metricFamily, final NumericMetricBatch batch, final int i) {
+            if (batch.isIntegral(i)) {
+                writeMetric(buffer, metricFamily, batch.labels(i), batch.longValue(i));
+
+            } else {
+                writeMetric(buffer, metricFamily, null, batch.value(i), batch.labels(i));
+            }
+        }
+
         private <T extends Metric> Function<ByteBuf, Boolean> metricWriter(final MetricFamily<T> metricFamily, final BiConsumer<T, ByteBuf> writer) {
             final Iterator<T> metricIterator = metricFamily.metrics().iterator();
 
@@ -159,33 +231,65 @@ class TextFormatMetricFamilyWriter {
                     return true;
                 }
 
+                prefixCacheScrape.checkIn(metricFamily.name, familyPrefixes);
+
                 return false;
             };
         }
 
+        private Function<ByteBuf, Boolean> numericMetricWriter(final NumericMetricFamily metricFamily) {
+            final NumericMetricBatchSource batchSource = metricFamily.batchSource();
+
+            if (batchSource == null) {
+                return metricWriter(metricFamily, (metric, buffer) -> {
+                    writeMetric(buffer, metricFamily, metric);
+                });
+            }
+
+            final NumericMetricBatch batch = metricFamily.acquireBatch();
+
+            return new Function<ByteBuf, Boolean>() {
+                private int index = 0;
+
+                @Override
+                public Boolean apply(final ByteBuf buffer) {
+                    if (index < batch.size()) {
+                        writeMetric(buffer, metricFamily, batch, index++);
+
+                        return true;
+                    }
+
+                    if (index == batch.size()) {
+                        index++; // only release & check-in once
+
+                        batchSource.release(batch);
+                        prefixCacheScrape.checkIn(metricFamily.name, familyPrefixes);
+                    }
+
+                    return false;
+                }
+            };
+        }
+
         @Override
         public Function<ByteBuf, Boolean> visit(final CounterMetricFamily metricFamily) {
-            return metricWriter(metricFamily, (counter, buffer) -> {
-                writeMetric(buffer, metricFamily, null, counter.value, counter.labels);
-            });
+            return numericMetricWriter(metricFamily);
         }
 
         @Override
         public Function<ByteBuf, Boolean> visit(final GaugeMetricFamily metricFamily) {
-            return metricWriter(metricFamily, (gauge, buffer) -> {
-                writeMetric(buffer, metricFamily, null, gauge.value, gauge.labels);
-            });
+            return numericMetricWriter(metricFamily);
         }
 
         @Override
         public Function<ByteBuf, Boolean> visit(final SummaryMetricFamily metricFamily) {
             return metricWriter(metricFamily, (summary, buffer) -> {
                 writeMetric(buffer, metricFamily, "_sum", summary.sum, summary.labels);
-                writeMetric(buffer, metricFamily, "_count", summary.count, summary.labels);
+                writeCount(buffer, metricFamily, "_count", summary.count, summary.labels, null);
 
-                summary.quantiles.forEach(interval -> {
-                    writeMetric(buffer, metricFamily, null, interval.value, summary.labels, interval.quantile.asSummaryLabel());
-                });
+                for (int i = 0; i < summary.quantileCount(); i++) {
+                    writeMetric(buffer, metricFamily, null, summary.quantileValue(i), summary.labels, summary.quantiles.get(i).asSummaryLabel());
+                }
             });
         }
 
@@ -193,20 +297,20 @@ class TextFormatMetricFamilyWriter {
         public Function<ByteBuf, Boolean> visit(final HistogramMetricFamily metricFamily) {
             return metricWriter(metricFamily, (histogram, buffer) -> {
                 writeMetric(buffer, metricFamily, "_sum", histogram.sum, histogram.labels);
-                writeMetric(buffer, metricFamily, "_count", histogram.count, histogram.labels);
+                writeCount(buffer, metricFamily, "_count", histogram.count, histogram.labels, null);
 
                 histogram.buckets.forEach(interval -> {
-                    writeMetric(buffer, metricFamily, "_bucket", interval.value, histogram.labels, interval.quantile.asHistogramLabel());
+                    writeCount(buffer, metricFamily, "_bucket", interval.value, histogram.labels, interval.quantile.asHistogramLabel());
                 });
 
-                writeMetric(buffer, metricFamily, "_bucket", histogram.count, histogram.labels, Interval.Quantile.POSITIVE_INFINITY.asHistogramLabel());
+                writeCount(buffer, metricFamily, "_bucket", histogram.count, histogram.labels, Interval.Quantile.POSITIVE_INFINITY.asHistogramLabel());
             });
         }
 
         @Override
         public Function<ByteBuf, Boolean> visit(final UntypedMetricFamily metricFamily) {
             return metricWriter(metricFamily, (untyped, buffer) -> {
-                writeMetric(buffer, metricFamily, null, untyped.value, untyped.labels);
+                writeMetric(buffer, metricFamily, untyped);
             });
         }
     }
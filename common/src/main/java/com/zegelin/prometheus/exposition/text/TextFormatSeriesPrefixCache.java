@@ -0,0 +1,144 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.zegelin.prometheus.domain.Labels;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of encoded text format series prefixes -- {@code <family name><suffix>{<labels>,<global labels>} } --
+ * so that only the value and timestamp of each series need to be encoded on each scrape.
+ *
+ * Series are keyed on family, suffix and the <em>identity</em> of their {@link Labels}.
+ * Collectors hold on to their {@link Labels} between scrapes, and emit the series of a family in a stable order,
+ * hence each family keeps its prefixes in the order they were last written. A lookup is then just a few reference
+ * comparisons against the same position from the previous scrape, rather than a hash lookup per series.
+ * Positions that don't match (series that were added, removed or re-labeled) are re-encoded and replaced.
+ *
+ * The cache is cleared when the set of collectors changes (as indicated by the Harvester's collectors generation)
+ * or when the global labels change. Each clear starts a new epoch, and prefixes are tagged with the epoch of the scrape
+ * that encoded them -- a scrape that began before a clear neither reads from nor writes to the cache afterwards.
+ */
+public final class TextFormatSeriesPrefixCache {
+    static final class FamilyPrefixes {
+        private final long epoch;
+
+        private String[] suffixes = new String[0];
+        private Labels[] labels = new Labels[0], extraLabels = new Labels[0];
+        private byte[][] prefixes = new byte[0][];
+
+        private int position = 0;
+
+        private FamilyPrefixes(final long epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * @return the cached prefix for the current series, or null if the series differs from the previous scrape.
+         */
+        byte[] get(final String suffix, final Labels labels, final Labels extraLabels) {
+            final int i = position;
+
+            if (i < prefixes.length && this.labels[i] == labels && this.extraLabels[i] == extraLabels && this.suffixes[i] == suffix) {
+                return prefixes[i];
+            }
+
+            return null;
+        }
+
+        void put(final String suffix, final Labels labels, final Labels extraLabels, final byte[] prefix) {
+            final int i = position;
+
+            if (i >= prefixes.length) {
+                final int capacity = Math.max(16, prefixes.length * 2);
+
+                this.suffixes = Arrays.copyOf(this.suffixes, capacity);
+                this.labels = Arrays.copyOf(this.labels, capacity);
+                this.extraLabels = Arrays.copyOf(this.extraLabels, capacity);
+                this.prefixes = Arrays.copyOf(this.prefixes, capacity);
+            }
+
+            this.suffixes[i] = suffix;
+            this.labels[i] = labels;
+            this.extraLabels[i] = extraLabels;
+            this.prefixes[i] = prefix;
+        }
+
+        void advance() {
+            position++;
+        }
+
+        private void finish() {
+            // drop any series that weren't written this time around
+            Arrays.fill(suffixes, position, suffixes.length, null);
+            Arrays.fill(labels, position, labels.length, null);
+            Arrays.fill(extraLabels, position, extraLabels.length, null);
+            Arrays.fill(prefixes, position, prefixes.length, null);
+
+            position = 0;
+        }
+    }
+
+    /**
+     * A single scrape, bound to the cache epoch (and hence the global labels) it began under.
+     * Prefixes encoded by a scrape are only checked back in if the cache hasn't been cleared in the meantime.
+     */
+    public final class Scrape {
+        private final long epoch;
+
+        private Scrape(final long epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * Take the prefixes for a family out of the cache for the duration of writing the family.
+         * Concurrent scrapes writing the same family will each get their own (possibly empty) {@link FamilyPrefixes}.
+         */
+        FamilyPrefixes checkOut(final String familyName) {
+            if (epoch != TextFormatSeriesPrefixCache.this.epoch) {
+                // the cache was cleared since this scrape began -- its prefixes are for other global labels
+                return new FamilyPrefixes(epoch);
+            }
+
+            final FamilyPrefixes familyPrefixes = families.remove(familyName);
+
+            return (familyPrefixes != null && familyPrefixes.epoch == epoch) ? familyPrefixes : new FamilyPrefixes(epoch);
+        }
+
+        void checkIn(final String familyName, final FamilyPrefixes familyPrefixes) {
+            if (familyPrefixes.epoch != TextFormatSeriesPrefixCache.this.epoch) {
+                return;
+            }
+
+            familyPrefixes.finish();
+
+            families.put(familyName, familyPrefixes);
+        }
+    }
+
+    private final Map<String, FamilyPrefixes> families = new ConcurrentHashMap<>();
+
+    private long collectorsGeneration = -1;
+    private Labels globalLabels;
+
+    // incremented every time the cache is cleared, so that families encoded under a previous epoch aren't checked back in
+    private volatile long epoch = 0;
+
+    /**
+     * Prepare the cache for a new scrape, clearing it if the collectors or global labels have changed.
+     *
+     * @return the scrape, which must be written with the same global labels.
+     */
+    public synchronized Scrape beginScrape(final long collectorsGeneration, final Labels globalLabels) {
+        if (collectorsGeneration != this.collectorsGeneration || !globalLabels.equals(this.globalLabels)) {
+            epoch++;
+            families.clear();
+
+            this.collectorsGeneration = collectorsGeneration;
+            this.globalLabels = globalLabels;
+        }
+
+        return new Scrape(epoch);
+    }
+}
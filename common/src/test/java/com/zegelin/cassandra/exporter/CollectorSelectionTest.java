@@ -0,0 +1,71 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.regex.PatternSyntaxException;
+
+import static org.testng.Assert.*;
+
+public class CollectorSelectionTest {
+    @Test
+    public void testExactName() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of("cassandra_table_read_latency_seconds"));
+
+        assertTrue(selection.test("cassandra_table_read_latency_seconds"));
+
+        // exact names aren't prefixes or patterns
+        assertFalse(selection.test("cassandra_table_read_latency_seconds_total"));
+        assertFalse(selection.test("cassandra_table_read_latency"));
+    }
+
+    @Test
+    public void testExactNameIsNotARegex() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of("cassandra_table_.*"));
+
+        assertTrue(selection.test("cassandra_table_.*"));
+        assertFalse(selection.test("cassandra_table_read_latency_seconds"));
+    }
+
+    @Test
+    public void testRegexMustMatchEntireName() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of("~cassandra_table_.*_latency_seconds"));
+
+        assertTrue(selection.test("cassandra_table_read_latency_seconds"));
+        assertTrue(selection.test("cassandra_table_write_latency_seconds"));
+
+        // a partial (find) match isn't sufficient
+        assertFalse(selection.test("cassandra_table_read_latency_seconds_total"));
+        assertFalse(selection.test("x_cassandra_table_read_latency_seconds"));
+    }
+
+    @Test
+    public void testRegexAlternation() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of("~cassandra_cache_(hits|misses)_total"));
+
+        assertTrue(selection.test("cassandra_cache_hits_total"));
+        assertTrue(selection.test("cassandra_cache_misses_total"));
+        assertFalse(selection.test("cassandra_cache_requests_total"));
+    }
+
+    @Test
+    public void testNamesAndRegexesCombined() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of("cassandra_endpoint_active", "~cassandra_cache_.*"));
+
+        assertTrue(selection.test("cassandra_endpoint_active"));
+        assertTrue(selection.test("cassandra_cache_hits_total"));
+        assertFalse(selection.test("cassandra_table_read_latency_seconds"));
+    }
+
+    @Test
+    public void testEmptySelectionSelectsNothing() {
+        final CollectorSelection selection = CollectorSelection.parse(ImmutableList.of());
+
+        assertFalse(selection.test("cassandra_endpoint_active"));
+    }
+
+    @Test(expectedExceptions = PatternSyntaxException.class)
+    public void testInvalidRegex() {
+        CollectorSelection.parse(ImmutableList.of("~cassandra_(table"));
+    }
+}
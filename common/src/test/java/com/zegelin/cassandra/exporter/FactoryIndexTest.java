@@ -0,0 +1,109 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector.Factory;
+import com.zegelin.jmx.NamedObject;
+import com.zegelin.jmx.ObjectNames;
+import org.testng.annotations.Test;
+
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+public class FactoryIndexTest {
+    private static Factory factory(final String... patterns) {
+        final ImmutableSet.Builder<ObjectName> objectNamePatterns = ImmutableSet.builder();
+
+        for (final String pattern : patterns) {
+            objectNamePatterns.add(ObjectNames.create(pattern));
+        }
+
+        final Set<ObjectName> objectNamePatternSet = objectNamePatterns.build();
+
+        return new Factory() {
+            @Override
+            public MBeanGroupMetricFamilyCollector createCollector(final NamedObject<?> mBean) {
+                return null;
+            }
+
+            @Override
+            public Set<ObjectName> objectNamePatterns() {
+                return objectNamePatternSet;
+            }
+        };
+    }
+
+    private static List<Factory> candidates(final FactoryIndex index, final String mBeanName) {
+        return index.candidates(ObjectNames.create(mBeanName));
+    }
+
+    @Test
+    public void testNameLookup() {
+        final Factory readLatency = factory("org.apache.cassandra.metrics:type=Table,name=ReadLatency,*");
+        final Factory writeLatency = factory("org.apache.cassandra.metrics:type=Table,name=WriteLatency,*");
+
+        final FactoryIndex index = new FactoryIndex(ImmutableList.of(readLatency, writeLatency));
+
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency"), ImmutableList.of(readLatency));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=WriteLatency"), ImmutableList.of(writeLatency));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=LiveSSTableCount"), ImmutableList.of());
+    }
+
+    @Test
+    public void testTypeLookup() {
+        // a name pattern can't be indexed by name, so falls back to the type
+        final Factory table = factory("org.apache.cassandra.metrics:type=Table,name=*Latency,*");
+        final Factory threadPools = factory("org.apache.cassandra.metrics:type=ThreadPools,*");
+
+        final FactoryIndex index = new FactoryIndex(ImmutableList.of(table, threadPools));
+
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency"), ImmutableList.of(table));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=ThreadPools,path=request,scope=ReadStage,name=PendingTasks"), ImmutableList.of(threadPools));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Cache,scope=KeyCache,name=Hits"), ImmutableList.of());
+
+        // MBeans without a type are only offered to domain-indexed factories
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:name=ReadLatency"), ImmutableList.of());
+    }
+
+    @Test
+    public void testDomainLookup() {
+        final Factory metrics = factory("org.apache.cassandra.metrics:*");
+        final Factory storageService = factory("org.apache.cassandra.db:type=StorageService");
+
+        final FactoryIndex index = new FactoryIndex(ImmutableList.of(metrics, storageService));
+
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency"), ImmutableList.of(metrics));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:name=ReadLatency"), ImmutableList.of(metrics));
+        assertEquals(candidates(index, "org.apache.cassandra.db:type=StorageService"), ImmutableList.of(storageService));
+        assertEquals(candidates(index, "java.lang:type=Memory"), ImmutableList.of());
+    }
+
+    @Test
+    public void testUnindexedFactoriesAreAlwaysCandidates() {
+        final Factory unknown = factory();
+        final Factory anyDomain = factory("*:type=Memory");
+        final Factory memory = factory("java.lang:type=Memory");
+
+        final FactoryIndex index = new FactoryIndex(ImmutableList.of(unknown, memory, anyDomain));
+
+        assertEquals(candidates(index, "java.lang:type=Memory"), ImmutableList.of(unknown, memory, anyDomain));
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency"), ImmutableList.of(unknown, anyDomain));
+    }
+
+    @Test
+    public void testCandidatesAreInFactoryOrder() {
+        final Factory name = factory("org.apache.cassandra.metrics:type=Table,name=ReadLatency,*");
+        final Factory type = factory("org.apache.cassandra.metrics:type=Table,*");
+        final Factory domain = factory("org.apache.cassandra.metrics:*");
+
+        // a factory with several matching patterns is a candidate once
+        final Factory multiple = factory("org.apache.cassandra.metrics:type=Table,*", "org.apache.cassandra.metrics:type=Table,name=ReadLatency,*");
+
+        final FactoryIndex index = new FactoryIndex(ImmutableList.of(multiple, domain, type, name));
+
+        assertEquals(candidates(index, "org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency"), ImmutableList.of(multiple, domain, type, name));
+    }
+}
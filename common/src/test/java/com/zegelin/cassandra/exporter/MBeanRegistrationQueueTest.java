@@ -0,0 +1,332 @@
+package com.zegelin.cassandra.exporter;
+
+import com.google.common.collect.ImmutableList;
+import com.zegelin.jmx.NamedObject;
+import com.zegelin.jmx.ObjectNames;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.testng.Assert.*;
+
+public class MBeanRegistrationQueueTest {
+    private static final ObjectName READ_LATENCY = ObjectNames.create("org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=ReadLatency");
+    private static final ObjectName WRITE_LATENCY = ObjectNames.create("org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=t,name=WriteLatency");
+
+    /**
+     * A single-threaded scheduler driven by a virtual clock. Tasks only run when the clock is advanced.
+     */
+    private static final class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+        private final class Task implements ScheduledFuture<Object> {
+            final long dueMillis, sequence;
+            final Runnable runnable;
+
+            Task(final long dueMillis, final long sequence, final Runnable runnable) {
+                this.dueMillis = dueMillis;
+                this.sequence = sequence;
+                this.runnable = runnable;
+            }
+
+            @Override
+            public long getDelay(final TimeUnit unit) {
+                return unit.convert(dueMillis - nowMillis, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(final Delayed o) {
+                return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                return tasks.remove(this);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public boolean isDone() {
+                return !tasks.contains(this);
+            }
+
+            @Override
+            public Object get() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object get(final long timeout, final TimeUnit unit) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>(Comparator.<Task>comparingLong(t -> t.dueMillis).thenComparingLong(t -> t.sequence));
+        private final List<Long> delaysMillis = new ArrayList<>();
+
+        private long nowMillis, sequence;
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            final long delayMillis = unit.toMillis(delay);
+
+            delaysMillis.add(delayMillis);
+
+            final Task task = new Task(nowMillis + delayMillis, sequence++, command);
+            tasks.add(task);
+
+            return task;
+        }
+
+        /**
+         * Advance the clock, running every task that becomes due, including tasks scheduled while advancing.
+         */
+        void advance(final long millis) {
+            final long targetMillis = nowMillis + millis;
+
+            while (!tasks.isEmpty() && tasks.peek().dueMillis <= targetMillis) {
+                final Task task = tasks.poll();
+
+                nowMillis = task.dueMillis;
+                task.runnable.run();
+            }
+
+            nowMillis = targetMillis;
+        }
+
+        /**
+         * Advance the clock until no tasks remain.
+         */
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                advance(tasks.peek().dueMillis - nowMillis);
+            }
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {}
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return ImmutableList.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return false;
+        }
+    }
+
+    private static final class RecordingRegistrar implements MBeanRegistrationQueue.Registrar {
+        final List<String> operations = new ArrayList<>();
+
+        Predicate<ObjectName> metadataAvailable = name -> true;
+        int metadataChecks = 0;
+
+        @Override
+        public boolean isMetadataAvailable(final ObjectName name) {
+            metadataChecks++;
+
+            return metadataAvailable.test(name);
+        }
+
+        @Override
+        public void register(final NamedObject<Object> mBean) {
+            operations.add("register " + mBean.name.getKeyProperty("name"));
+        }
+
+        @Override
+        public void unregister(final ObjectName name) {
+            operations.add("unregister " + name.getKeyProperty("name"));
+        }
+    }
+
+    private ManualScheduler scheduler;
+    private RecordingRegistrar registrar;
+    private MBeanRegistrationQueue queue;
+
+    @BeforeMethod
+    public void setUp() {
+        scheduler = new ManualScheduler();
+        registrar = new RecordingRegistrar();
+
+        // operations are applied directly on the scheduler "thread"
+        queue = new MBeanRegistrationQueue(registrar, scheduler, Runnable::run);
+    }
+
+    @Test
+    public void testOperationsAreBatched() {
+        queue.register(READ_LATENCY, new Object());
+        queue.register(WRITE_LATENCY, new Object());
+        queue.unregister(READ_LATENCY);
+        queue.register(READ_LATENCY, new Object());
+
+        // a single drain is scheduled for the burst, and nothing is applied until it runs
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(100L));
+        assertEquals(registrar.operations, ImmutableList.of());
+
+        scheduler.advance(99);
+        assertEquals(registrar.operations, ImmutableList.of());
+
+        scheduler.advance(1);
+
+        // operations are grouped by MBean, and each MBean's operations are applied in order
+        assertEquals(registrar.operations, ImmutableList.of(
+                "register ReadLatency", "unregister ReadLatency", "register ReadLatency",
+                "register WriteLatency"
+        ));
+
+        // a subsequent operation schedules a new batch
+        queue.unregister(WRITE_LATENCY);
+
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(100L, 100L));
+
+        scheduler.runAll();
+
+        assertEquals(registrar.operations.get(registrar.operations.size() - 1), "unregister WriteLatency");
+    }
+
+    @Test
+    public void testRetryBackoff() {
+        registrar.metadataAvailable = name -> false;
+
+        queue.register(READ_LATENCY, new Object());
+
+        scheduler.runAll();
+
+        // each retry is followed by the batch delay. retries back off exponentially, up to the maximum delay
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(
+                100L, 250L,
+                100L, 500L,
+                100L, 1000L,
+                100L, 2000L,
+                100L, 4000L,
+                100L, 8000L,
+                100L, 8000L,
+                100L
+        ));
+
+        // once the attempts are exhausted, the MBean is registered regardless
+        assertEquals(registrar.metadataChecks, 7);
+        assertEquals(registrar.operations, ImmutableList.of("register ReadLatency"));
+    }
+
+    @Test
+    public void testRetryStopsOnceMetadataIsAvailable() {
+        final int[] attempts = {0};
+        registrar.metadataAvailable = name -> ++attempts[0] >= 3;
+
+        queue.register(READ_LATENCY, new Object());
+
+        scheduler.runAll();
+
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(100L, 250L, 100L, 500L, 100L));
+        assertEquals(registrar.operations, ImmutableList.of("register ReadLatency"));
+    }
+
+    @Test
+    public void testNewerOperationSupersedesRetry() {
+        registrar.metadataAvailable = name -> false;
+
+        queue.register(READ_LATENCY, new Object());
+
+        // the first attempt fails, and a retry is scheduled
+        scheduler.advance(100);
+
+        assertEquals(registrar.operations, ImmutableList.of());
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(100L, 250L));
+
+        // the MBean is unregistered before the retry is due
+        queue.unregister(READ_LATENCY);
+        scheduler.advance(100);
+
+        assertEquals(registrar.operations, ImmutableList.of("unregister ReadLatency"));
+
+        // the superseded retry doesn't re-register the MBean
+        scheduler.runAll();
+
+        assertEquals(registrar.operations, ImmutableList.of("unregister ReadLatency"));
+        assertEquals(registrar.metadataChecks, 1);
+        assertEquals(scheduler.delaysMillis, ImmutableList.of(100L, 250L, 100L));
+    }
+
+    @Test
+    public void testNewerOperationSupersedesRetryDueBeforeItsBatch() {
+        registrar.metadataAvailable = name -> false;
+
+        queue.register(READ_LATENCY, new Object());
+
+        // the first attempt fails at t=100, and the retry is due at t=350
+        scheduler.advance(100);
+        scheduler.advance(200);
+
+        // the MBean is unregistered at t=300. its batch drains at t=400, after the retry is due
+        queue.unregister(READ_LATENCY);
+
+        scheduler.runAll();
+
+        // the retry doesn't re-register the MBean after its unregistration
+        assertEquals(registrar.operations, ImmutableList.of("unregister ReadLatency"));
+        assertEquals(registrar.metadataChecks, 1);
+    }
+
+    @Test
+    public void testNewerRegistrationSupersedesRetry() {
+        registrar.metadataAvailable = name -> false;
+
+        queue.register(READ_LATENCY, new Object());
+        scheduler.advance(100);
+
+        // re-registered while the first registration is waiting to be retried
+        registrar.metadataAvailable = name -> true;
+        queue.register(READ_LATENCY, new Object());
+
+        scheduler.runAll();
+
+        assertEquals(registrar.operations, ImmutableList.of("register ReadLatency"));
+    }
+}
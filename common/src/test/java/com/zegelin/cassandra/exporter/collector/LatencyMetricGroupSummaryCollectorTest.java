@@ -0,0 +1,80 @@
+package com.zegelin.cassandra.exporter.collector;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.zegelin.cassandra.exporter.MBeanGroupMetricFamilyCollector;
+import com.zegelin.jmx.NamedObject;
+import com.zegelin.jmx.ObjectNames;
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.SummaryMetricFamily;
+import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxCounterMBean;
+import org.apache.cassandra.metrics.CassandraMetricsRegistry.JmxTimerMBean;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class LatencyMetricGroupSummaryCollectorTest {
+    private static LatencyMetricGroupSummaryCollector collector(final String table, final Object mBean, final String name) {
+        final NamedObject<?> namedMBean = new NamedObject<>(ObjectNames.format("org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=%s,name=%s", table, name), mBean);
+
+        return LatencyMetricGroupSummaryCollector.collectorForMBean("cassandra_table_read_latency_seconds", null, Labels.of("table", table), namedMBean);
+    }
+
+    private static LatencyMetricGroupSummaryCollector latency(final String table) {
+        final JmxTimerMBean timer = mock(JmxTimerMBean.class);
+        when(timer.getDurationUnit()).thenReturn("microseconds");
+
+        return collector(table, timer, "ReadLatency");
+    }
+
+    private static LatencyMetricGroupSummaryCollector totalLatency(final String table) {
+        return collector(table, mock(JmxCounterMBean.class), "ReadTotalLatency");
+    }
+
+    private static List<Labels> summaryLabels(final MBeanGroupMetricFamilyCollector collector) {
+        return collector.collect()
+                .flatMap(metricFamily -> ((SummaryMetricFamily) metricFamily).metrics())
+                .map(summary -> summary.labels)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testMerge() {
+        final MBeanGroupMetricFamilyCollector collector = latency("a")
+                .merge(totalLatency("a"))
+                .merge(latency("b"));
+
+        // only complete groups are collected
+        assertEquals(summaryLabels(collector), ImmutableList.of(Labels.of("table", "a")));
+
+        collector.merge(totalLatency("b"));
+
+        assertEquals(ImmutableSet.copyOf(summaryLabels(collector)), ImmutableSet.of(Labels.of("table", "a"), Labels.of("table", "b")));
+    }
+
+    @Test
+    public void testConflictingMergeLeavesCollectorUnchanged() {
+        final MBeanGroupMetricFamilyCollector collector = latency("a").merge(totalLatency("a"));
+
+        // "b" doesn't conflict, but "a" already has a latency timer
+        final MBeanGroupMetricFamilyCollector other = latency("b").merge(latency("b2")).merge(latency("a"));
+
+        try {
+            collector.merge(other);
+            fail("expected IllegalStateException");
+
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage().contains("ReadLatency"), e.getMessage());
+        }
+
+        // the non-conflicting groups of other weren't merged
+        collector.merge(totalLatency("b"));
+
+        assertEquals(summaryLabels(collector), ImmutableList.of(Labels.of("table", "a")));
+    }
+}
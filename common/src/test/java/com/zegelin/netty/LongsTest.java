@@ -0,0 +1,63 @@
+package com.zegelin.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class LongsTest {
+    private static void assertLong(final long value) {
+        final ByteBuf buffer = Unpooled.buffer(0);
+
+        try {
+            // leading content, to verify the writer index is respected
+            buffer.writeByte('x');
+
+            Longs.writeLongString(buffer, value);
+
+            assertEquals(buffer.toString(StandardCharsets.US_ASCII), "x" + Long.toString(value));
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testExtremes() {
+        assertLong(Long.MIN_VALUE);
+        assertLong(Long.MIN_VALUE + 1);
+        assertLong(Long.MAX_VALUE);
+        assertLong(Long.MAX_VALUE - 1);
+        assertLong(0);
+        assertLong(-1);
+        assertLong(1);
+    }
+
+    @Test
+    public void testDecimalLengthBoundaries() {
+        long powerOfTen = 1;
+
+        for (int i = 0; i < 19; i++) {
+            assertLong(powerOfTen);
+            assertLong(powerOfTen - 1);
+            assertLong(powerOfTen + 1);
+            assertLong(-powerOfTen);
+            assertLong(-powerOfTen + 1);
+
+            powerOfTen *= 10;
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            assertLong(random.nextLong() >> random.nextInt(64));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.zegelin.prometheus.domain;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class LabelsTest {
+    private static String uniqueValue() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Test
+    public void testEqualLabelsAreInterned() {
+        final String value = uniqueValue();
+
+        final Map<String, String> map = new HashMap<>();
+        map.put("keyspace", "ks");
+        map.put("table", value);
+
+        final Labels labels = Labels.of(map);
+
+        assertSame(Labels.of(ImmutableMap.of("table", value, "keyspace", "ks")), labels);
+        assertNotSame(Labels.of("table", value), labels);
+
+        assertEquals(labels, map);
+        assertEquals(labels.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void testEmptyLabels() {
+        assertSame(Labels.of(ImmutableMap.of()), Labels.of());
+        assertTrue(Labels.of().isEmpty());
+        assertFalse(Labels.of("keyspace", uniqueValue()).isEmpty());
+    }
+
+    @Test
+    public void testEncodedFormatsAreShared() {
+        final String value = uniqueValue();
+
+        final Labels labels = Labels.of("table", value);
+
+        final ByteBuf plainText = labels.asPlainTextFormatUTF8EncodedByteBuf();
+
+        assertEquals(plainText.toString(StandardCharsets.UTF_8), "table=\"" + value + "\"");
+
+        // interned instances share a single copy of each encoded format
+        assertSame(Labels.of("table", value).asPlainTextFormatUTF8EncodedByteBuf(), plainText);
+        assertSame(labels.asJSONFormatUTF8EncodedByteBuf(), labels.asJSONFormatUTF8EncodedByteBuf());
+        assertSame(labels.asProtobufFormatEncodedByteBuf(), labels.asProtobufFormatEncodedByteBuf());
+
+        assertNotSame(labels.asJSONFormatUTF8EncodedByteBuf(), plainText);
+    }
+
+    @Test
+    public void testConcurrentEncodingYieldsSingleBuffer() throws Exception {
+        final int threads = 8;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int round = 0; round < 100; round++) {
+                final Labels labels = Labels.of("table", uniqueValue());
+                final CountDownLatch start = new CountDownLatch(1);
+
+                final CompletableFuture<?>[] futures = new CompletableFuture[threads];
+                final ByteBuf[] buffers = new ByteBuf[threads];
+
+                for (int i = 0; i < threads; i++) {
+                    final int index = i;
+
+                    futures[i] = CompletableFuture.runAsync(() -> {
+                        try {
+                            start.await();
+
+                        } catch (final InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+
+                        buffers[index] = labels.asProtobufFormatEncodedByteBuf();
+                    }, executor);
+                }
+
+                start.countDown();
+                CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+
+                for (final ByteBuf buffer : buffers) {
+                    assertSame(buffer, buffers[0]);
+                    assertEquals(buffer.refCnt(), 1);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEncodedFormatsAreReleasedWhenUnreachable() throws InterruptedException {
+        final ByteBuf plainText = encodeUnreachableLabels();
+
+        assertEquals(plainText.refCnt(), 1);
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+        while (plainText.refCnt() != 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+
+            // releases are processed whenever labels are interned
+            Labels.of("table", uniqueValue());
+        }
+
+        assertEquals(plainText.refCnt(), 0);
+    }
+
+    /**
+     * Encode labels that are unreachable once this method returns, returning the (still retained) encoded buffer.
+     */
+    private static ByteBuf encodeUnreachableLabels() {
+        return Labels.of("table", uniqueValue()).asPlainTextFormatUTF8EncodedByteBuf();
+    }
+}
@@ -0,0 +1,86 @@
+package com.zegelin.prometheus.domain;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+
+public class MetricFamilyTest {
+    private static final class RecordingObserver implements MetricFamilyObserver {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void collectionStarted() {
+            events.add("started");
+        }
+
+        @Override
+        public void collectionFinished(final int seriesCount) {
+            events.add("finished " + seriesCount);
+        }
+
+        @Override
+        public void encoded(final long bytes) {
+            events.add("encoded " + bytes);
+        }
+    }
+
+    private static Stream<NumericMetric> metrics(final int count) {
+        final List<NumericMetric> metrics = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            metrics.add(new NumericMetric(Labels.of("index", Integer.toString(i)), i));
+        }
+
+        return metrics.stream();
+    }
+
+    @Test
+    public void testLazyFamilyIsObservedOnce() {
+        final RecordingObserver observer = new RecordingObserver();
+
+        final GaugeMetricFamily family = new GaugeMetricFamily("test_gauge", null, metrics(100)).observedCopy(observer);
+
+        final List<NumericMetric> collected = family.metrics().collect(Collectors.toList());
+
+        assertEquals(collected.size(), 100);
+
+        // once for the stream supplier, once spanning all series
+        assertEquals(observer.events, Arrays.asList("started", "finished 0", "started", "finished 100"));
+    }
+
+    @Test
+    public void testSeriesAreWrittenWithinTheObservation() {
+        final RecordingObserver observer = new RecordingObserver();
+
+        final GaugeMetricFamily family = new GaugeMetricFamily("test_gauge", null, metrics(2)).observedCopy(observer);
+
+        family.metrics().forEach(metric -> observer.events.add("series"));
+
+        assertEquals(observer.events, Arrays.asList("started", "finished 0", "started", "series", "series", "finished 2"));
+    }
+
+    @Test
+    public void testBatchIsObservedOnce() {
+        final RecordingObserver observer = new RecordingObserver();
+
+        final NumericMetricBatchSource batchSource = new NumericMetricBatchSource(batch -> {
+            for (int i = 0; i < 100; i++) {
+                batch.add(null, i);
+            }
+        });
+
+        final GaugeMetricFamily family = new GaugeMetricFamily("test_gauge", null, batchSource).observedCopy(observer);
+
+        final NumericMetricBatch batch = family.acquireBatch();
+        batchSource.release(batch);
+
+        assertEquals(batch.size(), 100);
+        assertEquals(observer.events, Arrays.asList("started", "finished 100"));
+    }
+}
@@ -0,0 +1,308 @@
+package com.zegelin.prometheus.exposition.protobuf;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.zegelin.prometheus.domain.*;
+import com.zegelin.prometheus.exposition.AdaptiveChunkSizer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.prometheus.metrics.expositionformats.generated.com_google_protobuf_3_21_7.Metrics;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class ProtobufFormatChunkedInputTest {
+    private static final Instant TIMESTAMP = Instant.ofEpochMilli(1546300800123L);
+    private static final Labels GLOBAL_LABELS = Labels.of("cassandra_node", "127.0.0.1");
+
+    private static final double[] SPECIAL_VALUES = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, -0.0, Double.MIN_VALUE, Double.MAX_VALUE, 1.5};
+
+    private static List<Metrics.MetricFamily> roundTrip(final boolean includeHelp, final MetricFamily... metricFamilies) throws IOException {
+        final ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+
+        final ProtobufFormatChunkedInput chunkedInput = new ProtobufFormatChunkedInput(Stream.of(metricFamilies), TIMESTAMP, GLOBAL_LABELS, includeHelp, new AdaptiveChunkSizer());
+
+        final ByteBuf exposition = Unpooled.buffer();
+
+        while (!chunkedInput.isEndOfInput()) {
+            final ByteBuf chunk = chunkedInput.readChunk(ctx);
+
+            exposition.writeBytes(chunk);
+            chunk.release();
+        }
+
+        final List<Metrics.MetricFamily> parsedFamilies = new ArrayList<>();
+
+        try (final InputStream inputStream = new ByteBufInputStream(exposition)) {
+            Metrics.MetricFamily parsedFamily;
+
+            while ((parsedFamily = Metrics.MetricFamily.parseDelimitedFrom(inputStream)) != null) {
+                parsedFamilies.add(parsedFamily);
+            }
+        }
+
+        exposition.release();
+
+        return parsedFamilies;
+    }
+
+    private static Map<String, String> labels(final Metrics.Metric metric) {
+        final Map<String, String> labels = new TreeMap<>();
+
+        for (final Metrics.LabelPair labelPair : metric.getLabelList()) {
+            assertNull(labels.put(labelPair.getName(), labelPair.getValue()), "duplicate label " + labelPair.getName());
+        }
+
+        return labels;
+    }
+
+    private static Map<String, String> expectedLabels(final Labels labels) {
+        final Map<String, String> expectedLabels = new TreeMap<>(GLOBAL_LABELS);
+        expectedLabels.putAll(labels);
+
+        return expectedLabels;
+    }
+
+    private static Stream<NumericMetric> specialValueMetrics() {
+        final List<NumericMetric> metrics = new ArrayList<>();
+
+        for (int i = 0; i < SPECIAL_VALUES.length; i++) {
+            metrics.add(new NumericMetric(Labels.of("index", Integer.toString(i)), SPECIAL_VALUES[i]));
+        }
+
+        metrics.add(new LongMetric(Labels.of("index", "long"), Long.MAX_VALUE));
+
+        return metrics.stream();
+    }
+
+    private static void assertSpecialValueMetrics(final Metrics.MetricFamily family, final Metrics.MetricType type) {
+        assertEquals(family.getType(), type);
+        assertEquals(family.getMetricCount(), SPECIAL_VALUES.length + 1);
+
+        for (int i = 0; i < family.getMetricCount(); i++) {
+            final Metrics.Metric metric = family.getMetric(i);
+
+            final double value;
+            switch (type) {
+                case COUNTER:
+                    value = metric.getCounter().getValue();
+                    break;
+                case GAUGE:
+                    value = metric.getGauge().getValue();
+                    break;
+                case UNTYPED:
+                    value = metric.getUntyped().getValue();
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+
+            assertEquals(metric.getTimestampMs(), TIMESTAMP.toEpochMilli());
+
+            if (i < SPECIAL_VALUES.length) {
+                assertEquals(labels(metric), expectedLabels(Labels.of("index", Integer.toString(i))));
+                assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(SPECIAL_VALUES[i]), "value " + i);
+
+            } else {
+                assertEquals(labels(metric), expectedLabels(Labels.of("index", "long")));
+                assertEquals(value, (double) Long.MAX_VALUE);
+            }
+        }
+    }
+
+    @Test
+    public void testNumericFamilies() throws IOException {
+        final List<Metrics.MetricFamily> families = roundTrip(true,
+                new CounterMetricFamily("test_counter_total", "A counter.", specialValueMetrics()),
+                new GaugeMetricFamily("test_gauge", "A gauge.", specialValueMetrics()),
+                new UntypedMetricFamily("test_untyped", "An untyped metric.", specialValueMetrics()
+                        .map(m -> new UntypedMetricFamily.Untyped(m.labels, "test_untyped", m.value)))
+        );
+
+        assertEquals(families.size(), 3);
+
+        assertEquals(families.get(0).getName(), "test_counter_total");
+        assertEquals(families.get(0).getHelp(), "A counter.");
+        assertSpecialValueMetrics(families.get(0), Metrics.MetricType.COUNTER);
+
+        assertEquals(families.get(1).getName(), "test_gauge");
+        assertSpecialValueMetrics(families.get(1), Metrics.MetricType.GAUGE);
+
+        assertEquals(families.get(2).getName(), "test_untyped");
+        assertSpecialValueMetrics(families.get(2), Metrics.MetricType.UNTYPED);
+    }
+
+    @Test
+    public void testBatchFamily() throws IOException {
+        final NumericMetricBatchSource batchSource = new NumericMetricBatchSource(batch -> {
+            for (int i = 0; i < SPECIAL_VALUES.length; i++) {
+                batch.add(Labels.of("index", Integer.toString(i)), SPECIAL_VALUES[i]);
+            }
+
+            batch.add(Labels.of("index", "long"), Long.MAX_VALUE);
+        });
+
+        final List<Metrics.MetricFamily> families = roundTrip(false, new GaugeMetricFamily("test_batch_gauge", "A batch gauge.", batchSource));
+
+        assertEquals(families.size(), 1);
+        assertFalse(families.get(0).hasHelp());
+        assertSpecialValueMetrics(families.get(0), Metrics.MetricType.GAUGE);
+    }
+
+    @Test
+    public void testCachedBatchFamily() throws IOException {
+        final long[] collections = {0};
+
+        final NumericMetricBatchSource batchSource = new NumericMetricBatchSource(batch -> {
+            collections[0]++;
+
+            for (int i = 0; i < SPECIAL_VALUES.length; i++) {
+                batch.add(Labels.of("index", Integer.toString(i)), SPECIAL_VALUES[i] * collections[0]);
+            }
+
+            batch.add(Labels.of("index", "long"), Long.MAX_VALUE);
+        });
+
+        final CounterMetricFamily cachedFamily = new CounterMetricFamily("test_batch_counter", null, batchSource).cachedCopy();
+
+        assertNotNull(cachedFamily.batchSource());
+
+        // refilling the source's batch must not alter the cached copy
+        batchSource.release(batchSource.acquire());
+
+        for (int i = 0; i < 2; i++) {
+            final List<Metrics.MetricFamily> families = roundTrip(false, cachedFamily);
+
+            assertEquals(families.size(), 1);
+            assertSpecialValueMetrics(families.get(0), Metrics.MetricType.COUNTER);
+        }
+
+        assertEquals(collections[0], 2);
+    }
+
+    @Test
+    public void testSummaryFamily() throws IOException {
+        final List<Interval.Quantile> quantiles = Interval.Quantile.STANDARD_PERCENTILES_TABLE;
+
+        final List<SummaryMetricFamily.Summary> summaries = new ArrayList<>();
+        for (int i = 0; i < SPECIAL_VALUES.length; i++) {
+            final double[] quantileValues = new double[quantiles.size()];
+
+            for (int q = 0; q < quantileValues.length; q++) {
+                quantileValues[q] = SPECIAL_VALUES[(i + q) % SPECIAL_VALUES.length];
+            }
+
+            summaries.add(new SummaryMetricFamily.Summary(Labels.of("index", Integer.toString(i)), SPECIAL_VALUES[i], i * 1000, quantiles, quantileValues));
+        }
+
+        final List<Metrics.MetricFamily> families = roundTrip(true, new SummaryMetricFamily("test_summary", "A summary.", summaries.stream()));
+
+        assertEquals(families.size(), 1);
+
+        final Metrics.MetricFamily family = families.get(0);
+        assertEquals(family.getType(), Metrics.MetricType.SUMMARY);
+        assertEquals(family.getMetricCount(), SPECIAL_VALUES.length);
+
+        for (int i = 0; i < SPECIAL_VALUES.length; i++) {
+            final Metrics.Metric metric = family.getMetric(i);
+            final Metrics.Summary summary = metric.getSummary();
+
+            assertEquals(labels(metric), expectedLabels(Labels.of("index", Integer.toString(i))));
+            assertEquals(metric.getTimestampMs(), TIMESTAMP.toEpochMilli());
+
+            assertEquals(summary.getSampleCount(), i * 1000);
+            assertEquals(Double.doubleToRawLongBits(summary.getSampleSum()), Double.doubleToRawLongBits(SPECIAL_VALUES[i]));
+
+            assertEquals(summary.getQuantileCount(), quantiles.size());
+
+            for (int q = 0; q < quantiles.size(); q++) {
+                assertEquals(summary.getQuantile(q).getQuantile(), Double.parseDouble(quantiles.get(q).toString()));
+                assertEquals(Double.doubleToRawLongBits(summary.getQuantile(q).getValue()), Double.doubleToRawLongBits(SPECIAL_VALUES[(i + q) % SPECIAL_VALUES.length]));
+            }
+        }
+    }
+
+    @Test
+    public void testHistogramFamily() throws IOException {
+        final List<Interval> buckets = ImmutableList.of(
+                new Interval(Interval.Quantile.q(.001f), 1),
+                new Interval(Interval.Quantile.q(.5f), 300),
+                new Interval(Interval.Quantile.q(10f), 1L << 40)
+        );
+
+        final List<Metrics.MetricFamily> families = roundTrip(true,
+                new HistogramMetricFamily("test_histogram", "A histogram.", Stream.of(
+                        new HistogramMetricFamily.Histogram(Labels.of(ImmutableMap.of("a", "1", "b", "two")), 12.25, (1L << 40) + 5, buckets),
+                        new HistogramMetricFamily.Histogram(Labels.of("a", "2"), Double.NaN, 0, ImmutableList.of())
+                )));
+
+        assertEquals(families.size(), 1);
+
+        final Metrics.MetricFamily family = families.get(0);
+        assertEquals(family.getType(), Metrics.MetricType.HISTOGRAM);
+        assertEquals(family.getMetricCount(), 2);
+
+        {
+            final Metrics.Metric metric = family.getMetric(0);
+            final Metrics.Histogram histogram = metric.getHistogram();
+
+            assertEquals(labels(metric), expectedLabels(Labels.of(ImmutableMap.of("a", "1", "b", "two"))));
+            assertEquals(histogram.getSampleCount(), (1L << 40) + 5);
+            assertEquals(histogram.getSampleSum(), 12.25);
+
+            // the +Inf bucket is always written
+            assertEquals(histogram.getBucketCount(), 4);
+            assertEquals(histogram.getBucket(0).getUpperBound(), .001);
+            assertEquals(histogram.getBucket(0).getCumulativeCount(), 1);
+            assertEquals(histogram.getBucket(1).getUpperBound(), .5);
+            assertEquals(histogram.getBucket(1).getCumulativeCount(), 300);
+            assertEquals(histogram.getBucket(2).getUpperBound(), 10.0);
+            assertEquals(histogram.getBucket(2).getCumulativeCount(), 1L << 40);
+            assertEquals(histogram.getBucket(3).getUpperBound(), Double.POSITIVE_INFINITY);
+            assertEquals(histogram.getBucket(3).getCumulativeCount(), (1L << 40) + 5);
+        }
+
+        {
+            final Metrics.Histogram histogram = family.getMetric(1).getHistogram();
+
+            assertEquals(histogram.getSampleCount(), 0);
+            assertTrue(Double.isNaN(histogram.getSampleSum()));
+            assertEquals(histogram.getBucketCount(), 1);
+            assertEquals(histogram.getBucket(0).getUpperBound(), Double.POSITIVE_INFINITY);
+        }
+    }
+
+    @Test
+    public void testEmptyFamilyAndUnicodeHelp() throws IOException {
+        final List<Metrics.MetricFamily> families = roundTrip(true,
+                new GaugeMetricFamily("test_empty", "Help with non-ASCII characters: é☃.", Stream.empty()),
+                new GaugeMetricFamily("test_after_empty", null, Stream.of(new NumericMetric(null, 42)))
+        );
+
+        assertEquals(families.size(), 2);
+
+        assertEquals(families.get(0).getName(), "test_empty");
+        assertEquals(families.get(0).getHelp(), "Help with non-ASCII characters: é☃.");
+        assertEquals(families.get(0).getMetricCount(), 0);
+
+        assertEquals(families.get(1).getName(), "test_after_empty");
+        assertFalse(families.get(1).hasHelp());
+        assertEquals(labels(families.get(1).getMetric(0)), expectedLabels(Labels.of()));
+        assertEquals(families.get(1).getMetric(0).getGauge().getValue(), 42.0);
+    }
+}
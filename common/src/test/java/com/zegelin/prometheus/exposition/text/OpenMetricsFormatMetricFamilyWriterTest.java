@@ -0,0 +1,75 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.google.common.collect.ImmutableList;
+import com.zegelin.prometheus.domain.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+
+public class OpenMetricsFormatMetricFamilyWriterTest {
+    private static final Instant TIMESTAMP = Instant.ofEpochMilli(1500);
+    private static final Labels GLOBAL_LABELS = Labels.of("cassandra_node", "10.0.0.1");
+
+    private static String write(final TextFormatSeriesPrefixCache cache, final MetricFamily<?> metricFamily) {
+        final ByteBuf buffer = Unpooled.buffer();
+
+        try {
+            final OpenMetricsFormatMetricFamilyWriter writer = new OpenMetricsFormatMetricFamilyWriter(TIMESTAMP, GLOBAL_LABELS, false, cache.beginScrape(0, GLOBAL_LABELS), metricFamily);
+
+            writer.writeFamilyHeader(buffer);
+            while (writer.writeMetric(buffer));
+
+            return buffer.toString(StandardCharsets.UTF_8);
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testUnknownSummarySumIsOmitted() {
+        final Labels labels = Labels.of("table", "t");
+
+        final MetricFamily<?> family = new SummaryMetricFamily("test_latency_seconds", null, Stream.of(
+                new SummaryMetricFamily.Summary(labels, Double.NaN, 10, ImmutableList.of(Interval.Quantile.P_50), new double[]{0.25})
+        ));
+
+        assertEquals(write(new TextFormatSeriesPrefixCache(), family),
+                "# TYPE test_latency_seconds summary\n" +
+                "# UNIT test_latency_seconds seconds\n" +
+                "test_latency_seconds{table=\"t\",quantile=\"0.5\",cassandra_node=\"10.0.0.1\"} 0.25 1.500\n" +
+                "test_latency_seconds_count{table=\"t\",cassandra_node=\"10.0.0.1\"} 10 1.500\n");
+    }
+
+    @Test
+    public void testKnownHistogramSumIsWritten() {
+        final MetricFamily<?> family = new HistogramMetricFamily("test_size", null, Stream.of(
+                new HistogramMetricFamily.Histogram(null, 12.5, 3, ImmutableList.of(new Interval(Interval.Quantile.q(1), 2)))
+        ));
+
+        assertEquals(write(new TextFormatSeriesPrefixCache(), family),
+                "# TYPE test_size histogram\n" +
+                "test_size_bucket{le=\"1.0\",cassandra_node=\"10.0.0.1\"} 2 1.500\n" +
+                "test_size_bucket{le=\"+Inf\",cassandra_node=\"10.0.0.1\"} 3 1.500\n" +
+                "test_size_sum{cassandra_node=\"10.0.0.1\"} 12.5 1.500\n" +
+                "test_size_count{cassandra_node=\"10.0.0.1\"} 3 1.500\n");
+    }
+
+    @Test
+    public void testCachedCounterPrefixes() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+        final Labels labels = Labels.of("table", "t");
+
+        final String expected = "# TYPE test_requests counter\n" +
+                "test_requests_total{table=\"t\",cassandra_node=\"10.0.0.1\"} 7 1.500\n";
+
+        assertEquals(write(cache, new CounterMetricFamily("test_requests", null, Stream.of(new LongMetric(labels, 7)))), expected);
+        assertEquals(write(cache, new CounterMetricFamily("test_requests", null, Stream.of(new LongMetric(labels, 7)))), expected);
+    }
+}
@@ -0,0 +1,130 @@
+package com.zegelin.prometheus.exposition.text;
+
+import com.google.common.collect.ImmutableMap;
+import com.zegelin.prometheus.domain.GaugeMetricFamily;
+import com.zegelin.prometheus.domain.Labels;
+import com.zegelin.prometheus.domain.MetricFamily;
+import com.zegelin.prometheus.domain.NumericMetric;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+
+public class TextFormatSeriesPrefixCacheTest {
+    private static final Instant TIMESTAMP = Instant.ofEpochMilli(1000);
+
+    private static final Labels OLD_GLOBAL_LABELS = Labels.of("cassandra_node", "10.0.0.1");
+    private static final Labels NEW_GLOBAL_LABELS = Labels.of("cassandra_node", "10.0.0.2");
+
+    private final Labels seriesLabels = Labels.of(ImmutableMap.of("keyspace", "ks", "table", "t"));
+
+    private MetricFamily<?> family(final Labels labels, final double value) {
+        return new GaugeMetricFamily("test_gauge", null, Stream.of(new NumericMetric(labels, value)));
+    }
+
+    private static String write(final TextFormatSeriesPrefixCache.Scrape scrape, final Labels globalLabels, final MetricFamily<?> metricFamily) {
+        final ByteBuf buffer = Unpooled.buffer();
+
+        try {
+            final TextFormatMetricFamilyWriter writer = new TextFormatMetricFamilyWriter(TIMESTAMP, globalLabels, false, scrape, metricFamily);
+
+            while (writer.writeMetric(buffer));
+
+            return buffer.toString(StandardCharsets.UTF_8);
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static String expected(final String labels, final String value) {
+        return String.format("test_gauge{%s} %s 1000\n", labels, value);
+    }
+
+    @Test
+    public void testWarmCacheOutputMatches() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        final String cold = write(cache.beginScrape(0, OLD_GLOBAL_LABELS), OLD_GLOBAL_LABELS, family(seriesLabels, 1));
+        final String warm = write(cache.beginScrape(0, OLD_GLOBAL_LABELS), OLD_GLOBAL_LABELS, family(seriesLabels, 2));
+
+        assertEquals(cold, expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.1\"", "1.0"));
+        assertEquals(warm, expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.1\"", "2.0"));
+    }
+
+    @Test
+    public void testChangedLabelsAreReencoded() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        write(cache.beginScrape(0, OLD_GLOBAL_LABELS), OLD_GLOBAL_LABELS, family(seriesLabels, 1));
+
+        final String relabeled = write(cache.beginScrape(0, OLD_GLOBAL_LABELS), OLD_GLOBAL_LABELS, family(Labels.of("keyspace", "other"), 1));
+
+        assertEquals(relabeled, expected("keyspace=\"other\",cassandra_node=\"10.0.0.1\"", "1.0"));
+    }
+
+    @Test
+    public void testChangedGlobalLabelsClearCache() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        write(cache.beginScrape(0, OLD_GLOBAL_LABELS), OLD_GLOBAL_LABELS, family(seriesLabels, 1));
+
+        final String changed = write(cache.beginScrape(0, NEW_GLOBAL_LABELS), NEW_GLOBAL_LABELS, family(seriesLabels, 1));
+
+        assertEquals(changed, expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.2\"", "1.0"));
+    }
+
+    @Test
+    public void testChangedCollectorsGenerationClearsCache() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        final TextFormatSeriesPrefixCache.Scrape firstScrape = cache.beginScrape(0, OLD_GLOBAL_LABELS);
+        write(firstScrape, OLD_GLOBAL_LABELS, family(seriesLabels, 1));
+
+        final TextFormatSeriesPrefixCache.Scrape secondScrape = cache.beginScrape(1, OLD_GLOBAL_LABELS);
+
+        // the first scrape's prefixes were dropped when the collectors changed
+        final TextFormatSeriesPrefixCache.FamilyPrefixes familyPrefixes = secondScrape.checkOut("test_gauge");
+        assertEquals(familyPrefixes.get(null, seriesLabels, null), null);
+    }
+
+    @Test
+    public void testScrapeStartedBeforeGlobalLabelsChangeIsNotCheckedIn() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        // a scrape begins with the old global labels...
+        final TextFormatSeriesPrefixCache.Scrape staleScrape = cache.beginScrape(0, OLD_GLOBAL_LABELS);
+
+        // ...but before it writes anything, another scrape begins with new global labels
+        final TextFormatSeriesPrefixCache.Scrape currentScrape = cache.beginScrape(0, NEW_GLOBAL_LABELS);
+
+        // the stale scrape still writes its own (old) global labels
+        assertEquals(write(staleScrape, OLD_GLOBAL_LABELS, family(seriesLabels, 1)),
+                expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.1\"", "1.0"));
+
+        // but its prefixes must not be served to current or later scrapes
+        assertEquals(write(currentScrape, NEW_GLOBAL_LABELS, family(seriesLabels, 2)),
+                expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.2\"", "2.0"));
+
+        assertEquals(write(cache.beginScrape(0, NEW_GLOBAL_LABELS), NEW_GLOBAL_LABELS, family(seriesLabels, 3)),
+                expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.2\"", "3.0"));
+    }
+
+    @Test
+    public void testStaleScrapeDoesNotReadCurrentPrefixes() {
+        final TextFormatSeriesPrefixCache cache = new TextFormatSeriesPrefixCache();
+
+        final TextFormatSeriesPrefixCache.Scrape staleScrape = cache.beginScrape(0, OLD_GLOBAL_LABELS);
+
+        // warm the cache with the new global labels
+        write(cache.beginScrape(0, NEW_GLOBAL_LABELS), NEW_GLOBAL_LABELS, family(seriesLabels, 1));
+
+        assertEquals(write(staleScrape, OLD_GLOBAL_LABELS, family(seriesLabels, 1)),
+                expected("keyspace=\"ks\",table=\"t\",cassandra_node=\"10.0.0.1\"", "1.0"));
+    }
+}
@@ -0,0 +1,148 @@
+package info.adams.ryu;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+public class RyuDoubleTest {
+    private static String ryuToString(final double value) {
+        final ByteBuf buffer = Unpooled.buffer();
+
+        try {
+            RyuDouble.doubleToString(buffer, value);
+
+            return buffer.toString(StandardCharsets.US_ASCII);
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static int significantDigits(final String s) {
+        final String mantissa = s.replaceFirst("^-", "").replaceFirst("E.*$", "").replace(".", "")
+                .replaceFirst("^0+", "");
+
+        return Math.max(mantissa.replaceFirst("0+$", "").length(), 1);
+    }
+
+    /**
+     * The output of Ryu must parse back to exactly the same double, use the same notation as {@link Double#toString(double)}
+     * (which switches to computerized scientific notation outside of [10^-3, 10^7)), and be no longer than it
+     * ({@link Double#toString(double)} doesn't always produce the shortest representation prior to JDK 19).
+     */
+    private static void assertDouble(final double value) {
+        final String ryu = ryuToString(value);
+        final String expected = Double.toString(value);
+
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(ryu)), Double.doubleToRawLongBits(value), ryu + " does not round-trip to " + expected);
+
+        if (ryu.equals(expected)) {
+            return;
+        }
+
+        assertEquals(ryu.contains("E"), expected.contains("E"), ryu + " uses different notation to " + expected);
+        assertTrue(significantDigits(ryu) <= significantDigits(expected), ryu + " is longer than " + expected);
+    }
+
+    private static void assertBits(final long bits) {
+        assertDouble(Double.longBitsToDouble(bits));
+    }
+
+    @Test
+    public void testSpecialValues() {
+        assertEquals(ryuToString(Double.NaN), "NaN");
+        assertEquals(ryuToString(Double.POSITIVE_INFINITY), "Infinity");
+        assertEquals(ryuToString(Double.NEGATIVE_INFINITY), "-Infinity");
+        assertEquals(ryuToString(0.0), "0.0");
+        assertEquals(ryuToString(-0.0), "-0.0");
+    }
+
+    @Test
+    public void testMatchesDoubleToString() {
+        final double[] values = {1, -1, 0.5, 0.1, 0.001, 1.0E-4, 123.456, 9999999, 1.0E7, 1.2345678E7, Math.PI, Math.E,
+                Long.MAX_VALUE, Double.MAX_VALUE, Double.MIN_VALUE, Double.MIN_NORMAL, 4.9E-324, 2.2250738585072014E-308};
+
+        for (final double value : values) {
+            assertEquals(ryuToString(value), Double.toString(value));
+        }
+    }
+
+    @Test
+    public void testShorterThanDoubleToString() {
+        // prior to JDK 19, Double.toString(1.0E23) is "9.999999999999999E22"
+        assertEquals(ryuToString(1.0E23), "1.0E23");
+        assertDouble(1.0E23);
+    }
+
+    @Test
+    public void testRandomBits() {
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 1_000_000; i++) {
+            final long bits = random.nextLong();
+
+            if (Double.isNaN(Double.longBitsToDouble(bits))) {
+                continue;
+            }
+
+            assertBits(bits);
+        }
+    }
+
+    @Test
+    public void testRandomIntegers() {
+        final Random random = new Random(42);
+
+        // integral values, typical of counters, in both notations
+        for (int i = 0; i < 100_000; i++) {
+            assertDouble(random.nextInt(10_000_000));
+            assertDouble((double) (random.nextLong() >>> random.nextInt(64)));
+        }
+    }
+
+    @Test
+    public void testSubnormals() {
+        final Random random = new Random(42);
+
+        for (long bits = 1; bits < 10_000; bits++) {
+            assertBits(bits);
+        }
+
+        // largest subnormal, and smallest normal
+        assertBits(0x000FFFFFFFFFFFFFL);
+        assertBits(0x0010000000000000L);
+
+        for (int i = 0; i < 100_000; i++) {
+            assertBits(random.nextLong() & 0x800FFFFFFFFFFFFFL);
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoBoundaries() {
+        // powers of two have an asymmetric interval (the gap below is half the gap above) -- test each, and its neighbours
+        for (int exponent = -1074; exponent <= 1023; exponent++) {
+            final long bits = Double.doubleToRawLongBits(Math.scalb(1.0, exponent));
+
+            assertBits(bits);
+            assertBits(bits + 1);
+            assertBits(bits - 1);
+            assertBits(bits | 0x8000000000000000L);
+        }
+    }
+
+    @Test
+    public void testPowersOfTen() {
+        for (int exponent = -323; exponent <= 308; exponent++) {
+            final double value = Double.parseDouble("1E" + exponent);
+
+            assertDouble(value);
+            assertDouble(Math.nextUp(value));
+            assertDouble(Math.nextDown(value));
+        }
+    }
+}
@@ -128,7 +128,19 @@ public class Application implements Callable<Void> {
         });
 
 
-        Server.start(httpServerOptions.listenAddresses, harvester, httpServerOptions.helpExposition);
+        harvester.start();
+
+        final Server server = Server.start(harvester, httpServerOptions);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop().sync();
+                harvester.stop();
+
+            } catch (final InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
 
         return null;
     }